@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+import java.util.*;
+
+/**
+ * Thread safe sorted list with the {@code get} and {@code rank} semantics of {@link SortedList}.
+ * <p>
+ * The elements are kept in a sorted array that is never modified once it is published. Every modification copies the array under a lock and publishes the copy, so reads never block and never see a half done
+ * modification. {@code get} takes time <i>O(1)</i>, {@code rank} and {@code contains} take time <i>O(log(n))</i> and modifications take time <i>O(n)</i>, where <i>n</i> is the number of elements in the list.
+ * This suits lists that are read far more often than they are modified, like the producer lists shared between the game thread and the audio threads.
+ * <p>
+ * The iterators work on the array that was current when they were created, they never throw a {@link ConcurrentModificationException} and do not support {@code remove}. Use {@link #snapshot()} if several
+ * reads must see the same content.
+ *
+ * @param <T> the type of element that this sorted list will store.
+ * @author abdalla bushnaq
+ * @see SortedList
+ */
+public class ConcurrentSortedList<T> extends AbstractList<T> implements RandomAccess {
+    private static final Object[]              EMPTY    = new Object[0];
+    private final        Comparator<? super T> comparator;
+    private final        Object                lock     = new Object();// serializes modifications
+    private volatile     Object[]              elements = EMPTY;// sorted, never modified once published
+
+    /**
+     * Constructs a new, empty {@code ConcurrentSortedList} which sorts the elements according to the given {@code Comparator}.
+     *
+     * @param comparator the {@code Comparator} to sort the elements by.
+     */
+    public ConcurrentSortedList(final Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Inserts the given object after all equal elements. <code>null</code> is not added.
+     *
+     * @param object the object to add.
+     * @return false when the given object is null and true otherwise.
+     */
+    @Override
+    public boolean add(final T object) {
+        if (object == null) {
+            return false;
+        }
+        synchronized (lock) {
+            final Object[] current = elements;
+            final int      index   = upperBound(current, object);
+            final Object[] next    = new Object[current.length + 1];
+            System.arraycopy(current, 0, next, 0, index);
+            next[index] = object;
+            System.arraycopy(current, index, next, index + 1, current.length - index);
+            elements = next;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all non-<code>null</code> elements of the given collection with a single copy of the list, equal elements keep the order in which they were added.
+     *
+     * @param collection the elements to add.
+     * @return true if any element was added.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(final Collection<? extends T> collection) {
+        final Object[] added = new Object[collection.size()];
+        int            count = 0;
+        for (final T object : collection) {
+            if (object != null) {
+                added[count++] = object;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        Arrays.sort((T[]) added, 0, count, comparator);
+        synchronized (lock) {
+            final Object[] current = elements;
+            final Object[] next    = new Object[current.length + count];
+            int            i       = 0;
+            int            j       = 0;
+            int            k       = 0;
+            while (i < current.length || j < count) {
+                if (i < current.length && (j == count || comparator.compare((T) added[j], (T) current[i]) >= 0)) {
+                    next[k++] = current[i++];
+                } else {
+                    next[k++] = added[j++];
+                }
+            }
+            elements = next;
+        }
+        return true;
+    }
+
+    /**
+     * Removes all elements from the list, leaving it empty.
+     */
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            elements = EMPTY;
+        }
+    }
+
+    /**
+     * Returns whether or not the given object is present in this list. Works in time <i>O(log(n))</i>, if there are only few equal elements.
+     *
+     * @param obj the object to check for.
+     * @return true if the given object is present in this list.
+     */
+    @Override
+    public boolean contains(final Object obj) {
+        return indexOf(elements, obj) != -1;
+    }
+
+    /**
+     * Returns the element at the given index, which is the "index"th smallest element, counting from 0-<i>n</i>-1.
+     *
+     * @param index the index of the element to get.
+     * @return the element at the given index.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(final int index) {
+        final Object[] current = elements;
+        Objects.checkIndex(index, current.length);
+        return (T) current[index];
+    }
+
+    // index of the first element that equals obj..
+    @SuppressWarnings("unchecked")
+    private int indexOf(final Object[] current, final Object obj) {
+        if (obj == null) {
+            return -1;
+        }
+        try {
+            for (int i = lowerBound(current, (T) obj); i < current.length && comparator.compare((T) current[i], (T) obj) == 0; i++) {
+                if (current[i].equals(obj)) {
+                    return i;
+                }
+            }
+        } catch (final ClassCastException e) {
+            // comparator may throw this error, don't need to do anything..
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexOf(final Object obj) {
+        return indexOf(elements, obj);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return elements.length == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        return (Iterator<T>) Collections.unmodifiableList(Arrays.asList(elements)).iterator();
+    }
+
+    // index of the first element that is not smaller than value..
+    @SuppressWarnings("unchecked")
+    private int lowerBound(final Object[] current, final T value) {
+        int low  = 0;
+        int high = current.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comparator.compare((T) current[middle], value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of elements that are smaller than the given value according to the {@code Comparator}, which is the index the value would be inserted at before any equal element.
+     *
+     * @param value the value to rank.
+     * @return the number of smaller elements.
+     */
+    public int rank(final T value) {
+        return lowerBound(elements, value);
+    }
+
+    /**
+     * Removes and returns the element at the given index.
+     *
+     * @param index the index of the element to remove.
+     * @return the element which was removed from the list.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T remove(final int index) {
+        synchronized (lock) {
+            final Object[] current = elements;
+            Objects.checkIndex(index, current.length);
+            final T removed = (T) current[index];
+            elements = removeAt(current, index);
+            return removed;
+        }
+    }
+
+    /**
+     * Removes the first element in the list that equals the given value, if such an element exists, otherwise does nothing.
+     *
+     * @param value the object to remove from this list.
+     * @return <code>true</code> if the given object was found and removed, <code>false</code> otherwise.
+     */
+    @Override
+    public boolean remove(final Object value) {
+        synchronized (lock) {
+            final Object[] current = elements;
+            final int      index   = indexOf(current, value);
+            if (index == -1) {
+                return false;
+            }
+            elements = removeAt(current, index);
+            return true;
+        }
+    }
+
+    private static Object[] removeAt(final Object[] current, final int index) {
+        if (current.length == 1) {
+            return EMPTY;
+        }
+        final Object[] next = new Object[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        return next;
+    }
+
+    @Override
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * Returns an unmodifiable view of the current content, that does not change when this list is modified.
+     *
+     * @return the elements in sorted order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(elements));
+    }
+
+    @Override
+    public Object[] toArray() {
+        return elements.clone();
+    }
+
+    // index of the first element that is bigger than value..
+    @SuppressWarnings("unchecked")
+    private int upperBound(final Object[] current, final T value) {
+        int low  = 0;
+        int high = current.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comparator.compare((T) current[middle], value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
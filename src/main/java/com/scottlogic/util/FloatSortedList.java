@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+/**
+ * Sorted list of <code>float</code> values in the order of {@link Float#compare(float, float)}.
+ * <p>
+ * Every value is stored as an <code>int</code> key in an {@link IntSortedList}. The key is the bit pattern of the value with all but the sign bit flipped for negative values, so that the keys sort like the values.
+ * <p>
+ * This implementation is not synchronised.
+ *
+ * @author abdalla bushnaq
+ * @see IntSortedList
+ */
+public class FloatSortedList {
+    private final IntSortedList keys;
+
+    /**
+     * Constructs a new, empty {@code FloatSortedList}.
+     */
+    public FloatSortedList() {
+        keys = new IntSortedList();
+    }
+
+    /**
+     * Constructs a new {@code FloatSortedList} from values that are already sorted, in time <i>O(n)</i>.
+     *
+     * @param sorted the values in ascending order.
+     * @throws IllegalArgumentException in the case that the values are not sorted.
+     */
+    public FloatSortedList(final float[] sorted) {
+        keys = new IntSortedList(toKeys(sorted));
+    }
+
+    // the inverse of toKey..
+    private static float toValue(final int key) {
+        return Float.intBitsToFloat(key ^ ((key >> 31) & 0x7FFFFFFF));
+    }
+
+    private static int toKey(final float value) {
+        final int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    private static int[] toKeys(final float[] values) {
+        final int[] keys = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = toKey(values[i]);
+        }
+        return keys;
+    }
+
+    /**
+     * Inserts the value after all equal values.
+     *
+     * @param value the value to add.
+     */
+    public void add(final float value) {
+        keys.add(toKey(value));
+    }
+
+    /**
+     * Adds all values. If only a few values are added, they are added one by one, otherwise they are sorted and merged with the values of this list in time <i>O(n+k*log(k))</i>.
+     *
+     * @param values the values to add.
+     */
+    public void addAll(final float[] values) {
+        keys.addAll(toKeys(values));
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        keys.clear();
+    }
+
+    /**
+     * @param value the value to look for.
+     * @return true if the value is in the list.
+     */
+    public boolean contains(final float value) {
+        return keys.contains(toKey(value));
+    }
+
+    /**
+     * Returns the value at the given index, which is the "index"th smallest value, counting from 0-<i>n</i>-1.
+     *
+     * @param index the index of the value.
+     * @return the value at the given index.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    public float get(final int index) {
+        return toValue(keys.get(index));
+    }
+
+    /**
+     * @param value the value to look for.
+     * @return the index of the first value equal to the given value, or -1 if there is none.
+     */
+    public int indexOf(final float value) {
+        return keys.indexOf(toKey(value));
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * Returns the number of values that are smaller than the given value, which is the index the value would be inserted at before any equal value.
+     *
+     * @param value the value to rank.
+     * @return the number of smaller values.
+     */
+    public int rank(final float value) {
+        return keys.rank(toKey(value));
+    }
+
+    /**
+     * Removes the value at the given index.
+     *
+     * @param index the index of the value to remove.
+     * @return the removed value.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    public float removeAt(final int index) {
+        return toValue(keys.removeAt(index));
+    }
+
+    /**
+     * Removes the first value equal to the given value.
+     *
+     * @param value the value to remove.
+     * @return true if the value was found and removed.
+     */
+    public boolean removeValue(final float value) {
+        return keys.removeValue(toKey(value));
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return a new array with all values in ascending order.
+     */
+    public float[] toArray() {
+        final int[]   keys   = this.keys.toArray();
+        final float[] values = new float[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = toValue(keys[i]);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of <code>long</code> values, stored without boxing in sorted leaf arrays of up to {@value #LEAF_SIZE} values.
+ * <p>
+ * The leaves are indexed by their last value and the index of their first value, so {@code get} (select) and {@code rank} take time <i>O(log(n))</i> and {@code add} and {@code remove} take time
+ * <i>O(log(n)+L+n/L)</i>, where <i>n</i> is the number of values and <i>L</i> the leaf size. Compared to {@link SortedList} a value needs 8 bytes instead of a {@code Node} and a boxed value.
+ * <p>
+ * This implementation is not synchronised.
+ *
+ * @author abdalla bushnaq
+ * @see SortedList
+ * @see IntSortedList
+ * @see FloatSortedList
+ */
+public class LongSortedList {
+    static final         int     LEAF_SIZE   = 512;
+    // addAll adds values one by one if the list is more than this factor bigger than the added values, otherwise it rebuilds the leaves..
+    private static final int      BULK_FACTOR = 64;
+    // leaves are filled to this size when built in bulk, so that the next adds do not split them immediately..
+    private static final int      BULK_FILL   = LEAF_SIZE * 3 / 4;
+    private              int[]    leafFirst   = new int[1];// index of the first value of every leaf, valid for leaves before firstStaleLeaf
+    private              long[]   leafLast    = new long[1];// last value of every leaf
+    private              int[]    leafSize    = new int[1];
+    private              long[][] leaves      = new long[1][LEAF_SIZE];
+    private              int      leafCount   = 1;
+    private              int      firstStaleLeaf;// leafFirst needs to be recalculated from this leaf on
+    private              int      size;
+
+    /**
+     * Constructs a new, empty {@code LongSortedList}.
+     */
+    public LongSortedList() {
+    }
+
+    /**
+     * Constructs a new {@code LongSortedList} from values that are already sorted, in time <i>O(n)</i>.
+     *
+     * @param sorted the values in ascending order.
+     * @throws IllegalArgumentException in the case that the values are not sorted.
+     */
+    public LongSortedList(final long[] sorted) {
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1] > sorted[i]) {
+                throw new IllegalArgumentException(String.format("value %d is smaller than its predecessor.", i));
+            }
+        }
+        build(sorted, sorted.length);
+    }
+
+    /**
+     * Inserts the value after all equal values.
+     *
+     * @param value the value to add.
+     */
+    public void add(final long value) {
+        int leaf = findLeafAfter(value);
+        if (leafSize[leaf] == LEAF_SIZE) {
+            splitLeaf(leaf);
+            if (leafSize[leaf] == 0 || value >= leafLast[leaf]) {
+                leaf++;
+            }
+        }
+        final long[] values   = leaves[leaf];
+        final int    count    = leafSize[leaf];
+        final int    position = upperBound(values, count, value);
+        System.arraycopy(values, position, values, position + 1, count - position);
+        values[position] = value;
+        leafSize[leaf]   = count + 1;
+        leafLast[leaf]   = values[count];
+        size++;
+        invalidate(leaf + 1);
+    }
+
+    /**
+     * Adds all values. If only a few values are added, they are added one by one, otherwise they are sorted and merged with the values of this list in time <i>O(n+k*log(k))</i>.
+     *
+     * @param values the values to add.
+     */
+    public void addAll(final long[] values) {
+        if ((long) values.length * BULK_FACTOR < size) {
+            for (final long value : values) {
+                add(value);
+            }
+            return;
+        }
+        final long[] added = values.clone();
+        Arrays.sort(added);
+        final long[] merged = new long[size + added.length];
+        int          j      = 0;
+        int          k      = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            final long[] leafValues = leaves[leaf];
+            for (int l = 0; l < leafSize[leaf]; l++) {
+                while (j < added.length && added[j] < leafValues[l]) {
+                    merged[k++] = added[j++];
+                }
+                merged[k++] = leafValues[l];
+            }
+        }
+        while (j < added.length) {
+            merged[k++] = added[j++];
+        }
+        build(merged, merged.length);
+    }
+
+    private void build(final long[] sorted, final int length) {
+        leafCount = Math.max(1, (length + BULK_FILL - 1) / BULK_FILL);
+        leaves    = new long[leafCount][];
+        leafSize  = new int[leafCount];
+        leafLast  = new long[leafCount];
+        leafFirst = new int[leafCount];
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            final int from  = leaf * BULK_FILL;
+            final int count = Math.min(BULK_FILL, length - from);
+            leaves[leaf] = new long[LEAF_SIZE];
+            if (count > 0) {
+                System.arraycopy(sorted, from, leaves[leaf], 0, count);
+                leafSize[leaf] = count;
+                leafLast[leaf] = sorted[from + count - 1];
+            }
+            leafFirst[leaf] = from;
+        }
+        size           = length;
+        firstStaleLeaf = leafCount;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        build(new long[0], 0);
+    }
+
+    /**
+     * @param value the value to look for.
+     * @return true if the value is in the list.
+     */
+    public boolean contains(final long value) {
+        return indexOf(value) != -1;
+    }
+
+    // the leaf that contains the first value that is at least value, or the last leaf..
+    private int findLeaf(final long value) {
+        int low  = 0;
+        int high = leafCount - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (leafLast[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the leaf that contains the first value that is bigger than value, or the last leaf..
+    private int findLeafAfter(final long value) {
+        int low  = 0;
+        int high = leafCount - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (leafLast[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the leaf that contains the value at index..
+    private int findLeafAt(final int index) {
+        updateLeafFirst();
+        int low  = 0;
+        int high = leafCount - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (leafFirst[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the value at the given index, which is the "index"th smallest value, counting from 0-<i>n</i>-1.
+     *
+     * @param index the index of the value.
+     * @return the value at the given index.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    public long get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " is not valid index.");
+        }
+        final int leaf = findLeafAt(index);
+        return leaves[leaf][index - leafFirst[leaf]];
+    }
+
+    /**
+     * @param value the value to look for.
+     * @return the index of the first value equal to the given value, or -1 if there is none.
+     */
+    public int indexOf(final long value) {
+        final int index = rank(value);
+        return (index < size && get(index) == value) ? index : -1;
+    }
+
+    private void invalidate(final int leaf) {
+        firstStaleLeaf = Math.min(firstStaleLeaf, leaf);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int lowerBound(final long[] values, final int count, final long value) {
+        int low  = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of values that are smaller than the given value, which is the index the value would be inserted at before any equal value.
+     *
+     * @param value the value to rank.
+     * @return the number of smaller values.
+     */
+    public int rank(final long value) {
+        updateLeafFirst();
+        final int leaf = findLeaf(value);
+        return leafFirst[leaf] + lowerBound(leaves[leaf], leafSize[leaf], value);
+    }
+
+    /**
+     * Removes the value at the given index.
+     *
+     * @param index the index of the value to remove.
+     * @return the removed value.
+     * @throws IndexOutOfBoundsException in the case that the index is not a valid index.
+     */
+    public long removeAt(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " is not valid index.");
+        }
+        final int    leaf     = findLeafAt(index);
+        final long[] values   = leaves[leaf];
+        final int    position = index - leafFirst[leaf];
+        final long   value    = values[position];
+        final int    count    = leafSize[leaf] - 1;
+        System.arraycopy(values, position + 1, values, position, count - position);
+        leafSize[leaf] = count;
+        size--;
+        if (count == 0 && leafCount > 1) {
+            removeLeaf(leaf);
+        } else if (count > 0) {
+            leafLast[leaf] = values[count - 1];
+        }
+        invalidate(leaf + 1);
+        return value;
+    }
+
+    // removes an empty leaf..
+    private void removeLeaf(final int leaf) {
+        final int moved = leafCount - leaf - 1;
+        System.arraycopy(leaves, leaf + 1, leaves, leaf, moved);
+        System.arraycopy(leafSize, leaf + 1, leafSize, leaf, moved);
+        System.arraycopy(leafLast, leaf + 1, leafLast, leaf, moved);
+        System.arraycopy(leafFirst, leaf + 1, leafFirst, leaf, moved);
+        leafCount--;
+        leaves[leafCount] = null;
+        invalidate(leaf);
+    }
+
+    /**
+     * Removes the first value equal to the given value.
+     *
+     * @param value the value to remove.
+     * @return true if the value was found and removed.
+     */
+    public boolean removeValue(final long value) {
+        final int index = indexOf(value);
+        if (index == -1) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // splits a full leaf into two halves..
+    private void splitLeaf(final int leaf) {
+        if (leafCount == leaves.length) {
+            final int capacity = leafCount * 2;
+            leaves    = Arrays.copyOf(leaves, capacity);
+            leafSize  = Arrays.copyOf(leafSize, capacity);
+            leafLast  = Arrays.copyOf(leafLast, capacity);
+            leafFirst = Arrays.copyOf(leafFirst, capacity);
+        }
+        final int moved = leafCount - leaf - 1;
+        System.arraycopy(leaves, leaf + 1, leaves, leaf + 2, moved);
+        System.arraycopy(leafSize, leaf + 1, leafSize, leaf + 2, moved);
+        System.arraycopy(leafLast, leaf + 1, leafLast, leaf + 2, moved);
+        System.arraycopy(leafFirst, leaf + 1, leafFirst, leaf + 2, moved);
+        leafCount++;
+        final long[] values = leaves[leaf];
+        final int    half   = leafSize[leaf] / 2;
+        final long[] right  = new long[LEAF_SIZE];
+        System.arraycopy(values, half, right, 0, leafSize[leaf] - half);
+        leaves[leaf + 1]   = right;
+        leafSize[leaf + 1] = leafSize[leaf] - half;
+        leafLast[leaf + 1] = leafLast[leaf];
+        leafSize[leaf]     = half;
+        leafLast[leaf]     = values[half - 1];
+        invalidate(leaf + 1);
+    }
+
+    /**
+     * @return a new array with all values in ascending order.
+     */
+    public long[] toArray() {
+        final long[] array = new long[size];
+        int          k     = 0;
+        for (int leaf = 0; leaf < leafCount; leaf++) {
+            System.arraycopy(leaves[leaf], 0, array, k, leafSize[leaf]);
+            k += leafSize[leaf];
+        }
+        return array;
+    }
+
+    private void updateLeafFirst() {
+        if (firstStaleLeaf < leafCount) {
+            int first = (firstStaleLeaf == 0) ? 0 : leafFirst[firstStaleLeaf - 1] + leafSize[firstStaleLeaf - 1];
+            for (int leaf = firstStaleLeaf; leaf < leafCount; leaf++) {
+                leafFirst[leaf] = first;
+                first += leafSize[leaf];
+            }
+        }
+        firstStaleLeaf = leafCount;
+    }
+
+    private static int upperBound(final long[] values, final int count, final long value) {
+        int low  = 0;
+        int high = count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (values[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
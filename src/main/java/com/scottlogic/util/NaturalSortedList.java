@@ -41,4 +41,14 @@ public class NaturalSortedList<T extends Comparable<? super T>> extends SortedLi
             }
         });
     }
+
+    /**
+     * Constructs a new @{code NaturalSortedList} from elements that are already in their <i>natural order</i>, in time <i>O(n)</i>.
+     *
+     * @param sorted the elements in ascending order.
+     * @throws IllegalArgumentException in the case that the elements are not sorted or contain <code>null</code>.
+     */
+    public NaturalSortedList(final T[] sorted) {
+        super(Comparator.naturalOrder(), sorted);
+    }
 }
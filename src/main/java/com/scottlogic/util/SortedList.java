@@ -39,6 +39,8 @@ import java.util.*;
 public class SortedList<T> extends AbstractList<T> implements Serializable {
 
     private static final long                  serialVersionUID = -7115342129716877152L;
+    // addAll adds elements one by one if the list is more than this factor bigger than the added elements, otherwise it rebuilds the tree..
+    private static final int                   BULK_FACTOR      = 16;
     // The comparator to use when comparing the list elements.
     private final        Comparator<? super T> comparator;
     // to be used as like a static var to get the next node's id..
@@ -55,6 +57,26 @@ public class SortedList<T> extends AbstractList<T> implements Serializable {
         this.comparator = comparator;
     }
 
+    /**
+     * Constructs a new SortedList from elements that are already sorted according to the given {@code Comparator}. Works in time <i>O(n)</i>, where <i>n</i> is the number of elements.
+     *
+     * @param comparator the {@code Comparator} to sort the elements by.
+     * @param sorted     the elements in ascending order.
+     * @throws IllegalArgumentException in the case that the elements are not sorted or contain <code>null</code>.
+     */
+    public SortedList(final Comparator<? super T> comparator, final T[] sorted) {
+        this.comparator = comparator;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] == null) {
+                throw new IllegalArgumentException("Null elements can not be added to SortedLists.");
+            }
+            if (i > 0 && comparator.compare(sorted[i - 1], sorted[i]) > 0) {
+                throw new IllegalArgumentException(String.format("element %d is smaller than its predecessor.", i));
+            }
+        }
+        build(sorted, sorted.length);
+    }
+
     /**
      * Add the given Node to this {@code SortedList}.
      * <p>
@@ -112,6 +134,106 @@ public class SortedList<T> extends AbstractList<T> implements Serializable {
         return treeAltered;
     }
 
+    /**
+     * Adds all non-<code>null</code> elements of the given collection, equal elements keep the order in which they were added.
+     * <p>
+     * If only a few elements are added, they are added one by one in time <i>O(k*log(n))</i>. Otherwise they are sorted and merged with the elements of this list and the tree is rebuilt in time <i>O(n+k*log(k))</i>,
+     * where <i>n</i> is the number of elements in the list and <i>k</i> the number of added elements.
+     *
+     * @param collection the elements to add.
+     * @return true if any element was added.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(final Collection<? extends T> collection) {
+        final Object[] added = new Object[collection.size()];
+        int            count = 0;
+        for (final T object : collection) {
+            if (object != null) {
+                added[count++] = object;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        final int size = size();
+        if ((long) count * BULK_FACTOR < size) {
+            for (int i = 0; i < count; i++) {
+                add((T) added[i]);
+            }
+            return true;
+        }
+        Arrays.sort((T[]) added, 0, count, comparator); // stable, equal elements stay in order..
+
+        // merge the sorted elements with the elements in the tree, elements already in the list come first if equal..
+        final Object[] merged = new Object[size + count];
+        int            i      = 0;
+        int            j      = 0;
+        Node           next   = (root == null) ? null : root.smallestNodeInSubTree();
+        while (next != null || j < count) {
+            if (next != null && (j == count || comparator.compare((T) added[j], next.value) >= 0)) {
+                merged[i++] = next.value;
+                next        = next.successor();
+            } else {
+                merged[i++] = added[j++];
+            }
+        }
+        build(merged, merged.length);
+        return true;
+    }
+
+    /**
+     * Replaces the content of this {@code SortedList} by a perfectly balanced tree of the given elements, which must already be in the order of this list. Works in time <i>O(n)</i>, where <i>n</i> is the number of
+     * elements.
+     *
+     * @param sorted the elements in list order.
+     * @param length the number of elements to use from the start of the array.
+     */
+    protected void build(final Object[] sorted, final int length) {
+        root = build(sorted, 0, length);
+        if (root != null) {
+            root.parent = null;
+        }
+        modCount++; // see AbstractList#modCount, incrementing this allows for iterators to be fail-fast..
+    }
+
+    // builds the subtree of the elements from..to-1, nodes are created in order so that older nodes are smaller..
+    @SuppressWarnings("unchecked")
+    private Node build(final Object[] sorted, final int from, final int to) {
+        if (from >= to) {
+            return null;
+        }
+        final int  middle = (from + to) >>> 1;
+        final Node left   = build(sorted, from, middle);
+        final Node node   = createNode((T) sorted[middle]);
+        final Node right  = build(sorted, middle + 1, to);
+        node.leftChild  = left;
+        node.rightChild = right;
+        if (left != null) {
+            left.parent = node;
+        }
+        if (right != null) {
+            right.parent = node;
+        }
+        if (!node.isLeaf()) {
+            node.height      = 1 + Math.max((left == null) ? 0 : left.height, (right == null) ? 0 : right.height);
+            node.numChildren = ((left == null) ? 0 : left.sizeOfSubTree()) + ((right == null) ? 0 : right.sizeOfSubTree());
+        }
+        return node;
+    }
+
+    /**
+     * Creates the {@code Node} that stores the given value when the tree is built in bulk.
+     * <p>
+     * This method can be overridden by a subclass in order to change the definition of the {@code Node}s that this List will store.
+     *
+     * @param value the value to store.
+     * @return a new {@code Node}.
+     */
+    protected Node createNode(final T value) {
+        return new Node(value);
+    }
+
     /**
      * Returns the element at the given index in this {@code SortedList}. Since the list is sorted, this is the "index"th smallest element, counting from 0-<i>n</i>-1.
      * <p>
@@ -255,6 +377,28 @@ public class SortedList<T> extends AbstractList<T> implements Serializable {
         return minBalanceFactor;
     }
 
+    /**
+     * Returns the number of elements in this {@code SortedList} that are smaller than the given value according to the {@code Comparator}, which is the index the value would be inserted at before any equal element.
+     * <p>
+     * Works in time <i>O(log(n))</i>, where <i>n</i> is the number of elements in the list.
+     *
+     * @param value the value to rank.
+     * @return the number of smaller elements.
+     */
+    public int rank(final T value) {
+        int  rank    = 0;
+        Node current = root;
+        while (current != null) {
+            if (comparator.compare(current.value, value) < 0) { // current and its left subtree are smaller..
+                rank += (current.leftChild == null) ? 1 : 1 + current.leftChild.sizeOfSubTree();
+                current = current.rightChild;
+            } else {
+                current = current.leftChild;
+            }
+        }
+        return rank;
+    }
+
     // Implementation of the AVL tree rebalancing starting at the startNode and working up the tree...
     private void rebalanceTree(final Node startNode) {
         Node current = startNode;
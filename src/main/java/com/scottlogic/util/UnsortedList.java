@@ -64,6 +64,17 @@ public class UnsortedList<T> extends SortedList<T> {
         return true;
     }
 
+    /**
+     * Creates the nodes of this {@code UnsortedList} when the tree is built in bulk, used by {@link #addAll(Collection)} which appends the elements in time <i>O(n+k)</i>.
+     *
+     * @param value the value to store.
+     * @return a new {@code UnsortedNode}.
+     */
+    @Override
+    protected Node createNode(final T value) {
+        return new UnsortedNode(value, 0); // the index is recalculated from the tree, as the build increments the modCount..
+    }
+
     /**
      * Returns whether or not the given object whether or not the given object is present in this {@code UnsortedList}.
      * <p>
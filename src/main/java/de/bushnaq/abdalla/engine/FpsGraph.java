@@ -37,7 +37,11 @@ public class FpsGraph extends Graph {
     }
 
     public void end() {
-        update(NANOSECONDS_PER_SECOND / (System.nanoTime() - absolute));
+        final long delta = System.nanoTime() - absolute;
+        if (absolute != 0) {
+            record(delta);//the first frame has no start
+        }
+        update(NANOSECONDS_PER_SECOND / delta);
     }
 
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.Queue;
+import de.bushnaq.abdalla.engine.util.BoundedExecutor;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Writes frame buffers into png files without stalling the render thread.
+ * <p>
+ * {@link #capture(FrameBuffer, String)} starts an asynchronous read into a pixel buffer object and puts a fence behind it. {@link #update()} picks up every read the gpu has finished, copies the pixels into a
+ * pixmap and hands it to a bounded pool of png encoders. The render thread only waits if all pixel buffer objects are busy or if the encoders fall behind, so a long capture throttles the frame rate instead
+ * of queueing unbounded memory.
+ *
+ * @author abdalla bushnaq
+ */
+public class FrameBufferCapture implements Disposable {
+    private static final int                           MAX_POOLED_PIXMAPS = 16;
+    private final        IntArray                      buffers            = new IntArray();
+    private final        BoundedExecutor               encoders;
+    private final        IntArray                      freeBuffers        = new IntArray();
+    private final        Logger                        logger             = LoggerFactory.getLogger(this.getClass());
+    private final        int                           maxBuffers;
+    private final        Queue<Readback>               pending            = new Queue<>();
+    private final        ConcurrentLinkedQueue<Pixmap> pixmapPool         = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param maxBuffers number of pixel buffer objects, that is reads that can be in flight on the gpu
+     * @param threads    number of png encoder threads
+     * @param capacity   number of pixmaps that can be encoded or wait for an encoder
+     */
+    public FrameBufferCapture(final int maxBuffers, final int threads, final int capacity) {
+        this.maxBuffers = maxBuffers;
+        encoders        = new BoundedExecutor("FrameBufferCapture", threads, capacity);
+    }
+
+    /**
+     * Starts reading the frame buffer, returns without waiting for the gpu.
+     *
+     * @param frameBuffer the frame buffer or null for the default frame buffer. The default frame buffer is written opaque, like the user sees it.
+     * @param fileName    local file the png is written to
+     */
+    public void capture(final FrameBuffer frameBuffer, final String fileName) {
+        final int width;
+        final int height;
+        if (frameBuffer != null) {
+            width  = frameBuffer.getWidth();
+            height = frameBuffer.getHeight();
+            frameBuffer.bind();
+        } else {
+            width  = Gdx.graphics.getBackBufferWidth();
+            height = Gdx.graphics.getBackBufferHeight();
+        }
+        final int buffer = obtainBuffer();
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, buffer);
+        GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, (long) width * height * 4, GL15.GL_STREAM_READ);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0L);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        final long fence = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        if (frameBuffer != null) {
+            FrameBuffer.unbind();
+        }
+        pending.addLast(new Readback(buffer, fence, width, height, fileName, frameBuffer == null));
+    }
+
+    /**
+     * Copies the pixels of a finished read into a pixmap and hands it to the encoders, blocks if the encoders are full.
+     */
+    private void complete(final Readback readback) {
+        GL32.glDeleteSync(readback.fence);
+        final Pixmap pixmap = obtainPixmap(readback.width, readback.height);
+        final int    size   = readback.width * readback.height * 4;
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, readback.buffer);
+        final ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_PACK_BUFFER, 0, size, GL30.GL_MAP_READ_BIT);
+        if (mapped != null) {
+            final ByteBuffer pixels = pixmap.getPixels();
+            pixels.clear();
+            pixels.put(mapped);
+            pixels.clear();
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        freeBuffers.add(readback.buffer);
+        if (mapped == null) {
+            logger.error("could not map pixel buffer of " + readback.fileName);
+            recycle(pixmap);
+            return;
+        }
+        try {
+            encoders.submit(() -> write(pixmap, readback));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("dropped " + readback.fileName);
+            recycle(pixmap);
+        }
+    }
+
+    /**
+     * Waits until all captures are written and releases all resources.
+     */
+    @Override
+    public void dispose() {
+        finish();
+        encoders.close();
+        for (int i = 0; i < buffers.size; i++) {
+            GL15.glDeleteBuffers(buffers.get(i));
+        }
+        buffers.clear();
+        freeBuffers.clear();
+        Pixmap pixmap;
+        while ((pixmap = pixmapPool.poll()) != null) {
+            pixmap.dispose();
+        }
+    }
+
+    /**
+     * Hands all reads to the encoders, waiting for the gpu if necessary.
+     */
+    public void finish() {
+        while (pending.notEmpty()) {
+            final Readback readback = pending.removeFirst();
+            waitFor(readback);
+            complete(readback);
+        }
+    }
+
+    /**
+     * @return number of captures that were read but are not written yet
+     */
+    public int getPending() {
+        return pending.size + encoders.getPending();
+    }
+
+    private int obtainBuffer() {
+        if (freeBuffers.notEmpty()) {
+            return freeBuffers.pop();
+        }
+        if (buffers.size < maxBuffers) {
+            final int buffer = GL15.glGenBuffers();
+            buffers.add(buffer);
+            return buffer;
+        }
+        //all buffers are in flight, wait for the oldest one
+        final Readback oldest = pending.removeFirst();
+        waitFor(oldest);
+        complete(oldest);
+        return freeBuffers.pop();
+    }
+
+    private Pixmap obtainPixmap(final int width, final int height) {
+        for (final Pixmap pixmap : pixmapPool) {
+            if (pixmap.getWidth() == width && pixmap.getHeight() == height && pixmapPool.remove(pixmap)) {
+                return pixmap;
+            }
+        }
+        return new Pixmap(width, height, Pixmap.Format.RGBA8888);
+    }
+
+    private void recycle(final Pixmap pixmap) {
+        if (pixmapPool.size() < MAX_POOLED_PIXMAPS) {
+            pixmapPool.add(pixmap);
+        } else {
+            pixmap.dispose();
+        }
+    }
+
+    /**
+     * Call once per frame from the render thread, hands every read the gpu has finished to the encoders.
+     */
+    public void update() {
+        while (pending.notEmpty()) {
+            final int status = GL32.glClientWaitSync(pending.first().fence, 0, 0);
+            if (status == GL32.GL_TIMEOUT_EXPIRED) {
+                return;
+            }
+            complete(pending.removeFirst());
+        }
+    }
+
+    private void waitFor(final Readback readback) {
+        int status = GL32.glClientWaitSync(readback.fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, 1000000000L);
+        while (status == GL32.GL_TIMEOUT_EXPIRED) {
+            status = GL32.glClientWaitSync(readback.fence, 0, 1000000000L);
+        }
+    }
+
+    /**
+     * Encoder thread.
+     */
+    private void write(final Pixmap pixmap, final Readback readback) {
+        try {
+            if (readback.opaque) {
+                // makes sure the whole screenshot is opaque and looks exactly like what the user is seeing
+                final ByteBuffer pixels = pixmap.getPixels();
+                for (int i = 3; i < pixels.limit(); i += 4) {
+                    pixels.put(i, (byte) 255);
+                }
+            }
+            PixmapIO.writePNG(Gdx.files.local(readback.fileName), pixmap, Deflater.DEFAULT_COMPRESSION, true);
+        } finally {
+            recycle(pixmap);
+        }
+    }
+
+    private static class Readback {
+        final int     buffer;
+        final long    fence;
+        final String  fileName;
+        final int     height;
+        final boolean opaque;
+        final int     width;
+
+        Readback(final int buffer, final long fence, final int width, final int height, final String fileName, final boolean opaque) {
+            this.buffer   = buffer;
+            this.fence    = fence;
+            this.width    = width;
+            this.height   = height;
+            this.fileName = fileName;
+            this.opaque   = opaque;
+        }
+    }
+
+}
@@ -20,37 +20,60 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.GL30;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
 import com.badlogic.gdx.graphics.g2d.PolygonSpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.GLFrameBuffer.FrameBufferBuilder;
-import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
+import de.bushnaq.abdalla.engine.util.FrameTimeHistogram;
+import de.bushnaq.abdalla.engine.util.FrameTimeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-class Frame {
-    long delta;
-}
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
+ * Scrolling graph of one value per frame.
+ * <p>
+ * The samples are kept in a ring buffer with one slot per column. The axes and labels never change and are drawn once into their own texture. Every sample is drawn once into the column of its slot in a
+ * second texture, so the columns texture is a ring too. {@link #draw(PolygonSpriteBatch)} only adds the new columns and composes the result from the two textures, the oldest column left.
+ * <p>
+ * The measured durations are also recorded in a {@link FrameTimeHistogram} for percentiles and hitch counts and can be logged to disk per time window.
+ *
  * @author kunterbunt
  */
-public abstract class Graph extends Array<Frame> {
-    private static final float          Y_AXIS_WIDTH = 45;
-    private final        AtlasRegion    atlasRegion;
-    private final        Color          backgroundColor;
-    private final        BitmapFont     captionFont;
-    private final        FrameBuffer    fbo;
-    private final        BitmapFont     font;
-    private final        Color          graphColor;
-    private final        String         graphName;
-    private final        Color          graphTipColor;
-    final                GlyphLayout    layout       = new GlyphLayout();
-    private final        int            maxFrames;
-    private final        float          pixelToUnitFactor;
-    private final        String         unit;
-    private final        ScreenViewport viewport     = new ScreenViewport();
+public abstract class Graph {
+    public static final  long               HITCH_THRESHOLD = 33333333L;// 30 fps
+    private static final float              Y_AXIS_WIDTH    = 45;
+    private final        AtlasRegion        atlasRegion;
+    private final        FrameBuffer        axesFbo;// axes, labels and caption
+    private              boolean            axesValid       = false;
+    private final        Color              backgroundColor;
+    private final        BitmapFont         captionFont;
+    private final        FrameBuffer        columnsFbo;// one column per ring buffer slot
+    private              boolean            columnsValid    = false;
+    private final        ScreenViewport     columnsViewport = new ScreenViewport();
+    private              int                count           = 0;// number of samples in the ring buffer
+    private final        FrameBuffer        fbo;
+    private final        BitmapFont         font;
+    private final        Color              graphColor;
+    private final        String             graphName;
+    private final        Color              graphTipColor;
+    private              int                head            = 0;// slot of the next sample
+    private final        FrameTimeHistogram histogram       = new FrameTimeHistogram(HITCH_THRESHOLD);
+    final                GlyphLayout        layout          = new GlyphLayout();
+    private              FrameTimeLog       log;
+    private final        Logger             logger          = LoggerFactory.getLogger(this.getClass());
+    private final        int                maxFrames;
+    private              int                pending         = 0;// number of newest samples that are not drawn into the columns texture yet
+    private final        float              pixelToUnitFactor;
+    private final        long[]             samples;
+    private final        String             unit;
+    private final        ScreenViewport     viewport        = new ScreenViewport();
 
     public Graph(String graphName, String unit, float pixelToUnitFactor, Color graphTipColor, Color graphColor, Color backgroundColor, int width, int height, BitmapFont font, BitmapFont captionFont, AtlasRegion atlasRegion) {
         this.graphName         = graphName;
@@ -60,30 +83,79 @@ public abstract class Graph extends Array<Frame> {
         this.graphColor        = graphColor;
         this.backgroundColor   = backgroundColor;
         this.maxFrames         = width - (int) Y_AXIS_WIDTH;
+        samples                = new long[maxFrames];
         viewport.update(width, height, true);
+        columnsViewport.update(maxFrames, height, true);
         this.font        = font;
         this.captionFont = captionFont;
         this.atlasRegion = atlasRegion;
         layout.setText(font, "1234567890");
-        {
-            final FrameBufferBuilder frameBufferBuilder = new FrameBufferBuilder(width, height);
-            frameBufferBuilder.addColorTextureAttachment(GL30.GL_RGBA8, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE);
-            fbo = frameBufferBuilder.build();
-        }
+        fbo        = createFrameBuffer(width, height);
+        axesFbo    = createFrameBuffer(width, height);
+        columnsFbo = createFrameBuffer(maxFrames, height);
     }
 
     public abstract void begin();
 
+    // clears the columns [from, to) of the columns texture, needs the scissor test to be enabled..
+    private void clearColumns(final int from, final int to) {
+        if (to > from) {
+            Gdx.gl.glScissor(from, 0, to - from, columnsFbo.getHeight());
+            Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+        }
+    }
+
+    private static FrameBuffer createFrameBuffer(final int width, final int height) {
+        final FrameBufferBuilder frameBufferBuilder = new FrameBufferBuilder(width, height);
+        frameBufferBuilder.addColorTextureAttachment(GL30.GL_RGBA8, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE);
+        return frameBufferBuilder.build();
+    }
+
     public void dispose() {
+        try {
+            stopLog();
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        }
         fbo.dispose();
+        axesFbo.dispose();
+        columnsFbo.dispose();
     }
 
     public void draw(PolygonSpriteBatch batch2D) {
+        Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
+        if (!axesValid) {
+            drawAxes(batch2D);
+            axesValid = true;
+        }
+        if (!columnsValid || pending != 0) {
+            drawColumns(batch2D);
+        }
+        final Texture axes    = axesFbo.getColorBufferTexture();
+        final Texture columns = columnsFbo.getColorBufferTexture();
+        final int     height  = fbo.getHeight();
+        final int     oldest  = count == maxFrames ? head : 0;
         batch2D.setProjectionMatrix(viewport.getCamera().combined);
         fbo.begin();
         batch2D.begin();
+        batch2D.setColor(Color.WHITE);
+        // the axes texture covers the whole fbo, copying it replaces clearing
+        batch2D.disableBlending();
+        batch2D.draw(axes, 0, 0, axes.getWidth(), height, 0, 0, axes.getWidth(), height, false, true);
+        batch2D.enableBlending();
+        batch2D.draw(columns, Y_AXIS_WIDTH, 0, maxFrames - oldest, height, oldest, 0, maxFrames - oldest, height, false, true);
+        if (oldest != 0) {
+            batch2D.draw(columns, Y_AXIS_WIDTH + maxFrames - oldest, 0, oldest, height, 0, 0, oldest, height, false, true);
+        }
+        batch2D.end();
+        fbo.end();
+    }
+
+    private void drawAxes(PolygonSpriteBatch batch2D) {
+        batch2D.setProjectionMatrix(viewport.getCamera().combined);
+        axesFbo.begin();
+        batch2D.begin();
         batch2D.enableBlending();
-        Gdx.gl.glDisable(GL20.GL_DEPTH_TEST);
         Gdx.gl.glClearColor(0, 0, 0, 0);
         Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
         {
@@ -104,20 +176,52 @@ public abstract class Graph extends Array<Frame> {
             font.setColor(Color.WHITE);
             captionFont.draw(batch2D, graphName, viewport.getScreenWidth() / 2, layout.height);
         }
+        batch2D.end();
+        axesFbo.end();
+        batch2D.setColor(Color.WHITE);
+    }
 
-        for (int i = 0; i < size; i++) {
-            Frame frame = get(i);
+    /**
+     * Draws the pending samples into their columns. Blending is disabled, so that the columns keep their own alpha and are blended only once when they are composed over the axes.
+     */
+    private void drawColumns(PolygonSpriteBatch batch2D) {
+        if (!columnsValid) {
+            pending = count;
+        }
+        batch2D.setProjectionMatrix(columnsViewport.getCamera().combined);
+        columnsFbo.begin();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        if (columnsValid) {
+            Gdx.gl.glEnable(GL20.GL_SCISSOR_TEST);
+            final int first = head - pending;
+            if (first < 0) {
+                clearColumns(first + maxFrames, maxFrames);
+                clearColumns(0, head);
+            } else {
+                clearColumns(first, head);
+            }
+            Gdx.gl.glDisable(GL20.GL_SCISSOR_TEST);
+        } else {
+            Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+            columnsValid = true;
+        }
+        batch2D.begin();
+        batch2D.disableBlending();
+        for (int i = pending; i > 0; i--) {
+            final int  slot  = (head - i + maxFrames) % maxFrames;
+            final long delta = samples[slot];
             batch2D.setColor(graphTipColor);
-            batch2D.draw(atlasRegion, Y_AXIS_WIDTH + i, layout.height + frame.delta, 1, 1);
+            batch2D.draw(atlasRegion, slot, layout.height + delta, 1, 1);
             batch2D.setColor(graphColor);
-            if (frame.delta > 0) {
-                batch2D.draw(atlasRegion, Y_AXIS_WIDTH + i, layout.height, 1, frame.delta - 1);
+            if (delta > 0) {
+                batch2D.draw(atlasRegion, slot, layout.height, 1, delta - 1);
             }
         }
-
+        batch2D.enableBlending();
         batch2D.end();
-        fbo.end();
+        columnsFbo.end();
         batch2D.setColor(Color.WHITE);
+        pending = 0;
     }
 
     public abstract void end();
@@ -126,15 +230,54 @@ public abstract class Graph extends Array<Frame> {
         return fbo;
     }
 
+    /**
+     * @return all durations in nanoseconds recorded since the graph was created or the histogram was reset.
+     */
+    public FrameTimeHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Records a measured duration.
+     *
+     * @param nanos duration in nanoseconds.
+     */
+    protected void record(final long nanos) {
+        histogram.record(nanos);
+        if (log != null) {
+            log.record(nanos);
+        }
+    }
+
+    /**
+     * Appends the statistics of every window to a csv file, see {@link FrameTimeLog}.
+     *
+     * @param fileName the csv file, an existing file is appended to.
+     * @param windowMs length of a window in milliseconds.
+     * @throws IOException
+     */
+    public void startLog(final String fileName, final long windowMs) throws IOException {
+        stopLog();
+        log = new FrameTimeLog(Paths.get(fileName), windowMs * 1000000L, HITCH_THRESHOLD);
+    }
+
+    public void stopLog() throws IOException {
+        if (log != null) {
+            final FrameTimeLog l = log;
+            log = null;
+            l.close();
+        }
+    }
+
     protected void update(long value) {
-        Frame frame;
-        if (size == maxFrames) {
-            frame = removeIndex(0);
-        } else {
-            frame = new Frame();
+        samples[head] = value;
+        head          = (head + 1) % maxFrames;
+        if (count < maxFrames) {
+            count++;
+        }
+        if (pending < maxFrames) {
+            pending++;
         }
-        frame.delta = value;
-        add(frame);
     }
 
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Cubemap.CubemapSide;
+import com.badlogic.gdx.graphics.CubemapData;
+import com.badlogic.gdx.graphics.GL20;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RGBA8888 cubemap with all faces and mipmap levels in one buffer, that can be stored in and memory mapped from a single binary file.
+ * <p>
+ * The file starts with a {@value #HEADER_SIZE} byte little endian header: magic, key, size of level 0 and number of levels. The raw pixels follow level by level, every level holds the faces in the order of
+ * {@link CubemapSide#values()}. The pixels are uploaded as they are, nothing is decoded.
+ *
+ * @author abdalla bushnaq
+ */
+public class IblCubemapData implements CubemapData {
+    static final         int        HEADER_SIZE = 32;
+    private static final int        MAGIC       = 0x314C4249;// "IBL1"
+    private final        int        levels;
+    private final        ByteBuffer pixels;
+    private final        int        size;
+
+    /**
+     * @param pixels {@link #byteSize(int, int)} bytes of pixels, see {@link #offset(int, int, int)}.
+     * @param size   width and height of level 0.
+     * @param levels number of mipmap levels.
+     */
+    public IblCubemapData(final ByteBuffer pixels, final int size, final int levels) {
+        this.pixels = pixels;
+        this.size   = size;
+        this.levels = levels;
+    }
+
+    /**
+     * @return number of bytes of all faces of all levels.
+     */
+    public static int byteSize(final int size, final int levels) {
+        return offset(size, levels, 0);
+    }
+
+    /**
+     * Loads the cubemap data from the given file, the file is memory mapped.
+     *
+     * @param file the file.
+     * @param key  the key the file must have been written with.
+     * @return the cubemap data or null if the file does not exist or does not fit the key.
+     * @throws IOException
+     */
+    public static IblCubemapData load(final File file, final long key) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            final int  magic     = header.getInt();
+            final long fileKey   = header.getLong();
+            final int  size      = header.getInt();
+            final int  levels    = header.getInt();
+            final long byteCount = magic == MAGIC && size > 0 && levels > 0 && levels <= 31 ? byteSize(size, levels) : -1;
+            if (fileKey != key || byteCount == -1 || channel.size() != HEADER_SIZE + byteCount) {
+                return null;
+            }
+            //the mapping stays valid after the channel is closed
+            return new IblCubemapData(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, byteCount), size, levels);
+        }
+    }
+
+    /**
+     * @return offset of the given face of the given level in the pixel buffer.
+     */
+    public static int offset(final int size, final int level, final int face) {
+        int offset = 0;
+        for (int l = 0; l < level; l++) {
+            final int s = Math.max(1, size >> l);
+            offset += 6 * s * s * 4;
+        }
+        final int s = Math.max(1, size >> level);
+        return offset + face * s * s * 4;
+    }
+
+    @Override
+    public void consumeCubemapData() {
+        Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        for (int level = 0; level < levels; level++) {
+            final int s = Math.max(1, size >> level);
+            for (int face = 0; face < 6; face++) {
+                final int        offset = offset(size, level, face);
+                final ByteBuffer slice  = pixels.duplicate();
+                slice.position(offset).limit(offset + s * s * 4);
+                Gdx.gl.glTexImage2D(CubemapSide.values()[face].glEnum, level, GL20.GL_RGBA, s, s, 0, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, slice.slice());
+            }
+        }
+    }
+
+    @Override
+    public int getHeight() {
+        return size;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public ByteBuffer getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return size;
+    }
+
+    @Override
+    public boolean isManaged() {
+        return false;
+    }
+
+    @Override
+    public boolean isPrepared() {
+        return true;
+    }
+
+    @Override
+    public void prepare() {
+    }
+
+    /**
+     * Writes the cubemap data into the given file. The data is written into a temporary file first, so that an interrupted write never leaves a file that looks valid.
+     *
+     * @param file the file, an existing file is replaced.
+     * @param key  the key, usually a hash of everything the pixels depend on.
+     * @throws IOException
+     */
+    public void write(final File file, final long key) throws IOException {
+        final Path path = file.toPath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putLong(key).putInt(size).putInt(levels);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            final ByteBuffer data = pixels.duplicate();
+            data.clear();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
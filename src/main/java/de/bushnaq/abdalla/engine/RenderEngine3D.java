@@ -17,7 +17,6 @@
 package de.bushnaq.abdalla.engine;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
@@ -46,8 +45,6 @@ import com.badlogic.gdx.math.collision.BoundingBox;
 import com.badlogic.gdx.math.collision.Ray;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.BufferUtils;
-import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.crashinvaders.vfx.VfxManager;
 import de.bushnaq.abdalla.engine.camera.MovingCamera;
@@ -83,7 +80,6 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.Deflater;
 
 /**
  * Project independent 3d class that renders everything
@@ -125,6 +121,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
     private final Fog                         fog                              = new Fog(Color.BLACK, 15f, 30f, 0.5f);
     private final BitmapFont                  font;
     private       Graph                       fpsGraph;
+    private final FrameBufferCapture          frameBufferCapture               = new FrameBufferCapture(16, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 8);
     private final T                           gameEngine;
     public        GameShaderProviderInterface gameShaderProvider;
     private       boolean                     gammaCorrected;
@@ -172,7 +169,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
     public final  Array<GameObject<T>>        staticGameObjects                = new Array<>();
     private final Set<ObjectRenderer<T>>      staticText3DList                 = new HashSet<>();
     public        int                         testCase                         = 1;
-    private final Set<Text2D>                 text2DList                       = new HashSet<>();
+    private final Text2DLayer                 text2DLayer                      = new Text2DLayer();
     private       float                       timeOfDay                        = 8;                                                                    // 24h time
     private final boolean                     useDynamicCache                  = false;
     private final boolean                     useStaticCache                   = true;
@@ -247,7 +244,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
     }
 
     public void add(Text2D text2d) {
-        text2DList.add(text2d);
+        text2DLayer.add(text2d);
     }
 
     public void addBloomEffect() {
@@ -380,7 +377,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         final String           pattern          = "yyyy-MM-dd-HH-mm-ss";
         final SimpleDateFormat simpleDateFormat = new SimpleDateFormat(pattern);
         final String           dateAsString     = simpleDateFormat.format(date);
-        final String           fileName         = "screenshots/" + dateAsString + "-" + append + ".png";
+        final String           fileName         = "screenshots/" + dateAsString + "-" + Gdx.graphics.getFrameId() + "-" + append + ".png";
         return fileName;
     }
 
@@ -523,6 +520,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         if (profiler.isEnabled()) {
             profiler.disable();
         }
+        frameBufferCapture.dispose();
         staticCache.dispose();
         dynamicCache.dispose();
         vfxManager.dispose();
@@ -553,6 +551,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
     private void disposeGraphs() {
         gpuGraph.dispose();
         cpuGraph.dispose();
+        fpsGraph.dispose();
     }
 
     private void disposeShader() {
@@ -613,6 +612,17 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         return fog;
     }
 
+    /**
+     * @return the frame time graph, its histogram holds the frame time percentiles and hitch counts.
+     */
+    public Graph getFpsGraph() {
+        return fpsGraph;
+    }
+
+    public FrameBufferCapture getFrameBufferCapture() {
+        return frameBufferCapture;
+    }
+
 //	private void createDepthOfFieldMeter() {
 //		if (isDebugMode()) {
 //
@@ -759,7 +769,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         if (takeScreenShot) {
             final Date   date     = new Date();
             final String fileName = createFileName(date, name);
-            writeFrameBufferToDisk(fileName, frameBuffer);
+            frameBufferCapture.capture(frameBuffer, fileName);
             takeScreenShot = false;
         }
 
@@ -769,17 +779,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         if (takeScreenShot) {
             final Date   date     = new Date();
             final String fileName = createFileName(date, "frame.buffer");
-            final byte[] pixels   = ScreenUtils.getFrameBufferPixels(0, 0, Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), true);
-            // This loop makes sure the whole screenshot is opaque and looks exactly like
-            // what the user is seeing
-            for (int i = 4; i < pixels.length; i += 4) {
-                pixels[i - 1] = (byte) 255;
-            }
-            final Pixmap pixmap = new Pixmap(Gdx.graphics.getBackBufferWidth(), Gdx.graphics.getBackBufferHeight(), Pixmap.Format.RGBA8888);
-            BufferUtils.copy(pixels, 0, pixmap.getPixels(), pixels.length);
-            final FileHandle handle = Gdx.files.local(fileName);
-            PixmapIO.writePNG(handle, pixmap);
-            pixmap.dispose();
+            frameBufferCapture.capture(null, fileName);
         }
     }
 
@@ -859,6 +859,10 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         }
     }
 
+    public boolean remove(Text2D text2d) {
+        return text2DLayer.remove(text2d);
+    }
+
     public boolean removeAllDynamic() {
         dynamicGameObjects.clear();
         return true;
@@ -885,7 +889,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
     }
 
     public void removeAllText2D() {
-        text2DList.clear();
+        text2DLayer.clear();
     }
 
     public void removeBloomEffect() {
@@ -924,6 +928,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
 //        glEnable(GL_FRAMEBUFFER_SRGB);
         fpsGraph.end();
         fpsGraph.begin();
+        frameBufferCapture.update();
         float x1 = shadowLight.getCamera().position.x;
         if (isDynamicDayTime()) {
             // keep only what is smaller than 10000
@@ -1041,9 +1046,7 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         renderEngine2D.batch.begin();
         Gdx.gl20.glDisable(GL20.GL_DEPTH_TEST);
         renderEngine2D.batch.enableBlending();
-        for (Text2D text2d : text2DList) {
-            text2d.draw(renderEngine2D.batch);
-        }
+        text2DLayer.draw(renderEngine2D.batch);
         renderEngine2D.batch.end();
     }
 
@@ -1664,20 +1667,4 @@ public class RenderEngine3D<T extends RenderEngineExtension> {
         // }
     }
 
-    private void writeFrameBufferToDisk(final String fileName, final FrameBuffer frameBuffer) {
-        frameBuffer.bind();
-        // final FrameBuffer frameBuffer = shadowLight.getFrameBuffer();
-//		final Texture	texture				= frameBuffer.getColorBufferTexture();
-        // TextureData textureData = texture.getTextureData();
-        // if (!textureData.isPrepared()) {
-        // textureData.prepare();
-        // }
-        // Pixmap pixmap = textureData.consumePixmap();
-        final Pixmap frameBufferPixmap = Pixmap.createFromFrameBuffer(0, 0, frameBuffer.getWidth(), frameBuffer.getHeight());
-        // final Pixmap frameBufferPixmap = ScreenUtils.getFrameBufferPixmap(0, 0,
-        // frameBuffer.getWidth(), frameBuffer.getHeight());
-        PixmapIO.writePNG(Gdx.files.local(fileName), frameBufferPixmap, Deflater.DEFAULT_COMPRESSION, true);
-        FrameBuffer.unbind();
-    }
-
 }
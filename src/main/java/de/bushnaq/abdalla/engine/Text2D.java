@@ -17,22 +17,28 @@
 package de.bushnaq.abdalla.engine;
 
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
-import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
 import com.badlogic.gdx.graphics.g2d.PolygonSpriteBatch;
 import com.badlogic.gdx.utils.Align;
 
 /**
  * @author kunterbunt
  * 2D Text layered on top of 3D scene.
+ * The glyphs are laid out once into a {@link BitmapFontCache}. Only a new text lays them out again, a new position moves the cached glyphs and a new color recolors them, so drawing an unchanged text does not
+ * allocate.
  * TODO example
  */
 public class Text2D {
-    BitmapFont font;
-    String     text;
-    int        x;
-    int        y;
-    private Color color;
+    private final BitmapFontCache cache;
+    private       float           cachedColor;// packed color of the cached glyphs
+    private       String          cachedText;// text of the cached glyphs
+    private       Color           color;
+                  BitmapFont      font;
+                  String          text;
+                  int             x;
+                  int             y;
 
     public Text2D(final String text, int x, int y, Color color, final BitmapFont font) {
         this.text  = text;
@@ -40,14 +46,28 @@ public class Text2D {
         this.y     = y;
         this.color = color;
         this.font  = font;
+        cache      = font.newFontCache();
     }
 
     public void draw(PolygonSpriteBatch batch2d) {
-        final GlyphLayout layout = new GlyphLayout();
-        layout.setText(font, text);
-        final float width = layout.width;// contains the width of the current set text
-        font.setColor(color);
-        font.draw(batch2d, text, x, y, width, Align.left, false);
+        if (!text.equals(cachedText)) {
+            cache.clear();
+            cache.setColor(color);
+            cache.addText(text, 0, 0, 0, Align.left, false);
+            cache.setPosition(x, y);
+            cachedColor = color.toFloatBits();
+            cachedText  = text;
+        } else {
+            if (cache.getX() != x || cache.getY() != y) {
+                cache.setPosition(x, y);
+            }
+            if (cachedColor != color.toFloatBits()) {
+                // the color may have been modified in place
+                cache.setColors(color);
+                cachedColor = color.toFloatBits();
+            }
+        }
+        cache.draw(batch2d);
     }
 
     public Color getColor() {
@@ -58,6 +78,13 @@ public class Text2D {
         return text;
     }
 
+    /**
+     * @return the texture of the first font page, texts are drawn grouped by it.
+     */
+    Texture getTexture() {
+        return font.getRegion().getTexture();
+    }
+
     public int getX() {
         return x;
     }
@@ -81,4 +108,4 @@ public class Text2D {
     public void setY(int y) {
         this.y = y;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PolygonSpriteBatch;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import java.util.Comparator;
+
+/**
+ * Retained layer of {@link Text2D} drawn on top of the 3D scene.
+ * <p>
+ * The texts are drawn grouped by font texture, in the order the textures were first added, and in the order they were added within a group. The order is deterministic and the batch switches textures at most
+ * once per texture. The draw order is only sorted again after texts were added or removed.
+ *
+ * @author abdalla bushnaq
+ */
+public class Text2DLayer {
+    private final Array<Text2D>         drawOrder    = new Array<>();
+    private final ObjectSet<Text2D>     members      = new ObjectSet<>();
+    private       boolean               sorted       = true;
+    private final Array<Text2D>         texts        = new Array<>();// in the order they were added
+    private final ObjectIntMap<Texture> textureOrder = new ObjectIntMap<>();
+    private final Comparator<Text2D>    comparator   = Comparator.comparingInt(text -> textureOrder.get(text.getTexture(), 0));
+
+    /**
+     * @param text the text to add, adding a text that is already in the layer does nothing.
+     */
+    public void add(final Text2D text) {
+        if (members.add(text)) {
+            texts.add(text);
+            sorted = false;
+        }
+    }
+
+    public void clear() {
+        members.clear();
+        texts.clear();
+        drawOrder.clear();
+        sorted = true;
+    }
+
+    /**
+     * Draws all texts, the batch must have been started.
+     *
+     * @param batch2D the batch to draw into.
+     */
+    public void draw(final PolygonSpriteBatch batch2D) {
+        if (!sorted) {
+            sort();
+        }
+        for (int i = 0; i < drawOrder.size; i++) {
+            drawOrder.get(i).draw(batch2D);
+        }
+    }
+
+    /**
+     * @param text the text to remove.
+     * @return true if the text was in the layer.
+     */
+    public boolean remove(final Text2D text) {
+        if (members.remove(text)) {
+            texts.removeValue(text, true);
+            sorted = false;
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return texts.size;
+    }
+
+    private void sort() {
+        textureOrder.clear();
+        for (int i = 0; i < texts.size; i++) {
+            final Texture texture = texts.get(i).getTexture();
+            if (!textureOrder.containsKey(texture)) {
+                textureOrder.put(texture, textureOrder.size);
+            }
+        }
+        drawOrder.clear();
+        drawOrder.addAll(texts);
+        drawOrder.sort(comparator);// stable, keeps the order of addition within a texture
+        sorted = true;
+    }
+
+}
@@ -37,7 +37,9 @@ public class TimeGraph extends Graph {
     }
 
     public void end() {
-        update((System.nanoTime() - absolute) / FACTOR);
+        final long delta = System.nanoTime() - absolute;
+        record(delta);
+        update(delta / FACTOR);
     }
 
 }
@@ -17,24 +17,28 @@
 package de.bushnaq.abdalla.engine.audio;
 
 import com.badlogic.gdx.math.Vector3;
+import de.bushnaq.abdalla.engine.util.SlotMap;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 public abstract class AbstractAudioProducer implements AudioProducer {
-    private         boolean      ambient      = false;//position always follows camera
-    protected       boolean      enabled      = false;//a disabled synth does not possess an audio source and any of the source attached resource like filters and buffers
-    protected       Filters      filters;
-    protected       float        gain         = 1.0f;
-    protected       boolean      ignore;
-    private final   byte[]       oneKiloBytes = new byte[1024];//used to fast zero the byte buffer in times of silence
-    protected       boolean      play         = false;//is the source playing?
-    protected final Vector3      position     = new Vector3();//position of the audio source
-    private         boolean      radio        = false;
-    protected final int          samplerate;
-    protected       OpenAlSource source       = null;//if enabled, this will hold the attached openal source, otherwise null
-    private         float        sourceGain;
-    protected final Vector3      velocity     = new Vector3();//velocity of the audio source
+    private         boolean           ambient      = false;//position always follows camera
+    protected       boolean           enabled      = false;//a disabled synth does not possess an audio source and any of the source attached resource like filters and buffers
+    protected       Filters           filters;
+    protected       float             gain         = 1.0f;
+    private         AudioProducerGrid grid;//spatial index of the audio engine, kept up to date whenever we move
+    private         long              handle       = SlotMap.INVALID_HANDLE;//handle in the producer registry of the audio engine
+    protected       boolean           ignore;
+    private final   byte[]            oneKiloBytes = new byte[1024];//used to fast zero the byte buffer in times of silence
+    protected       boolean           play         = false;//is the source playing?
+    protected final Vector3           position     = new Vector3();//position of the audio source
+    private         float             priority     = 1.0f;//user priority used by the VoiceManager, higher is more important
+    private         boolean           radio        = false;
+    protected final int               samplerate;
+    protected       OpenAlSource      source       = null;//if enabled, this will hold the attached openal source, otherwise null
+    private         float             sourceGain;
+    protected final Vector3           velocity     = new Vector3();//velocity of the audio source
 
     public AbstractAudioProducer(int samplerate) {
         this.samplerate = samplerate;
@@ -51,10 +55,14 @@ public abstract class AbstractAudioProducer implements AudioProducer {
     public void adaptToVelocity(final float speed) throws OpenAlException {
     }
 
+    /**
+     * Detaches this producer from its source, when this method returns the source does not render any block for this producer anymore.
+     */
     @Override
     public OpenAlSource disable() throws OpenAlException {
         enabled = false;
         source.pause();
+        source.detach();//waits for the block in flight, it still needs the source
         final OpenAlSource sourceBuffer = source;
         source = null;
         return sourceBuffer;
@@ -92,11 +100,21 @@ public abstract class AbstractAudioProducer implements AudioProducer {
         return gain;
     }
 
+    @Override
+    public long getHandle() {
+        return handle;
+    }
+
     @Override
     public Vector3 getPosition() {
         return position;
     }
 
+    @Override
+    public float getPriority() {
+        return priority;
+    }
+
     @Override
     public int getSamplerate() {
         return samplerate;
@@ -178,6 +196,8 @@ public abstract class AbstractAudioProducer implements AudioProducer {
 
     public void setAmbient(boolean ambient) {
         this.ambient = ambient;
+        if (grid != null)
+            grid.update(this);
     }
 
     @Override
@@ -197,11 +217,23 @@ public abstract class AbstractAudioProducer implements AudioProducer {
         }
     }
 
+    @Override
+    public void setGrid(final AudioProducerGrid grid) {
+        this.grid = grid;
+    }
+
+    @Override
+    public void setHandle(final long handle) {
+        this.handle = handle;
+    }
+
     @Override
     public void setPositionAndVelocity(final float[] position, final float[] velocity) throws OpenAlException {
         if (!ambient) {
             if (this.getPosition().x != position[0] || this.getPosition().y != position[1] || this.getPosition().z != position[2]) {
                 this.getPosition().set(position[0], position[1], position[2]);
+                if (grid != null)
+                    grid.update(this);
             }
             if (isEnabled()) {
                 source.setPosition(position);
@@ -217,11 +249,34 @@ public abstract class AbstractAudioProducer implements AudioProducer {
         }
     }
 
+    @Override
+    public void setPriority(final float priority) {
+        this.priority = priority;
+    }
+
     @Override
     public void setRadio(boolean radio) {
         this.radio = radio;
     }
 
+    @Override
+    public void startCapture(final String fileName) throws IOException, OpenAlcException {
+        if (isEnabled()) {
+            source.startCapture(fileName);
+        } else {
+            throw new OpenAlcException("Synth is disabled");
+        }
+    }
+
+    @Override
+    public void stopCapture() throws IOException, OpenAlcException {
+        if (isEnabled()) {
+            source.stopCapture();
+        } else {
+            throw new OpenAlcException("Synth is disabled");
+        }
+    }
+
     @Override
     public void waitForPlay() throws InterruptedException, OpenAlException {
         if (isEnabled()) {
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+/**
+ * Latency policy of an OpenAlSource.
+ * The latency is the number of queued openal buffers times the size of a buffer, the size is a multiple of the block size the producers render.
+ * Every underrun increases the latency by one step, first more buffers then bigger buffers.
+ * After a window of buffers without underrun, that never drained the queue below two buffers, the latency is reduced by one step in reverse order.
+ *
+ * @author abdalla bushnaq
+ */
+public class AdaptiveLatency {
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+    public static final int MAX_BUFFER_COUNT     = 8;
+    public static final int MAX_SIZE_FACTOR      = 4;
+    public static final int MIN_BUFFER_COUNT     = 2;
+    public static final int STABLE_WINDOW        = 256;//buffers without underrun before the latency is reduced
+    private             int bufferCount          = DEFAULT_BUFFER_COUNT;
+    private             int lowestQueueDepth     = Integer.MAX_VALUE;//lowest queue depth within the current window
+    private             int maxBufferCount       = MAX_BUFFER_COUNT;
+    private             int maxSizeFactor        = MAX_SIZE_FACTOR;
+    private             int minBufferCount       = MIN_BUFFER_COUNT;
+    private             int sizeFactor           = 1;
+    private             int window               = 0;//buffers submitted in the current window
+
+    /**
+     * @param minBufferCount lowest number of queued buffers, at least 2
+     * @param maxBufferCount highest number of queued buffers, at most MAX_BUFFER_COUNT
+     * @param maxSizeFactor  highest number of blocks in one buffer, a power of two of at most MAX_SIZE_FACTOR
+     */
+    static void checkBounds(final int minBufferCount, final int maxBufferCount, final int maxSizeFactor) {
+        if (minBufferCount < MIN_BUFFER_COUNT || maxBufferCount > MAX_BUFFER_COUNT || minBufferCount > maxBufferCount)
+            throw new IllegalArgumentException(String.format("buffer count bounds %d-%d not within %d-%d", minBufferCount, maxBufferCount, MIN_BUFFER_COUNT, MAX_BUFFER_COUNT));
+        if (maxSizeFactor < 1 || maxSizeFactor > MAX_SIZE_FACTOR || Integer.bitCount(maxSizeFactor) != 1)
+            throw new IllegalArgumentException(String.format("size factor %d is not a power of two within 1-%d", maxSizeFactor, MAX_SIZE_FACTOR));
+    }
+
+    /**
+     * @return number of buffers that should be queued
+     */
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * @return latency in blocks
+     */
+    public int getLatency() {
+        return bufferCount * sizeFactor;
+    }
+
+    public int getMaxBufferCount() {
+        return maxBufferCount;
+    }
+
+    public int getMaxSizeFactor() {
+        return maxSizeFactor;
+    }
+
+    public int getMinBufferCount() {
+        return minBufferCount;
+    }
+
+    /**
+     * @return number of blocks in one openal buffer
+     */
+    public int getSizeFactor() {
+        return sizeFactor;
+    }
+
+    private void restartWindow() {
+        window           = 0;
+        lowestQueueDepth = Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param minBufferCount lowest number of queued buffers, at least 2
+     * @param maxBufferCount highest number of queued buffers, at most MAX_BUFFER_COUNT
+     * @param maxSizeFactor  highest number of blocks in one buffer, a power of two of at most MAX_SIZE_FACTOR
+     */
+    public synchronized void setBounds(final int minBufferCount, final int maxBufferCount, final int maxSizeFactor) {
+        checkBounds(minBufferCount, maxBufferCount, maxSizeFactor);
+        this.minBufferCount = minBufferCount;
+        this.maxBufferCount = maxBufferCount;
+        this.maxSizeFactor  = maxSizeFactor;
+        bufferCount         = Math.max(minBufferCount, Math.min(maxBufferCount, bufferCount));
+        sizeFactor          = Math.min(maxSizeFactor, sizeFactor);
+        restartWindow();
+    }
+
+    /**
+     * Called for every buffer that is submitted.
+     *
+     * @param queueDepth number of buffers still queued in openal before this buffer was submitted
+     * @return true if the latency was reduced
+     */
+    public synchronized boolean submitted(final int queueDepth) {
+        lowestQueueDepth = Math.min(lowestQueueDepth, queueDepth);
+        if (++window < STABLE_WINDOW)
+            return false;
+        final boolean headroom = lowestQueueDepth >= 2;
+        restartWindow();
+        if (headroom) {
+            if (sizeFactor > 1) {
+                sizeFactor /= 2;
+                return true;
+            } else if (bufferCount > minBufferCount) {
+                bufferCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called whenever the queue of a playing source ran dry.
+     *
+     * @return true if the latency was increased
+     */
+    public synchronized boolean underrun() {
+        restartWindow();
+        if (bufferCount < maxBufferCount) {
+            bufferCount++;
+            return true;
+        } else if (sizeFactor < maxSizeFactor) {
+            sizeFactor *= 2;
+            return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import org.lwjgl.openal.AL10;
+
+import java.util.Arrays;
+
+/**
+ * Collects the listener and source property changes of one frame and applies them to openal in one pass.
+ * Every property only keeps its latest value and is only sent if it differs from the value openal already has, so a source that is moved ten times in a frame costs one call.
+ * In release mode openal errors are checked once per batch, with assertions enabled every call is checked to find the call that failed.
+ *
+ * @author abdalla bushnaq
+ */
+public class AlCommandBuffer {
+    private final float[]        appliedListenerGain        = {Float.NaN};
+    private final float[]        appliedListenerOrientation = {0, 0, -1, 0, 1, 0};//openal default
+    private final float[]        appliedListenerPosition    = new float[3];
+    private final float[]        appliedListenerVelocity    = new float[3];
+    private       boolean        checkEachCommand           = AlCommandBuffer.class.desiredAssertionStatus();
+    private       int            commandCount               = 0;//openal calls of the last batch
+    private       OpenAlSource[] dirtySources               = new OpenAlSource[64];
+    private       int            dirtySourceCount           = 0;
+    private       boolean        listenerDirty              = true;
+    private final float[]        listenerGain               = {1f};
+    private final float[]        listenerOrientation        = new float[6];
+    private final float[]        listenerPosition           = new float[3];
+    private final float[]        listenerVelocity           = new float[3];
+    private       long           requestCount               = 0;//property changes requested since creation
+
+    /**
+     * Called after every openal call of a batch, counts the call and checks for errors if every call is checked.
+     *
+     * @param message error message prefix
+     * @throws OpenAlException
+     */
+    void applied(final String message) throws OpenAlException {
+        commandCount++;
+        if (checkEachCommand)
+            AudioEngine.checkAlError(message);
+    }
+
+    private void applyListener() throws OpenAlException {
+        if (!Arrays.equals(listenerGain, appliedListenerGain)) {
+            AL10.alListenerf(AL10.AL_GAIN, listenerGain[0]);
+            applied("Failed to set listener gain with error #");
+            appliedListenerGain[0] = listenerGain[0];
+        }
+        if (!Arrays.equals(listenerOrientation, appliedListenerOrientation)) {
+            AL10.alListenerfv(AL10.AL_ORIENTATION, listenerOrientation);
+            applied("Failed to set listener orientation with error #");
+            System.arraycopy(listenerOrientation, 0, appliedListenerOrientation, 0, listenerOrientation.length);
+        }
+        if (!Arrays.equals(listenerPosition, appliedListenerPosition)) {
+            AL10.alListener3f(AL10.AL_POSITION, listenerPosition[0], listenerPosition[1], listenerPosition[2]);
+            applied("Failed to set listener position with error #");
+            System.arraycopy(listenerPosition, 0, appliedListenerPosition, 0, listenerPosition.length);
+        }
+        if (!Arrays.equals(listenerVelocity, appliedListenerVelocity)) {
+            AL10.alListener3f(AL10.AL_VELOCITY, listenerVelocity[0], listenerVelocity[1], listenerVelocity[2]);
+            applied("Failed to set listener velocity with error #");
+            System.arraycopy(listenerVelocity, 0, appliedListenerVelocity, 0, listenerVelocity.length);
+        }
+        listenerDirty = false;
+    }
+
+    /**
+     * Queue a source that has property changes, a source is only queued once per batch.
+     * Must be called while holding the lock of this command buffer.
+     *
+     * @param source the source
+     */
+    void enqueue(final OpenAlSource source) {
+        requestCount++;
+        if (source.isQueued())
+            return;
+        source.setQueued(true);
+        if (dirtySourceCount == dirtySources.length)
+            dirtySources = Arrays.copyOf(dirtySources, dirtySources.length * 2);
+        dirtySources[dirtySourceCount++] = source;
+    }
+
+    /**
+     * Apply all collected changes, must be called on a thread that has the openal context.
+     *
+     * @throws OpenAlException
+     */
+    public synchronized void flush() throws OpenAlException {
+        commandCount = 0;
+        if (listenerDirty)
+            applyListener();
+        try {
+            for (int i = 0; i < dirtySourceCount; i++) {
+                final OpenAlSource source = dirtySources[i];
+                source.setQueued(false);
+                source.applyProperties(this);
+                dirtySources[i] = null;
+            }
+        } finally {
+            for (int i = 0; i < dirtySourceCount; i++) {
+                if (dirtySources[i] != null) {
+                    dirtySources[i].setQueued(false);
+                    dirtySources[i] = null;
+                }
+            }
+            dirtySourceCount = 0;
+        }
+        if (!checkEachCommand && commandCount > 0)
+            AudioEngine.checkAlError("Failed to apply batched properties with error #");
+    }
+
+    /**
+     * @return number of openal calls of the last batch
+     */
+    public synchronized int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return number of property changes requested
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    public synchronized boolean isCheckEachCommand() {
+        return checkEachCommand;
+    }
+
+    /**
+     * @param checkEachCommand check for openal errors after every call instead of once per batch, enabled by default if assertions are enabled
+     */
+    public synchronized void setCheckEachCommand(final boolean checkEachCommand) {
+        this.checkEachCommand = checkEachCommand;
+    }
+
+    public synchronized void setListenerGain(final float gain) {
+        requestCount++;
+        listenerGain[0] = gain;
+        listenerDirty   = true;
+    }
+
+    public synchronized void setListenerOrientation(final Vector3 direction, final Vector3 up) {
+        requestCount++;
+        listenerOrientation[0] = direction.x;
+        listenerOrientation[1] = direction.y;
+        listenerOrientation[2] = direction.z;
+        listenerOrientation[3] = up.x;
+        listenerOrientation[4] = up.y;
+        listenerOrientation[5] = up.z;
+        listenerDirty          = true;
+    }
+
+    public synchronized void setListenerPositionAndVelocity(final Vector3 position, final Vector3 velocity) {
+        requestCount++;
+        listenerPosition[0] = position.x;
+        listenerPosition[1] = position.y;
+        listenerPosition[2] = position.z;
+        listenerVelocity[0] = velocity.x;
+        listenerVelocity[1] = velocity.y;
+        listenerVelocity[2] = velocity.z;
+        listenerDirty       = true;
+    }
+
+}
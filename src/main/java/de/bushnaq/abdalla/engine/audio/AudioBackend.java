@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The device the AudioEngine plays on.
+ * A backend opens the openal device, creates the context and makes it current, all sources and effects are created in that context.
+ *
+ * @author abdalla bushnaq
+ */
+public interface AudioBackend {
+    int BYTES_PER_FRAME = 4;//16 bit stereo
+
+    /**
+     * Open the device and make a new context current.
+     *
+     * @param samplerate samplerate of the engine
+     * @throws OpenAlException
+     */
+    void create(int samplerate) throws OpenAlException;
+
+    /**
+     * Destroy the context and close the device.
+     *
+     * @throws OpenAlException
+     */
+    void dispose() throws OpenAlException;
+
+    long getDevice();
+
+    /**
+     * @return name of the device
+     */
+    String getName();
+
+    /**
+     * @return true if the device consumes audio in real time, false if the mix is rendered on demand
+     */
+    boolean isRealTime();
+
+    /**
+     * Render the next frames of the mix, only supported by backends that are not real time.
+     *
+     * @param buffer receives 16 bit signed stereo frames in native byte order, from position to limit
+     * @throws OpenAlException
+     */
+    void render(ByteBuffer buffer) throws OpenAlException;
+
+}
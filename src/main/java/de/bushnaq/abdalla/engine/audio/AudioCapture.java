@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records pcm data into a wav file without blocking the thread that produces it.
+ * The producer copies its data into a lock free ring, a background writer streams the ring into a WavWriter.
+ * If the writer cannot keep up, data is dropped instead of delaying the producer.
+ *
+ * @author abdalla bushnaq
+ */
+public class AudioCapture implements Closeable {
+    private static final long        WRITER_IDLE_NANOS = 1000000L;
+    private volatile     boolean     closed            = false;
+    private volatile     long        droppedBytes      = 0;//only written by the producer
+    private volatile     IOException error;
+    private final        File        file;
+    private final        Logger      logger            = LoggerFactory.getLogger(this.getClass());
+    private final        PcmRing     ring;
+    private final        WavWriter   writer;
+    private final        Thread      writerThread;
+
+    /**
+     * @param file       the wav file, an existing file is overwritten
+     * @param samplerate samples per second
+     * @param bits       bits per sample
+     * @param channels   number of channels
+     * @param blockSize  size of one ring block in bytes, bigger data is split into several blocks
+     * @param capacity   number of blocks the ring can buffer before data is dropped
+     * @throws IOException
+     */
+    public AudioCapture(final File file, final int samplerate, final int bits, final int channels, final int blockSize, final int capacity) throws IOException {
+        this.file    = file;
+        ring         = new PcmRing(capacity, blockSize);
+        writer       = new WavWriter(file, samplerate, bits, channels);
+        writerThread = new Thread(this::writeBlocks, "AudioCapture-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stop recording, waits until all data offered so far is written and the header is fixed up.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedBytes > 0)
+            logger.warn(String.format("dropped %d bytes while capturing %s", droppedBytes, file.getName()));
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * @return bytes that were dropped because the writer did not keep up
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return bytes of pcm data written to the file
+     */
+    public long getWrittenBytes() {
+        return writer.getDataSize();
+    }
+
+    /**
+     * Producer only, copies the data into the ring.
+     *
+     * @param data samples in native byte order from position to limit, position and limit are not changed
+     * @return false if the capture is closed or data had to be dropped
+     */
+    public boolean offer(final ByteBuffer data) {
+        if (closed)
+            return false;
+        int position = data.position();
+        while (position < data.limit()) {
+            final ByteBuffer block = ring.claim();
+            final int        size  = Math.min(ring.getBlockSize(), data.limit() - position);
+            if (block == null) {
+                droppedBytes += data.limit() - position;
+                return false;
+            }
+            block.put(0, data, position, size);
+            ring.publish(size);
+            position += size;
+        }
+        return true;
+    }
+
+    private void writeBlocks() {
+        try {
+            while (!closed || !ring.isEmpty()) {
+                final ByteBuffer block = ring.peek();
+                if (block == null) {
+                    LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                } else {
+                    if (error == null) {
+                        block.limit(ring.peekTag());
+                        try {
+                            writer.write(block);
+                        } catch (final IOException e) {
+                            logger.error(e.getMessage(), e);
+                            error = e;//keep draining so that the producer is never blocked
+                        }
+                    }
+                    ring.release();
+                }
+            }
+        } finally {
+            try {
+                writer.close();
+            } catch (final IOException e) {
+                logger.error(e.getMessage(), e);
+                if (error == null)
+                    error = e;
+            }
+        }
+    }
+
+}
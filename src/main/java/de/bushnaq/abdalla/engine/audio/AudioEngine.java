@@ -17,17 +17,18 @@
 package de.bushnaq.abdalla.engine.audio;
 
 import com.badlogic.gdx.math.Vector3;
-import com.scottlogic.util.UnsortedList;
 import de.bushnaq.abdalla.engine.audio.synthesis.AbstractSynthesizerFactory;
 import de.bushnaq.abdalla.engine.camera.MovingCamera;
+import de.bushnaq.abdalla.engine.util.SlotMap;
 import org.lwjgl.openal.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
 
 import static org.lwjgl.openal.EXTEfx.*;
 
@@ -39,38 +40,64 @@ import static org.lwjgl.openal.EXTEfx.*;
  * @author abdalla bushnaq
  */
 public class AudioEngine {
-    private static final int                 START_RADIUS     = 1500;
-    private static final int                 STOP_RADIUS      = 2000;
-    private static       ALCapabilities      alCapabilities;
-    private static       ALCCapabilities     alcCapabilities;
-    private static       long                device;
-    private static       Logger              logger           = LoggerFactory.getLogger(AudioEngine.class);
-    private final        int                 bits;
-    private final        Vector3             direction        = new Vector3();//direction of the listener (what direction is he looking to)
-    private final        float               disableRadius2   = STOP_RADIUS * STOP_RADIUS;//all audio streams that are located further away will be stopped and removed
-    private final        float               enableRadius2    = START_RADIUS * START_RADIUS;//an audio streams that gets closer will get added and started
-    private final        Vector3             listenerPosition = new Vector3();//position of the listener, usually the camera
-    private final        Vector3             listenerVelocity = new Vector3();//the velocity of the listener, usually the camera
-    private final        int                 samplerate;
-    private final        int                 samples;
+    public static final  String                 BACKEND_PROPERTY = "audio.backend";//set to loopback to render without sound device
+    private static final int                    CAPTURE_BLOCKS   = 256;//number of blocks the mix capture buffers before data is dropped
+    private static final int                    MAX_SOURCES      = 255;
+    private static final long                   QUEUE_TIMEOUT    = 100;//ms to wait for a source to fill its queue when rendering on demand
+    private static final int                    START_RADIUS     = 1500;
+    private static final int                    STOP_RADIUS      = 2000;
+    private static final int                    SUBMIX_COUNT     = 2;//number of submixes for synths that do not get an own openal source
+    private static       long                   device;
+    private static       Logger                 logger           = LoggerFactory.getLogger(AudioEngine.class);
+    private final        AudioBackend           backend;
+    private final        int                    bits;
+    private final        NativeBufferPool       bufferPool       = new NativeBufferPool();//staging and keep copy buffers of all sources
+    private final        AlCommandBuffer        commands         = new AlCommandBuffer();//listener and source property changes of the current frame
+    private final        Vector3                direction        = new Vector3();//direction of the listener (what direction is he looking to)
+    private final        float                  disableRadius2   = STOP_RADIUS * STOP_RADIUS;//all audio streams that are located further away will be stopped and removed
+    private final        float                  enableRadius2    = START_RADIUS * START_RADIUS;//an audio streams that gets closer will get added and started
+    private final        List<AudioProducer>    candidates       = new ArrayList<>();//synths that are near enough to be heard
+    private final        AudioProducerGrid      grid             = new AudioProducerGrid(STOP_RADIUS / 2f);//spatial index of all synths
+    private final        List<AudioProducer>    leaving          = new ArrayList<>();//synths with a source or submix that are not audible anymore
+    private final        Vector3                listenerPosition = new Vector3();//position of the listener, usually the camera
+    private final        Vector3                listenerVelocity = new Vector3();//the velocity of the listener, usually the camera
+    private volatile     AudioCapture           mixCapture;//records the rendered mix
+    private final        List<SoftwareMixer>    mixers           = new ArrayList<>();//submixes for producers that did not get an own source
+    private final        List<AudioProducer>    nearby           = new ArrayList<>();//result of the grid query
+    private final        PcmCache               pcmCache         = new PcmCache();//decoded ogg files shared by all OggPlayer instances
+    private final        int                    samplerate;
+    private final        int                    samples;
+    private final        List<OpenAlSource>     sources          = new ArrayList<>();//all sources ever created
     //	private MovingCamera camera;
     //	private final SynthesizerFactory<T> synthFactory;
-    private final        List<AudioProducer> synths           = new UnsortedList<>();
-    private final        List<OpenAlSource>  unusedSources    = new ArrayList<>();
-    private final        Vector3             up               = new Vector3();//what is up direction for the listener?
-    public               RadioTTS            radioTTS;
+    private final        SlotMap<AudioProducer> synths           = new SlotMap<>();//all synths created by the factories
+    private final        Vector3                up               = new Vector3();//what is up direction for the listener?
+    private final        VoiceManager           voiceManager     = new VoiceManager();
+    private final        Set<AudioProducer>     voicedSynths     = new LinkedHashSet<>();//synths that own an openal source
+    public               RadioTTS               radioTTS;
     int                                                              distortionEffectSlot;
-    Map<String, AbstractSynthesizerFactory<? extends AudioProducer>> factoryMap = new HashMap<>();
-    private long context;
+    Map<String, AbstractSynthesizerFactory<? extends AudioProducer>> factoryMap      = new HashMap<>();
+    private final Map<AudioProducer, SoftwareMixer>                  mixedSynths     = new HashMap<>();
+    private final List<OpenAlSourceListener>                         sourceListeners = new ArrayList<>();//registered with every source
+    private final Map<OpenAlSourceConfiguration, List<OpenAlSource>> unusedSources   = new HashMap<>();//sources without producer by configuration
     private int  enabledAudioSourceCount = 0;
     private int  mainEffectSlot;
+    private int  maxBufferCount          = AdaptiveLatency.MAX_BUFFER_COUNT;
     private int  maxMonoSources          = 0;
-    private int  numberOfSources         = 0;
+    private int  maxSizeFactor           = AdaptiveLatency.MAX_SIZE_FACTOR;
+    private int  minBufferCount          = AdaptiveLatency.MIN_BUFFER_COUNT;
+    private int  renderAhead             = 0;//number of blocks every source renders ahead on its own render worker
+    private int  unusedSourceCount       = 0;
 
     public AudioEngine(final int samples, final int samplerate, final int bits/*, final int channels*/) {
+        this(samples, samplerate, bits, createDefaultBackend());
+    }
+
+    public AudioEngine(final int samples, final int samplerate, final int bits, final AudioBackend backend) {
         this.samples    = samples;
         this.samplerate = samplerate;
         this.bits       = bits;
+        this.backend    = backend;
         //		this.channels = channels;
     }
 
@@ -101,6 +128,15 @@ public class AudioEngine {
         }
     }
 
+    /**
+     * @return LoopbackBackend if the system property audio.backend is set to loopback, otherwise OpenAlBackend
+     */
+    public static AudioBackend createDefaultBackend() {
+        if ("loopback".equals(System.getProperty(BACKEND_PROPERTY)))
+            return new LoopbackBackend();
+        return new OpenAlBackend();
+    }
+
     /**
      * 1) Identify the error code.
      * 2) Return the error as a string.
@@ -151,6 +187,13 @@ public class AudioEngine {
         factoryMap.put(factory.getClass().getSimpleName(), factory);
     }
 
+    /**
+     * @param listener notified about underruns and latency changes of every source, on the thread of the source
+     */
+    public void addSourceListener(final OpenAlSourceListener listener) {
+        sourceListeners.add(listener);
+    }
+
     public void begin(final MovingCamera camera, boolean enabled) throws OpenAlException {
         //		this.camera = camera;
         //did we move since last update?
@@ -171,6 +214,9 @@ public class AudioEngine {
                 direction.set(camera.direction.x, camera.direction.y, camera.direction.z);//ignore y axis in isometric game?
                 listenerVelocity.set(camera.velocity.x, camera.velocity.y, camera.velocity.z);
                 updateCamera();
+                for (final SoftwareMixer mixer : mixers) {
+                    mixer.setListener(listenerPosition, direction, up);
+                }
             }
             cullSynths();
         }
@@ -178,18 +224,8 @@ public class AudioEngine {
 
     public void create(String assetFolderName) throws OpenAlException {
         logger.info("----------------------------------------------------------------------------------");
-        //		List<String> list = ALUtil.getStringList(0, ALC10.ALC_DEVICE_SPECIFIER/*, EnumerateAllExt.ALC_DEFAULT_ALL_DEVICES_SPECIFIER*/);
-        final String deviceinfo = ALC10.alcGetString(0, EnumerateAllExt.ALC_DEFAULT_ALL_DEVICES_SPECIFIER);
-        logger.info("Device: " + deviceinfo);
-        device = ALC10.alcOpenDevice(deviceinfo);
-        if (device == 0)
-            throw new RuntimeException("Couldn't find such device");
-        final int[] attributes = new int[]{ALC11.ALC_MONO_SOURCES, 1, 0};
-        context = ALC10.alcCreateContext(device, attributes);
-        final boolean b = ALC10.alcMakeContextCurrent(context);
-        alcCapabilities = ALC.createCapabilities(device);
-        AL.createCapabilities(alcCapabilities);
-        alCapabilities = AL.getCapabilities();
+        backend.create(samplerate);
+        device = backend.getDevice();
 
         final int   size  = ALC10.alcGetInteger(device, ALC10.ALC_ATTRIBUTES_SIZE);
         final int[] attrs = new int[size];
@@ -197,13 +233,15 @@ public class AudioEngine {
         ALC10.alcGetIntegerv(device, ALC10.ALC_ALL_ATTRIBUTES, attrs);
 
         if (!ALC10.alcIsExtensionPresent(device, "ALC_SOFT_HRTF")) {
-            dispose();
-            throw new OpenAlException("Error: ALC_SOFT_HRTF not supported");
-        }
-        final int num_hrtf = ALC10.alcGetInteger(device, SOFTHRTF.ALC_NUM_HRTF_SPECIFIERS_SOFT);
-        if (num_hrtf == 0)
+            if (backend.isRealTime()) {
+                dispose();
+                throw new OpenAlException("Error: ALC_SOFT_HRTF not supported");
+            }
+            logger.warn(String.format("ALC_SOFT_HRTF not supported by %s device", backend.getName()));
+        } else if (ALC10.alcGetInteger(device, SOFTHRTF.ALC_NUM_HRTF_SPECIFIERS_SOFT) == 0)
             logger.error("No HRTFs found.");
         else {
+            final int num_hrtf = ALC10.alcGetInteger(device, SOFTHRTF.ALC_NUM_HRTF_SPECIFIERS_SOFT);
             for (int i = 0; i < num_hrtf; i++) {
                 final String name = SOFTHRTF.alcGetStringiSOFT(device, SOFTHRTF.ALC_HRTF_SPECIFIER_SOFT, i);
                 logger.info(String.format("    %d: %s.", i, name));
@@ -223,6 +261,11 @@ public class AudioEngine {
         }
         setListenerOrientation(new Vector3(0, 0, -1), new Vector3(0, 1, 0));
         createAuxiliaryEffectSlots();
+        for (int i = 0; i < SUBMIX_COUNT; i++) {
+            final SoftwareMixer mixer = new SoftwareMixer(samples, samplerate);
+            mixer.play();
+            mixers.add(mixer);
+        }
         radioTTS = new RadioTTS(this, assetFolderName);
         logger.info("----------------------------------------------------------------------------------");
     }
@@ -232,7 +275,9 @@ public class AudioEngine {
         for (final AbstractSynthesizerFactory<? extends AudioProducer> factory : factoryMap.values()) {
             if (factory.handles().isAssignableFrom(clazz)) {
                 final T audioProducer = (T) factory.createSynth(this);
-                synths.add(audioProducer);
+                audioProducer.setHandle(synths.addElement(audioProducer));
+                audioProducer.setGrid(grid);
+                grid.add(audioProducer);
                 return audioProducer;
             }
         }
@@ -317,23 +362,71 @@ public class AudioEngine {
     /**
      * There is a limit of supported audio sources
      * All synthesizers that are further away than disableRadius will be disabled and their audio source unassigned.
-     * All synthesizers that are nearer than enableRadius will be enabled and assigned an audio source.
+     * All synthesizers that are nearer than enableRadius are candidates for an audio source.
+     * The VoiceManager decides which candidates get an audio source, the others are mixed in software into a submix if possible.
+     * Only synths returned by the spatial grid query and synths that currently own a source or are mixed are looked at.
      *
      * @throws OpenAlException
      */
     private void cullSynths() throws OpenAlException {
         enabledAudioSourceCount = 0;
-        for (final AudioProducer synth : synths) {
-            if (synth.isEnabled() && (!synth.isOptIn() || (!synth.isAmbient() && listenerPosition.dst2(synth.getPosition()) > disableRadius2))) {
-                //disable synth
+        //disable synths that left the disable radius
+        leaving.clear();
+        for (final AudioProducer synth : voicedSynths) {
+            if (!isAudible(synth))
+                leaving.add(synth);
+        }
+        for (final AudioProducer synth : mixedSynths.keySet()) {
+            if (!isAudible(synth))
+                leaving.add(synth);
+        }
+        for (final AudioProducer synth : leaving) {
+            unmixSynth(synth);
+            disableSynth(synth);
+        }
+        //all audible synths are within the disable radius
+        nearby.clear();
+        grid.query(listenerPosition, STOP_RADIUS, nearby);
+        candidates.clear();
+        for (final AudioProducer synth : nearby) {
+            if (isAudible(synth))
+                candidates.add(synth);
+        }
+        //submixes only need sources if we have more candidates than sources
+        final int budget = getVoiceBudget();
+        voiceManager.select(candidates, listenerPosition, candidates.size() <= budget ? budget : budget - mixers.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            final AudioProducer synth = candidates.get(i);
+            if (!voiceManager.isSelected(i)) {
                 disableSynth(synth);
-            } else if (!synth.isEnabled() && (synth.isOptIn() && (synth.isAmbient() || listenerPosition.dst2(synth.getPosition()) < enableRadius2))) {
+                if (!mixedSynths.containsKey(synth))
+                    mixSynth(synth);
+            }
+        }
+        cullMixers();
+        for (int i = 0; i < candidates.size(); i++) {
+            final AudioProducer synth = candidates.get(i);
+            if (voiceManager.isSelected(i)) {
                 //enable synth
+                unmixSynth(synth);
                 enableSynth(synth);
-            } else {
-                //synth should stay as it is now
-                if (synth.isEnabled())
-                    enabledAudioSourceCount++;
+            }
+        }
+    }
+
+    /**
+     * submixes only own an audio source as long as they have something to mix
+     *
+     * @throws OpenAlException
+     */
+    private void cullMixers() throws OpenAlException {
+        for (final SoftwareMixer mixer : mixers) {
+            if (mixer.isEnabled() && mixer.size() == 0) {
+                disableSynth(mixer);
+            } else if (!mixer.isEnabled() && mixer.size() != 0) {
+                final OpenAlSource source = obtainSource(mixer, MAX_SOURCES);
+                if (source != null)
+                    mixer.enable(source);
             }
         }
     }
@@ -361,40 +454,37 @@ public class AudioEngine {
         if (synth.isEnabled()) {
             final OpenAlSource source = synth.disable();
             source.pause();
-            unusedSources.add(source);
+            unusedSources.computeIfAbsent(source.getConfiguration(), k -> new ArrayList<>()).add(source);
+            unusedSourceCount++;
+            voicedSynths.remove(synth);
         } else {
             //do nothing
         }
     }
 
     public void dispose() throws OpenAlException {
+        try {
+            stopCapture();
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        }
         radioTTS.dispose();
         for (final AudioProducer synth : synths) {
             synth.dispose();
         }
-        for (final OpenAlSource source : unusedSources) {
-            source.dispose();
+        for (final SoftwareMixer mixer : mixers) {
+            mixer.dispose();
         }
-//        removeAuxiliaryEffectSlot();
-        //		AudioEngine.checkAlError("Openal error #");
-        {
-            ALC10.alcSuspendContext(context);
-            checkAlcError("Openal error #");
+        for (final List<OpenAlSource> list : unusedSources.values()) {
+            for (final OpenAlSource source : list) {
+                source.dispose();
+            }
         }
+        pcmCache.clear();
+        bufferPool.dispose();
+//        removeAuxiliaryEffectSlot();
         //		AudioEngine.checkAlError("Openal error #");
-        {
-            final boolean result = ALC10.alcMakeContextCurrent(0);
-            checkAlcError(result, "Openal error #");
-        }
-        //all calls to AL10.alGetError from this point will fail with #40964 AL_INVALID_OPERATION, as it needs the context to work properly
-        {
-            ALC10.alcDestroyContext(context);
-            checkAlcError("Openal error #");
-        }
-        {
-            final boolean result = ALC10.alcCloseDevice(device);
-            checkAlcError(result, "Openal error #");
-        }
+        backend.dispose();
         //		{
         //			ALC.destroy();
         //		}
@@ -421,49 +511,58 @@ public class AudioEngine {
         if (synth.isEnabled()) {
             //do nothing
         } else {
-            OpenAlSource source;
-            if (unusedSources.size() > 0) {
-                logger.info("******************** reusing al source");
-                //TODO we cannot reuse sources without reconfiguring them, e.g. mono/stereo, ambient,...
-                source = unusedSources.remove(unusedSources.size() - 1);
-                if (synth instanceof TTSPlayer) {
-                    source.reset(samples, synth.getSamplerate(), bits, synth.getChannels(), synth.getGain(), distortionEffectSlot, synth.isAmbient());
-                } else {
-                    source.reset(samples, synth.getSamplerate(), bits, synth.getChannels(), synth.getGain(), mainEffectSlot, synth.isAmbient());
-                }
+            final OpenAlSource source = obtainSource(synth, MAX_SOURCES);
+            if (source != null) {
                 synth.enable(source);
-            } else {
-                if (numberOfSources < 255) {
-                    if (synth instanceof TTSPlayer) {
-                        source = new OpenAlSource(samples, synth.getSamplerate(), bits, synth.getChannels(), synth.getGain(), distortionEffectSlot, synth.isAmbient(), synth.isRadio());
-                    } else {
-                        source = new OpenAlSource(samples, synth.getSamplerate(), bits, synth.getChannels(), synth.getGain(), mainEffectSlot, synth.isAmbient(), synth.isRadio());
-                    }
-                    numberOfSources++;
-                    synth.enable(source);
-                } else {
-                    logger.error("Max openal source number (255) reached. Source not created!");
-                }
+                voicedSynths.add(synth);
+            } else if (!mixSynth(synth)) {
+                logger.error(String.format("Max openal source number (%d) reached. Source not created!", MAX_SOURCES));
             }
         }
         enabledAudioSourceCount++;
     }
 
-    public void end() {
+    /**
+     * Apply all listener and source property changes of this frame in one batch.
+     *
+     * @throws OpenAlException
+     */
+    public void end() throws OpenAlException {
+        commands.flush();
+    }
+
+    public AudioBackend getBackend() {
+        return backend;
+    }
+
+    public NativeBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public AlCommandBuffer getCommandBuffer() {
+        return commands;
     }
 
     public int getDisabledAudioSourceCount() {
-        return unusedSources.size();
+        return unusedSourceCount;
     }
 
     public int getEnabledAudioSourceCount() {
         return enabledAudioSourceCount;
     }
 
+    public AudioProducerGrid getGrid() {
+        return grid;
+    }
+
     public Vector3 getListenerPosition() {
         return listenerPosition;
     }
 
+    public int getMixedAudioProducerCount() {
+        return mixedSynths.size();
+    }
+
     public int getMaxMonoSources() {
         return maxMonoSources;
     }
@@ -473,7 +572,15 @@ public class AudioEngine {
     }
 
     public int getNumberOfSources() {
-        return numberOfSources;
+        return sources.size();
+    }
+
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    public int getRenderAhead() {
+        return renderAhead;
     }
 
     public int getSamplerate() {
@@ -484,6 +591,77 @@ public class AudioEngine {
         return samples;
     }
 
+    /**
+     * @return number of audio sources the VoiceManager may hand out
+     */
+    public int getVoiceBudget() {
+        return maxMonoSources > 0 ? Math.min(maxMonoSources, MAX_SOURCES) : MAX_SOURCES;
+    }
+
+    public VoiceManager getVoiceManager() {
+        return voiceManager;
+    }
+
+    private boolean isAudible(final AudioProducer synth) {
+        if (!synth.isOptIn())
+            return false;
+        if (synth.isAmbient())
+            return true;
+        final float distance2 = listenerPosition.dst2(synth.getPosition());
+        if (synth.isEnabled() || mixedSynths.containsKey(synth))
+            return distance2 <= disableRadius2;
+        return distance2 < enableRadius2;
+    }
+
+    /**
+     * Add the synth to the submix with the least producers
+     *
+     * @param synth the synth to mix in software
+     * @return false if the synth cannot be mixed in software
+     */
+    private boolean mixSynth(final AudioProducer synth) {
+        SoftwareMixer best = null;
+        for (final SoftwareMixer mixer : mixers) {
+            if (mixer.canMix(synth) && (best == null || mixer.size() < best.size()))
+                best = mixer;
+        }
+        if (best != null && best.add(synth)) {
+            mixedSynths.put(synth, best);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reuse an unused source or create a new one as long as we stay below the limit.
+     * An unused source with the same configuration is preferred, any other unused source is reconfigured in place, both without creating any openal object.
+     *
+     * @param synth the synth that will use the source
+     * @param limit maximum number of sources
+     * @return the source or null if the limit is reached
+     * @throws OpenAlException
+     */
+    private OpenAlSource obtainSource(final AudioProducer synth, final int limit) throws OpenAlException {
+        final int                       effectSlot    = synth instanceof TTSPlayer ? distortionEffectSlot : mainEffectSlot;
+        final OpenAlSourceConfiguration configuration = new OpenAlSourceConfiguration(samples, synth.getSamplerate(), bits, synth.getChannels(), effectSlot, synth.isAmbient(), synth.isRadio());
+        OpenAlSource                    source        = takeUnusedSource(configuration);
+        if (source != null) {
+            logger.trace(String.format("reusing al source for %s", configuration));
+            source.reconfigure(configuration, synth.getGain());
+        } else if (sources.size() < limit) {
+            source = new OpenAlSource(configuration, synth.getGain(), bufferPool, commands);
+            sources.add(source);
+        }
+        if (source != null) {
+            source.setRenderAhead(renderAhead);
+            source.setLatencyBounds(minBufferCount, maxBufferCount, maxSizeFactor);
+            for (final OpenAlSourceListener listener : sourceListeners) {
+                source.addListener(listener);
+            }
+        }
+        return source;
+    }
+
     private void queryHrtfEnabled() {
         /* Check if HRTF is enabled, and show which is being used. */
         final int hrtf_state = ALC10.alcGetInteger(device, SOFTHRTF.ALC_HRTF_SOFT);
@@ -495,8 +673,14 @@ public class AudioEngine {
         }
     }
 
-    public void remove(final AudioProducer audioProducer) {
-        synths.remove(audioProducer);
+    public void remove(final AudioProducer audioProducer) throws OpenAlException {
+        synths.removeHandle(audioProducer.getHandle());
+        audioProducer.setHandle(SlotMap.INVALID_HANDLE);
+        grid.remove(audioProducer);
+        audioProducer.setGrid(null);
+        disableSynth(audioProducer);//return its source, a cached synth must not keep it
+        voicedSynths.remove(audioProducer);
+        unmixSynth(audioProducer);
         //		synthFactory.cacheSynth(Synth);
         //		if (MercatorSynthesizer.class.isInstance(audioProducer)) {
         //			mercatorSynthesizerFactory.cacheSynth((MercatorSynthesizer) audioProducer);
@@ -519,6 +703,58 @@ public class AudioEngine {
         distortionEffectSlot = 0;
     }
 
+    /**
+     * Render the mix into the buffer with a backend that is not real time, like the LoopbackBackend.
+     * The mix is rendered block by block, before every block all playing sources get the time to refill their queue, so that the result does not depend on thread scheduling.
+     *
+     * @param buffer receives 16 bit signed stereo frames in native byte order, from position to limit
+     * @throws OpenAlException
+     */
+    public void render(final ByteBuffer buffer) throws OpenAlException {
+        if (backend.isRealTime())
+            throw new OpenAlException(String.format("%s device plays in real time", backend.getName()));
+        commands.flush();
+        final int limit = buffer.limit();
+        try {
+            while (limit - buffer.position() >= AudioBackend.BYTES_PER_FRAME) {
+                for (final OpenAlSource source : sources) {
+                    if (!source.awaitQueueFilled(QUEUE_TIMEOUT))
+                        logger.trace(String.format("source %s did not fill its queue", source.getName()));
+                }
+                final int start = buffer.position();
+                buffer.limit(Math.min(limit, start + samples * AudioBackend.BYTES_PER_FRAME));
+                backend.render(buffer);
+                final AudioCapture mixCapture = this.mixCapture;
+                if (mixCapture != null)
+                    mixCapture.offer(buffer.duplicate().limit(buffer.position()).position(start));
+            }
+        } finally {
+            buffer.limit(limit);
+        }
+    }
+
+    /**
+     * Render the mix into a wav file with a backend that is not real time, like the LoopbackBackend.
+     *
+     * @param fileName name of the file without extension
+     * @param seconds  length of the recording
+     * @throws OpenAlException
+     * @throws IOException
+     */
+    public void renderWav(final String fileName, final float seconds) throws OpenAlException, IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(samples * AudioBackend.BYTES_PER_FRAME).order(ByteOrder.nativeOrder());
+        long             frames = (long) (seconds * samplerate);
+        try (final WavWriter writer = new WavWriter(new File(fileName + ".wav"), samplerate, 16, 2)) {
+            while (frames > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), frames * AudioBackend.BYTES_PER_FRAME));
+                render(buffer);
+                buffer.flip();
+                frames -= buffer.remaining() / AudioBackend.BYTES_PER_FRAME;
+                writer.write(buffer);
+            }
+        }
+    }
+
 //    public void say(RadioMessage rm) {
 //        if (rm.from.isSelected() || rm.to.isSelected()) {
 //            radioTTS.speak(rm.message);
@@ -526,15 +762,27 @@ public class AudioEngine {
 //        }
 //    }
 
-    private void setListenerGain(final float gain) throws OpenAlException {
-        AL10.alListenerf(AL10.AL_GAIN, gain);
-        checkAlError("Failed to set listener gain with error #");
+    /**
+     * Bounds for the adaptive latency of sources obtained after this call.
+     *
+     * @param minBufferCount lowest number of queued buffers
+     * @param maxBufferCount highest number of queued buffers
+     * @param maxSizeFactor  highest number of blocks in one buffer
+     * @see AdaptiveLatency#setBounds(int, int, int)
+     */
+    public void setLatencyBounds(final int minBufferCount, final int maxBufferCount, final int maxSizeFactor) {
+        AdaptiveLatency.checkBounds(minBufferCount, maxBufferCount, maxSizeFactor);
+        this.minBufferCount = minBufferCount;
+        this.maxBufferCount = maxBufferCount;
+        this.maxSizeFactor  = maxSizeFactor;
+    }
+
+    private void setListenerGain(final float gain) {
+        commands.setListenerGain(gain);
     }
 
-    private void setListenerOrientation(final Vector3 direction, final Vector3 up) throws OpenAlException {
-        final float[] array = new float[]{direction.x, direction.y, direction.z, up.x, up.y, up.z};
-        AL10.alListenerfv(AL10.AL_ORIENTATION, array);
-        checkAlError("Failed to set listener orientation with error #");
+    private void setListenerOrientation(final Vector3 direction, final Vector3 up) {
+        commands.setListenerOrientation(direction, up);
     }
 
     //	public void setListenerPosition(final Vector3 position) throws OpenAlException {
@@ -542,11 +790,72 @@ public class AudioEngine {
     //		checkAlError("Failed to set listener position with error #");
     //	}
 
-    private void setListenerPositionAndVelocity(final Vector3 position, final Vector3 velocity) throws OpenAlException {
-        AL10.alListener3f(AL10.AL_POSITION, position.x, position.y, position.z);
-        checkAlError("Failed to set listener position with error #");
-        AL10.alListener3f(AL10.AL_VELOCITY, velocity.x, velocity.y, velocity.z);
-        checkAlError("Failed to set listener velocity with error #");
+    private void setListenerPositionAndVelocity(final Vector3 position, final Vector3 velocity) {
+        commands.setListenerPositionAndVelocity(position, velocity);
+    }
+
+    /**
+     * Decouple rendering from submitting to openal. Every source gets a render worker that stays the given number of blocks ahead.
+     * Applies to sources obtained after this call.
+     *
+     * @param renderAhead number of blocks, 0 renders every block just in time on the source thread
+     */
+    public void setRenderAhead(final int renderAhead) {
+        this.renderAhead = renderAhead;
+    }
+
+    /**
+     * Record the rendered mix into a growing wav file, only supported by backends that are not real time.
+     * Every block rendered by render is copied into the capture, writing happens on a background thread.
+     *
+     * @param fileName name of the file without extension
+     * @throws OpenAlException if the backend plays in real time
+     * @throws IOException
+     */
+    public void startCapture(final String fileName) throws OpenAlException, IOException {
+        if (backend.isRealTime())
+            throw new OpenAlException(String.format("%s device plays in real time, the mix cannot be captured", backend.getName()));
+        stopCapture();
+        mixCapture = new AudioCapture(new File(fileName + ".wav"), samplerate, 16, 2, samples * AudioBackend.BYTES_PER_FRAME, CAPTURE_BLOCKS);
+    }
+
+    /**
+     * Stop recording the mix and complete the wav file.
+     *
+     * @throws IOException
+     */
+    public void stopCapture() throws IOException {
+        final AudioCapture mixCapture = this.mixCapture;
+        if (mixCapture != null) {
+            this.mixCapture = null;
+            mixCapture.close();
+        }
+    }
+
+    /**
+     * @param configuration the configuration the source is needed for
+     * @return an unused source with this configuration, any other unused source or null if there is none
+     */
+    private OpenAlSource takeUnusedSource(final OpenAlSourceConfiguration configuration) {
+        if (unusedSourceCount == 0)
+            return null;
+        List<OpenAlSource> list = unusedSources.get(configuration);
+        if (list == null || list.isEmpty()) {
+            for (final List<OpenAlSource> other : unusedSources.values()) {
+                if (!other.isEmpty()) {
+                    list = other;
+                    break;
+                }
+            }
+        }
+        unusedSourceCount--;
+        return list.remove(list.size() - 1);
+    }
+
+    private void unmixSynth(final AudioProducer synth) {
+        final SoftwareMixer mixer = mixedSynths.remove(synth);
+        if (mixer != null)
+            mixer.remove(synth);
     }
 
     private void updateCamera() throws OpenAlException {
@@ -35,10 +35,14 @@ public interface AudioProducer {
 
     float getGain();
 
+    long getHandle();// handle in the audio engine producer registry
+
     int getOpenAlFormat();
 
     Vector3 getPosition();
 
+    float getPriority();
+
     int getSamplerate();
 
     void ignore(boolean b);
@@ -65,10 +69,20 @@ public interface AudioProducer {
 
     void setGain(final float gain) throws OpenAlException;
 
+    void setGrid(final AudioProducerGrid grid);// the audio engine spatial index we need to update when we move
+
+    void setHandle(final long handle);
+
     void setPositionAndVelocity(final float[] position, final float[] velocity) throws OpenAlException;
 
+    void setPriority(final float priority);
+
     void setRadio(boolean radio);
 
+    void startCapture(final String fileName) throws IOException, OpenAlcException;// record the output of this producer into a growing wav file
+
+    void stopCapture() throws IOException, OpenAlcException;
+
     void waitForPlay() throws InterruptedException, OpenAlException;
 
     void writeWav(final String fileName) throws IOException, OpenAlcException;
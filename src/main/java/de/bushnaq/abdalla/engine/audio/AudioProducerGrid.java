@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectLongMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spatial hash of audio producer positions.
+ * Space is divided into cubic cells, every positional producer is kept in the cell that contains its position.
+ * Producers update their cell themselves whenever their position or ambient flag changes, so a radius query only needs to look at the cells around the listener instead of all producers.
+ * Ambient producers follow the camera and are kept in a separate list that is always part of the query result.
+ *
+ * @author abdalla bushnaq
+ */
+public class AudioProducerGrid {
+    private static final long                              NO_CELL = -1L;//never a cell key, the sign bit of a key is always clear
+    private final        List<AudioProducer>               ambient = new ArrayList<>();//producers that always follow the camera
+    private final        ObjectLongMap<AudioProducer>      cellKey = new ObjectLongMap<>();//the cell every positional producer is stored in
+    private final        LongMap<ArrayList<AudioProducer>> cells   = new LongMap<>();
+    private final        float                             cellSize;
+    private              int                               size    = 0;
+
+    /**
+     * @param cellSize edge length of a cell, a good value is in the range of the query radius
+     */
+    public AudioProducerGrid(final float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    private static long key(final int x, final int y, final int z) {
+        //21 bits per axis
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (long) (z & 0x1FFFFF);
+    }
+
+    public void add(final AudioProducer producer) {
+        if (producer.isAmbient()) {
+            if (!ambient.contains(producer)) {
+                ambient.add(producer);
+                size++;
+            }
+        } else if (!cellKey.containsKey(producer)) {
+            final long key = key(producer.getPosition());
+            cellKey.put(producer, key);
+            addToCell(key, producer);
+            size++;
+        }
+    }
+
+    private void addToCell(final long key, final AudioProducer producer) {
+        ArrayList<AudioProducer> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>();
+            cells.put(key, cell);
+        }
+        cell.add(producer);
+    }
+
+    private int cell(final float value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    public boolean contains(final AudioProducer producer) {
+        return cellKey.containsKey(producer) || ambient.contains(producer);
+    }
+
+    /**
+     * @return number of cells that contain at least one producer
+     */
+    public int getCellCount() {
+        return cells.size;
+    }
+
+    private long key(final Vector3 position) {
+        return key(cell(position.x), cell(position.y), cell(position.z));
+    }
+
+    /**
+     * Collects all ambient producers and all positional producers in cells that intersect the cube around center.
+     * The result is a superset of the producers within radius, callers still need to check the exact distance.
+     *
+     * @param center the center of the query, usually the listener
+     * @param radius the radius of the query
+     * @param result the list the producers are added to, the list is not cleared
+     */
+    public void query(final Vector3 center, final float radius, final List<AudioProducer> result) {
+        result.addAll(ambient);
+        if (cells.isEmpty())
+            return;
+        final int minX = cell(center.x - radius);
+        final int maxX = cell(center.x + radius);
+        final int minY = cell(center.y - radius);
+        final int maxY = cell(center.y + radius);
+        final int minZ = cell(center.z - radius);
+        final int maxZ = cell(center.z + radius);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    final ArrayList<AudioProducer> cell = cells.get(key(x, y, z));
+                    if (cell != null)
+                        result.addAll(cell);
+                }
+            }
+        }
+    }
+
+    public void remove(final AudioProducer producer) {
+        final long key = cellKey.remove(producer, NO_CELL);
+        if (key != NO_CELL) {
+            removeFromCell(key, producer);
+            size--;
+        } else if (ambient.remove(producer)) {
+            size--;
+        }
+    }
+
+    private void removeFromCell(final long key, final AudioProducer producer) {
+        final ArrayList<AudioProducer> cell  = cells.get(key);
+        final int                      index = cell.indexOf(producer);
+        //swap remove, order within a cell does not matter
+        final int last = cell.size() - 1;
+        cell.set(index, cell.get(last));
+        cell.remove(last);
+        if (cell.isEmpty())
+            cells.remove(key);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Move the producer to the cell matching its current position and ambient flag.
+     * Called by the producer, does nothing if the producer is not part of the grid or did not leave its cell.
+     *
+     * @param producer the producer that moved
+     */
+    public void update(final AudioProducer producer) {
+        final long oldKey = cellKey.get(producer, NO_CELL);
+        if (oldKey == NO_CELL) {
+            if (ambient.contains(producer) && !producer.isAmbient()) {
+                remove(producer);
+                add(producer);
+            }
+            return;
+        }
+        if (producer.isAmbient()) {
+            remove(producer);
+            add(producer);
+            return;
+        }
+        final long key = key(producer.getPosition());
+        if (key != oldKey) {
+            removeFromCell(oldKey, producer);
+            cellKey.put(producer, key);
+            addToCell(key, producer);
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.backends.lwjgl3.audio.Wav;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Least recently used cache of decoded wav clips, used for the TTS snippets.
+ * The clips are kept as heap arrays, the cache evicts the least recently used clips as soon as the decoded size exceeds the budget.
+ * The clip that was just loaded and pinned clips are never evicted, even if they exceed the budget.
+ * Clips are decoded outside of the lock, a thread that only asks for cached clips never waits for a decoding thread.
+ *
+ * @author abdalla bushnaq
+ */
+public class ClipCache {
+    private static final int                                      CHUNK_SIZE = 4096;
+    private final        Map<String, PcmAsset>                    clips      = new LinkedHashMap<>(16, 0.75f, true);//access order, eldest entry is the least recently used
+    private final        Map<String, CompletableFuture<PcmAsset>> loading    = new HashMap<>();//clips that are being decoded
+    private final        Map<String, Integer>                     pinned     = new HashMap<>();//number of pins of every pinned clip
+    private              long                                     budget;//maximum bytes of decoded pcm data
+    private              long                                     hits       = 0;
+    private              long                                     misses     = 0;
+    private              long                                     size       = 0;//bytes of decoded pcm data
+
+    /**
+     * @param budget maximum bytes of decoded pcm data to keep
+     */
+    public ClipCache(final long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Decode the whole wav file.
+     *
+     * @param name name of the clip
+     * @param file the wav file
+     * @return the decoded clip
+     */
+    public static PcmAsset decode(final String name, final FileHandle file) {
+        final Wav.WavInputStream input = new Wav.WavInputStream(file);
+        try {
+            final ByteArrayOutputStream out   = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, file.length()));
+            final byte[]                chunk = new byte[CHUNK_SIZE];
+            int                         length;
+            while ((length = input.read(chunk)) > 0) {
+                out.write(chunk, 0, length);
+            }
+            return new PcmAsset(name, ByteBuffer.wrap(out.toByteArray()), input.channels, input.sampleRate);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    public synchronized void clear() {
+        clips.clear();
+        size = 0;
+    }
+
+    /**
+     * Decode the clip outside of the lock and add it to the cache.
+     */
+    private void decode(final String name, final FileHandle file, final CompletableFuture<PcmAsset> future) {
+        final PcmAsset clip;
+        try {
+            clip = decode(name, file);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(name);
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        synchronized (this) {
+            loading.remove(name);
+            clips.put(name, clip);
+            size += clip.size();
+            evict();
+        }
+        future.complete(clip);
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, PcmAsset>> iterator = clips.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            final Map.Entry<String, PcmAsset> entry = iterator.next();
+            if (iterator.hasNext() && !pinned.containsKey(entry.getKey())) {//the last entry is the clip that was just loaded
+                size -= entry.getValue().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Blocks until the clip is decoded, if another thread is already decoding the clip, waits for that thread.
+     *
+     * @param name name of the clip, used as key
+     * @param file the wav file, only read if the clip is not cached
+     * @return the decoded clip
+     */
+    public PcmAsset get(final String name, final FileHandle file) {
+        final CompletableFuture<PcmAsset> future;
+        final boolean                     owner;//this thread decodes the clip
+        synchronized (this) {
+            final PcmAsset clip = clips.get(name);
+            if (clip != null) {
+                hits++;
+                return clip;
+            }
+            final CompletableFuture<PcmAsset> pending = loading.get(name);
+            owner  = pending == null;
+            future = owner ? startLoading(name) : pending;
+        }
+        if (owner) {
+            decode(name, file, future);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw e;
+        }
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized int getClipCount() {
+        return clips.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return bytes of decoded pcm data held by the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Never decodes and never waits for a decoding thread, used by the playback thread.
+     *
+     * @param name name of the clip
+     * @return the decoded clip or null if it is not cached
+     */
+    public synchronized PcmAsset getIfPresent(final String name) {
+        final PcmAsset clip = clips.get(name);
+        if (clip != null)
+            hits++;
+        return clip;
+    }
+
+    /**
+     * @param name name of the clip
+     * @return true if the clip is being decoded or waits for its decoding thread
+     */
+    public synchronized boolean isLoading(final String name) {
+        return loading.containsKey(name);
+    }
+
+    /**
+     * Decode the clip using the executor, returns immediately.
+     * The clip counts as loading from the time this method returns until it is cached or decoding failed.
+     *
+     * @param name     name of the clip, used as key
+     * @param file     the wav file, only read if the clip is not cached
+     * @param executor decodes the clip
+     * @return completes with the decoded clip
+     */
+    public CompletableFuture<PcmAsset> load(final String name, final FileHandle file, final Executor executor) {
+        final CompletableFuture<PcmAsset> future;
+        synchronized (this) {
+            final PcmAsset clip = clips.get(name);
+            if (clip != null) {
+                hits++;
+                return CompletableFuture.completedFuture(clip);
+            }
+            final CompletableFuture<PcmAsset> pending = loading.get(name);
+            if (pending != null)
+                return pending;
+            future = startLoading(name);
+        }
+        try {
+            executor.execute(() -> decode(name, file, future));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading.remove(name);
+            }
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Keep the clip from being evicted until it is unpinned as often as it was pinned. The clip does not need to be cached yet.
+     *
+     * @param name name of the clip
+     */
+    public synchronized void pin(final String name) {
+        pinned.merge(name, 1, Integer::sum);
+    }
+
+    public synchronized void setBudget(final long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    private CompletableFuture<PcmAsset> startLoading(final String name) {
+        misses++;
+        final CompletableFuture<PcmAsset> future = new CompletableFuture<>();
+        loading.put(name, future);
+        return future;
+    }
+
+    /**
+     * @param name name of the clip
+     * @see #pin(String)
+     */
+    public synchronized void unpin(final String name) {
+        pinned.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+        evict();
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+/**
+ * Bounded ring of the block copies a source keeps in keep copy mode, once the ring is full the oldest copy is overwritten.
+ * Buffers are leased from a NativeBufferPool when a slot is used the first time and are released when the ring is disposed.
+ *
+ * @author abdalla bushnaq
+ */
+public class KeepCopyRing {
+    private final int                      blockSize;
+    private final ByteBufferContainer[]    containers;
+    private       int                      head             = 0;//index of the oldest copy
+    private final NativeBufferPool.Lease[] leases;
+    private       long                     overwrittenCount = 0;
+    private final NativeBufferPool         pool;
+    private       int                      size             = 0;
+
+    /**
+     * @param pool      the pool the buffers are leased from
+     * @param capacity  maximum number of copies
+     * @param blockSize size of every copy in bytes
+     */
+    public KeepCopyRing(final NativeBufferPool pool, final int capacity, final int blockSize) {
+        this.pool      = pool;
+        this.blockSize = blockSize;
+        containers     = new ByteBufferContainer[capacity];
+        leases         = new NativeBufferPool.Lease[capacity];
+    }
+
+    public int capacity() {
+        return containers.length;
+    }
+
+    /**
+     * Forget all copies, the buffers are kept for reuse.
+     */
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Release all buffers back to the pool.
+     */
+    public synchronized void dispose() {
+        for (int i = 0; i < leases.length; i++) {
+            if (leases[i] != null) {
+                leases[i].release();
+                leases[i]     = null;
+                containers[i] = null;
+            }
+        }
+        clear();
+    }
+
+    /**
+     * @param index 0 is the oldest copy
+     * @return the copy
+     */
+    public synchronized ByteBufferContainer get(final int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(String.format("index %d size %d", index, size));
+        return containers[(head + index) % containers.length];
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return number of copies that were overwritten because the ring was full
+     */
+    public synchronized long getOverwrittenCount() {
+        return overwrittenCount;
+    }
+
+    /**
+     * @return the container for the next copy, this is the oldest copy if the ring is full
+     */
+    public synchronized ByteBufferContainer next() {
+        final int index;
+        if (size < containers.length) {
+            index = (head + size) % containers.length;
+            size++;
+        } else {
+            index = head;
+            head  = (head + 1) % containers.length;
+            overwrittenCount++;
+        }
+        if (containers[index] == null) {
+            leases[index]                = pool.acquire(blockSize);
+            containers[index]            = new ByteBufferContainer();
+            containers[index].byteBuffer = leases[index].buffer();
+        }
+        containers[index].startFrequency = 0;
+        containers[index].endFrequency   = 0;
+        return containers[index];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.lwjgl.openal.ALC10;
+import org.lwjgl.openal.ALC11;
+import org.lwjgl.openal.SOFTLoopback;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Renders the mix into memory instead of playing it on a sound device, using the ALC_SOFT_loopback extension of openal soft.
+ * Nothing is played unless render is called, so the mix can be rendered faster than real time on a machine without sound card.
+ *
+ * @author abdalla bushnaq
+ */
+public class LoopbackBackend extends OpenAlBackend {
+    private int samplerate;
+
+    public LoopbackBackend() {
+        name = "loopback";
+    }
+
+    @Override
+    public void create(final int samplerate) throws OpenAlException {
+        this.samplerate = samplerate;
+        if (!ALC10.alcIsExtensionPresent(0, "ALC_SOFT_loopback"))
+            throw new OpenAlcException("Error: ALC_SOFT_loopback not supported");
+        super.create(samplerate);
+    }
+
+    @Override
+    protected int[] getContextAttributes(final int samplerate) {
+        return new int[]{SOFTLoopback.ALC_FORMAT_CHANNELS_SOFT, SOFTLoopback.ALC_STEREO_SOFT, SOFTLoopback.ALC_FORMAT_TYPE_SOFT, SOFTLoopback.ALC_SHORT_SOFT, ALC10.ALC_FREQUENCY, samplerate, ALC11.ALC_MONO_SOURCES, 1, 0};
+    }
+
+    public int getSamplerate() {
+        return samplerate;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    @Override
+    protected long openDevice() {
+        final long device = SOFTLoopback.alcLoopbackOpenDeviceSOFT((CharSequence) null);
+        if (device != 0 && !SOFTLoopback.alcIsRenderFormatSupportedSOFT(device, samplerate, SOFTLoopback.ALC_STEREO_SOFT, SOFTLoopback.ALC_SHORT_SOFT)) {
+            ALC10.alcCloseDevice(device);
+            return 0;
+        }
+        return device;
+    }
+
+    @Override
+    public void render(final ByteBuffer buffer) throws OpenAlException {
+        final int frames = buffer.remaining() / BYTES_PER_FRAME;
+        SOFTLoopback.alcRenderSamplesSOFT(device, buffer, frames);
+        AudioEngine.checkAlcError("Failed to render samples with error #");
+        buffer.position(buffer.position() + frames * BYTES_PER_FRAME);
+    }
+
+}
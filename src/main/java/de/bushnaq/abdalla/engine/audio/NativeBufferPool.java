@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.lwjgl.system.libc.LibCStdlib;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pool of native buffers in power of two size classes.
+ * A buffer is handed out as a lease and goes back to the pool when the lease is released, so that reusing a buffer of the same size class does no native allocation.
+ * Leases that are garbage collected without being released are reported as leaks and their buffer is recovered.
+ * With leak tracing enabled every lease remembers where it was acquired.
+ *
+ * @author abdalla bushnaq
+ */
+public class NativeBufferPool {
+    private static final Cleaner                CLEANER         = Cleaner.create();
+    private static final int                    MIN_SIZE_CLASS  = 8;//256 bytes
+    private              long                   allocationCount = 0;//native allocations
+    private              boolean                disposed        = false;
+    private final        List<List<ByteBuffer>> free            = new ArrayList<>();//free buffers per size class
+    private              long                   leakCount       = 0;
+    private              boolean                leakTracing     = false;
+    private final        Logger                 logger          = LoggerFactory.getLogger(this.getClass());
+    private final        Set<LeaseState>        outstanding     = Collections.newSetFromMap(new IdentityHashMap<>());
+    private              long                   reuseCount      = 0;
+
+    /**
+     * @param size number of bytes
+     * @return the size class that can hold size bytes
+     */
+    static int sizeClass(final long size) {
+        if (size > 1L << 30)
+            throw new IllegalArgumentException(String.format("buffer size %d too big", size));
+        return Math.max(MIN_SIZE_CLASS, 64 - Long.numberOfLeadingZeros(Math.max(1, size) - 1));
+    }
+
+    /**
+     * @param size number of bytes
+     * @return a lease of a buffer with exactly size bytes capacity, in native byte order
+     */
+    public synchronized Lease acquire(final long size) {
+        final int sizeClass = sizeClass(size);
+        while (free.size() <= sizeClass) {
+            free.add(new ArrayList<>());
+        }
+        final List<ByteBuffer> list = free.get(sizeClass);
+        final ByteBuffer       pooled;
+        if (list.isEmpty()) {
+            pooled = LibCStdlib.malloc(1L << sizeClass);
+            allocationCount++;
+        } else {
+            pooled = list.remove(list.size() - 1);
+            reuseCount++;
+        }
+        final LeaseState state = new LeaseState(pooled, sizeClass, leakTracing ? new Throwable("lease acquired here") : null);
+        outstanding.add(state);
+        final Lease lease = new Lease(pooled.slice(0, (int) size).order(ByteOrder.nativeOrder()), state);
+        lease.cleanable = CLEANER.register(lease, state);
+        return lease;
+    }
+
+    /**
+     * Free all pooled buffers, outstanding leases are reported and their buffers are freed when they are released.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        if (!outstanding.isEmpty())
+            logger.warn(String.format("%d buffers still leased when pool was disposed", outstanding.size()));
+        if (leakTracing) {
+            for (final LeaseState state : outstanding) {
+                logger.warn(String.format("buffer of %d bytes still leased", 1L << state.sizeClass), state.trace);
+            }
+        }
+        for (final List<ByteBuffer> list : free) {
+            for (final ByteBuffer buffer : list) {
+                LibCStdlib.free(buffer);
+            }
+            list.clear();
+        }
+    }
+
+    /**
+     * @return number of native allocations done by this pool
+     */
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /**
+     * @return number of leases that were garbage collected without being released
+     */
+    public synchronized long getLeakCount() {
+        return leakCount;
+    }
+
+    public synchronized int getOutstandingCount() {
+        return outstanding.size();
+    }
+
+    /**
+     * @return number of leases that were served from the pool without native allocation
+     */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    public synchronized boolean isLeakTracing() {
+        return leakTracing;
+    }
+
+    private synchronized void recycle(final LeaseState state, final boolean leaked) {
+        if (!outstanding.remove(state))
+            return;
+        if (leaked) {
+            leakCount++;
+            logger.error(String.format("buffer of %d bytes was never released", 1L << state.sizeClass), state.trace);
+        }
+        if (disposed)
+            LibCStdlib.free(state.buffer);
+        else
+            free.get(state.sizeClass).add(state.buffer);
+    }
+
+    /**
+     * @param leakTracing remember the stack trace of every lease to report where leaked leases were acquired
+     */
+    public synchronized void setLeakTracing(final boolean leakTracing) {
+        this.leakTracing = leakTracing;
+    }
+
+    /**
+     * A buffer borrowed from the pool, must be released exactly once and not be used afterwards.
+     * Keep the lease reachable as long as the buffer is used, a lease that is garbage collected counts as leaked and its buffer is recycled.
+     */
+    public static class Lease {
+        private final ByteBuffer        buffer;
+        private       Cleaner.Cleanable cleanable;
+        private final LeaseState        state;
+
+        private Lease(final ByteBuffer buffer, final LeaseState state) {
+            this.buffer = buffer;
+            this.state  = state;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public void release() {
+            if (state.released)
+                throw new IllegalStateException("lease released twice");
+            state.released = true;
+            state.pool().recycle(state, false);
+            cleanable.clean();//deregister, the state does nothing once released
+        }
+    }
+
+    /**
+     * Everything the cleaner needs to recover the buffer of a leaked lease, must not reference the lease itself.
+     */
+    private class LeaseState implements Runnable {
+        private final    ByteBuffer buffer;
+        private volatile boolean    released = false;
+        private final    int        sizeClass;
+        private final    Throwable  trace;
+
+        private LeaseState(final ByteBuffer buffer, final int sizeClass, final Throwable trace) {
+            this.buffer    = buffer;
+            this.sizeClass = sizeClass;
+            this.trace     = trace;
+        }
+
+        private NativeBufferPool pool() {
+            return NativeBufferPool.this;
+        }
+
+        @Override
+        public void run() {
+            if (!released)
+                recycle(this, true);
+        }
+    }
+
+}
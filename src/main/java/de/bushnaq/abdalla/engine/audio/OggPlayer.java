@@ -16,32 +16,29 @@
 
 package de.bushnaq.abdalla.engine.audio;
 
-import com.badlogic.gdx.backends.lwjgl3.audio.OggInputStream;
 import com.badlogic.gdx.files.FileHandle;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 
 import static org.lwjgl.openal.AL10.AL_FORMAT_MONO16;
 import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
 
+/**
+ * Plays an ogg file from the shared PcmCache, the file is decoded only once no matter how many players play it or how often it loops.
+ */
 public class OggPlayer extends AbstractAudioProducer {
-    static private final int            bufferSize     = 4096 * 10;
-    static private final int            bytesPerSample = 2;
-    private              int            channels;
-    protected            FileHandle     file;
-    private              int            format;
-    private              OggInputStream input;
-    private final        Logger         logger         = LoggerFactory.getLogger(this.getClass());
-    private              boolean        loop;
-    //    private              float          maxSecondsPerBuffer;
-    private              OggInputStream previousInput;
-    //    private              float          renderedSeconds;
-    private              int            sampleRate;
+    private       PcmAsset   asset;//shared decoded pcm data
+    private final PcmCache   cache;
+    private       int        channels;
+    private       int        cursor;//next byte of the asset to play
+    protected     FileHandle file;
+    private       int        format;
+    private       boolean    loop;
+    private       int        sampleRate;
 
-    public OggPlayer() {
+    public OggPlayer(final PcmCache cache) {
         super(44100);
+        this.cache = cache;
         setAmbient(true);//always follows camera
     }
 
@@ -60,33 +57,36 @@ public class OggPlayer extends AbstractAudioProducer {
         return sampleRate;
     }
 
-    private void loop() {
-        input = new OggInputStream(file.read(), input);
-    }
-
     @Override
     public void processBuffer(final ByteBuffer byteBuffer) throws OpenAlException {
-        for (int i = 0; i < byteBuffer.capacity(); i++) {
-            int value = input.read();
-            if (value == -1) {
-                if (loop) {
-                    loop();
-                    value = input.read();
-                } else {
-                    fastZero(byteBuffer);
-                    pause();
-                    break;
+        final int capacity = byteBuffer.capacity();
+        int       index    = 0;
+        while (index < capacity) {
+            final int remaining = asset.size() - cursor;
+            if (remaining == 0) {
+                if (loop && asset.size() != 0) {
+                    cursor = 0;//looping is just a jump back to the start
+                    continue;
+                }
+                for (int i = index; i < capacity; i++) {
+                    byteBuffer.put(i, (byte) 0);
                 }
+                pause();
+                break;
             }
-            byteBuffer.put(i, (byte) value);
+            final int length = Math.min(capacity - index, remaining);
+            asset.copy(cursor, byteBuffer, index, length);
+            cursor += length;
+            index += length;
         }
     }
 
     public void setFile(final FileHandle file) throws OpenAlException {
         this.file = file;
-        input     = new OggInputStream(file.read());
-        channels  = input.getChannels();
-        setup(input.getChannels(), input.getSampleRate());
+        asset     = cache.get(file);
+        cursor    = 0;
+        channels  = asset.getChannels();
+        setup(asset.getChannels(), asset.getSamplerate());
     }
 
     public void setLoop(boolean loop) {
@@ -96,7 +96,6 @@ public class OggPlayer extends AbstractAudioProducer {
     protected void setup(final int channels, final int sampleRate) {
         this.format     = channels > 1 ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
         this.sampleRate = sampleRate;
-//        maxSecondsPerBuffer = (float) bufferSize / (bytesPerSample * channels * sampleRate);
     }
 
 }
@@ -27,7 +27,7 @@ public class OggPlayerFactory extends AbstractSynthesizerFactory<OggPlayer> {
 
     @Override
     public OggPlayer uncacheSynth(AudioEngine audioEngine) throws OpenAlException {
-        return new OggPlayer();
+        return new OggPlayer(audioEngine.getPcmCache());
     }
 
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.lwjgl.openal.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Plays on the default openal output device.
+ *
+ * @author abdalla bushnaq
+ */
+public class OpenAlBackend implements AudioBackend {
+    protected     long   context;
+    protected     long   device;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    protected     String name;
+
+    @Override
+    public void create(final int samplerate) throws OpenAlException {
+        device = openDevice();
+        if (device == 0)
+            throw new OpenAlcException(String.format("Couldn't open device %s", name));
+        context = ALC10.alcCreateContext(device, getContextAttributes(samplerate));
+        if (context == 0)
+            throw new OpenAlcException(String.format("Couldn't create context for device %s", name));
+        ALC10.alcMakeContextCurrent(context);
+        final ALCCapabilities alcCapabilities = ALC.createCapabilities(device);
+        AL.createCapabilities(alcCapabilities);
+    }
+
+    @Override
+    public void dispose() throws OpenAlException {
+        {
+            ALC10.alcSuspendContext(context);
+            AudioEngine.checkAlcError("Openal error #");
+        }
+        {
+            final boolean result = ALC10.alcMakeContextCurrent(0);
+            AudioEngine.checkAlcError(result, "Openal error #");
+        }
+        //all calls to AL10.alGetError from this point will fail with #40964 AL_INVALID_OPERATION, as it needs the context to work properly
+        {
+            ALC10.alcDestroyContext(context);
+            AudioEngine.checkAlcError("Openal error #");
+        }
+        {
+            final boolean result = ALC10.alcCloseDevice(device);
+            AudioEngine.checkAlcError(result, "Openal error #");
+        }
+    }
+
+    /**
+     * @param samplerate samplerate of the engine
+     * @return zero terminated attribute list of the context
+     */
+    protected int[] getContextAttributes(final int samplerate) {
+        return new int[]{ALC11.ALC_MONO_SOURCES, 1, 0};
+    }
+
+    @Override
+    public long getDevice() {
+        return device;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+
+    /**
+     * @return handle of the device or 0 if it could not be opened
+     */
+    protected long openDevice() {
+        //		List<String> list = ALUtil.getStringList(0, ALC10.ALC_DEVICE_SPECIFIER/*, EnumerateAllExt.ALC_DEFAULT_ALL_DEVICES_SPECIFIER*/);
+        name = ALC10.alcGetString(0, EnumerateAllExt.ALC_DEFAULT_ALL_DEVICES_SPECIFIER);
+        logger.info("Device: " + name);
+        return ALC10.alcOpenDevice(name);
+    }
+
+    @Override
+    public void render(final ByteBuffer buffer) throws OpenAlException {
+        throw new OpenAlException(String.format("device %s plays in real time and cannot render on demand", name));
+    }
+
+}
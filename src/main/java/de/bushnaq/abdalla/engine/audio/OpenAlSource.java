@@ -20,77 +20,259 @@ import com.badlogic.gdx.math.Vector3;
 import org.lwjgl.openal.AL10;
 import org.lwjgl.openal.AL11;
 import org.lwjgl.openal.EXTEfx;
-import org.lwjgl.system.libc.LibCStdlib;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.nio.ByteOrder;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 public class OpenAlSource extends Thread {
-    private static final int                       BUFFER_COUNT         = 3;
-    private              boolean                   ambient;
-    private              AudioProducer             audio;
-    private              int                       auxiliaryEffectSlot  = 0;
-    private              int                       bits;
-    private final        int[]                     bufferId             = new int[BUFFER_COUNT];
-    private final        List<Integer>             bufferQueue          = new ArrayList<>(); // A quick and dirty queue of buffer objects
-    private final        List<Integer>             buffersUnqueued      = new ArrayList<>(); // A quick and dirty queue of buffer objects
-    private              long                      buffersize;
-    private              ByteBuffer                byteBuffer;
-    private final        List<ByteBufferContainer> byteBufferCopyList   = new ArrayList<>();
-    private              int                       channels;
-    private volatile     boolean                   end                  = false;
-    private              int                       filter;
-    private              float                     gain;
-    private              boolean                   keepCopy             = false;
+    private static final int                        CAPTURE_BLOCKS       = 256;//number of blocks the capture ring buffers before data is dropped
+    private static final int                        KEEP_COPY_BLOCKS     = 1024;//number of blocks kept in keep copy mode
+    static final         float                      REFERENCE_DISTANCE   = 0.1f;
+    private static final long                       RENDER_IDLE_NANOS    = 1000000L;//render worker and submitter poll interval
+    static final         float                      ROLLOFF_FACTOR       = 1f;
+    private              boolean                    ambient;
+    private              float                      appliedGain          = Float.NaN;//gain submitted to openal
+    private final        Vector3                    appliedPosition      = new Vector3();//position submitted to openal
+    private final        Vector3                    appliedVelocity      = new Vector3();//velocity submitted to openal
+    private volatile     AudioProducer              audio;
+    private              int                        auxiliaryEffectSlot  = 0;
+    private              int                        bits;
+    private              ByteBuffer[]               blocks;//block sized views of the staging buffer
+    private final        int[]                      bufferId             = new int[AdaptiveLatency.MAX_BUFFER_COUNT];
+    private final        int[][]                    bufferHolder         = new int[AdaptiveLatency.MAX_BUFFER_COUNT + 1][];//alSourceUnqueueBuffers unqueues as many buffers as the array holds
+    private final        NativeBufferPool           bufferPool;
+    private              long                       buffersize;//size of one block, an openal buffer holds one or more blocks
+    private              ByteBuffer                 byteBuffer;//the first block
+    private volatile     AudioCapture               capture;//records every block that is queued
+    private              int                        channels;
+    private final        AlCommandBuffer            commands;//property changes are applied once per frame
+    private              OpenAlSourceConfiguration  configuration;
+    private volatile     boolean                    end                  = false;
+    private              int                        filter;
+    private              boolean                    filterEnabled;
+    private              float                      filterHighGain;
+    private              float                      filterLowGain;
+    private              boolean                    filterRequested      = false;//updateFilter was called since the last batch
+    private final        int[]                      freeBuffers          = new int[AdaptiveLatency.MAX_BUFFER_COUNT];//buffers that are not queued
+    private              int                        freeBuffersCount     = 0;
+    private              float                      gain;//requested gain
+    private volatile     int                        generation           = 0;//incremented whenever pre rendered blocks become outdated, only changed while holding renderLock
+    private              boolean                    keepCopy             = false;
+    private volatile     KeepCopyRing               keepCopyRing;//copies of the last blocks in keep copy mode
+    private final        AdaptiveLatency            latency              = new AdaptiveLatency();
+    private final        List<OpenAlSourceListener> listeners            = new CopyOnWriteArrayList<>();
     //	private long lastIndex = 0;
-    private final        Logger                    logger               = LoggerFactory.getLogger(this.getClass());
-    private              boolean                   play;//source should be in play state
-    private final        Vector3                   position             = new Vector3();//last position submitted to openal
-    private final        boolean                   radio;
-    private              int                       restartedSourceCount = 0;
-    private              int                       samplerate;
-    private              long                      samples;
-    private              boolean                   sleeping             = false;
-    private              int                       source;
-    private final        Vector3                   velocity             = new Vector3();//last velocity submitted to openal
-
-    public OpenAlSource(final long samples, final int samplerate, final int bits, final int channels, float gain, final int auxiliaryEffectSlot, boolean ambient, boolean radio) throws OpenAlException {
-        this.samples             = samples;
-        this.samplerate          = samplerate;
-        this.bits                = bits;
-        this.channels            = channels;
+    private final        Logger                     logger               = LoggerFactory.getLogger(this.getClass());
+    private volatile     boolean                    parked               = false;//thread is waiting in parkThread
+    private              boolean                    pendingStart         = true;//queue is empty because the source is new or was reconfigured, starting it is no underrun
+    private              boolean                    play;//source should be in play state
+    private final        Vector3                    position             = new Vector3();//requested position
+    private              boolean                    queued               = false;//queued in the command buffer, guarded by the command buffer
+    private volatile     int                        queuedBuffers        = 0;//buffers queued in openal
+    private              boolean                    radio;
+    private volatile     int                        renderAhead          = 0;//number of blocks the render worker renders ahead, 0 renders on the source thread
+    private final        Object                     renderLock           = new Object();//held while a block is rendered, attach and detach wait for the block in flight
+    private volatile     Thread                     renderWorker;//only exists while renderAhead > 0
+    private              int                        restartedSourceCount = 0;
+    private volatile     PcmRing                    ring;//pre rendered blocks, render worker is the producer, source thread the consumer
+    private              int                        samplerate;
+    private              long                       samples;
+    private volatile     boolean                    sleeping             = false;
+    private              int                        source;
+    private              ByteBuffer                 stagingBuffer;//one openal buffer of up to MAX_SIZE_FACTOR blocks
+    private              NativeBufferPool.Lease     stagingLease;
+    private              int                        underrunCount        = 0;
+    private final        Vector3                    velocity             = new Vector3();//requested velocity
+
+    public OpenAlSource(final OpenAlSourceConfiguration configuration, final float gain, final NativeBufferPool bufferPool, final AlCommandBuffer commands) throws OpenAlException {
+        this.bufferPool          = bufferPool;
+        this.commands            = commands;
+        this.configuration       = configuration;
+        this.samples             = configuration.getSamples();
+        this.samplerate          = configuration.getSamplerate();
+        this.bits                = configuration.getBits();
+        this.channels            = configuration.getChannels();
         this.gain                = gain;
-        this.auxiliaryEffectSlot = auxiliaryEffectSlot;
-        this.ambient             = ambient;
-        this.radio               = radio;
+        this.auxiliaryEffectSlot = configuration.getAuxiliaryEffectSlot();
+        this.ambient             = configuration.isAmbient();
+        this.radio               = configuration.isRadio();
         createBuffer();
         createSource();
         setName("OpenAlSource-" + source);
     }
 
+    public void addListener(final OpenAlSourceListener listener) {
+        if (!listeners.contains(listener))
+            listeners.add(listener);
+    }
+
+    /**
+     * Waits until the block that is rendered for the previous producer is done, blocks rendered ahead for the previous producer are dropped.
+     *
+     * @param audio the producer that renders the blocks of this source from now on
+     */
     public void attach(final AudioProducer audio) {
-        this.audio = audio;
+        synchronized (renderLock) {
+            this.audio = audio;
+            generation++;
+        }
+        unparkRenderWorker();
+    }
+
+    /**
+     * Lease the staging buffer for the current block size and resize everything that depends on it.
+     */
+    private void allocateBlocks() {
+        buffersize    = samples * channels * bits / 8;
+        stagingLease  = bufferPool.acquire(buffersize * AdaptiveLatency.MAX_SIZE_FACTOR);
+        stagingBuffer = stagingLease.buffer();
+        blocks        = new ByteBuffer[AdaptiveLatency.MAX_SIZE_FACTOR];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = stagingBuffer.slice((int) (i * buffersize), (int) buffersize).order(ByteOrder.nativeOrder());
+        }
+        byteBuffer = blocks[0];
+        if (renderAhead > 0 && (ring == null || ring.getBlockSize() != buffersize))
+            ring = new PcmRing(renderAhead, (int) buffersize);
+        if (keepCopy)
+            keepCopyRing = new KeepCopyRing(bufferPool, KEEP_COPY_BLOCKS, (int) buffersize);
+        generation++;
+    }
+
+    private void applyFilter(final boolean enableFilter, final float lowGain, final float highGain) throws OpenAlException {
+        if (filter != 0) {
+            if (enableFilter) {
+                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, EXTEfx.AL_FILTER_NULL);
+                AudioEngine.checkAlError("Openal error #");
+                if (radio) {
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAIN, highGain);
+                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAINLF, lowGain);
+                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
+                } else {
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAIN, lowGain);
+                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAINHF, highGain);
+                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
+                }
+                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, filter);
+                AudioEngine.checkAlError("Assigning direct filter failed with error #");
+            } else {
+                removeFilter();
+            }
+        } else {
+            //no filter
+            if (enableFilter) {
+                createFilter();
+                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, EXTEfx.AL_FILTER_NULL);
+                AudioEngine.checkAlError("Openal error #");
+                if (radio) {
+
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAIN, highGain);
+                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAINLF, lowGain);
+                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
+
+                } else {
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAIN, lowGain);
+                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+
+                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAINHF, highGain);
+                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
+                }
+                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, filter);
+                AudioEngine.checkAlError("Assigning direct filter failed with error #");
+            } else {
+                //ok
+            }
+        }
+    }
+
+    private void applyGain(final float gain) throws OpenAlException {
+        AL10.alSourcef(source, AL10.AL_GAIN, gain);
+        AudioEngine.checkAlError("Failed alSourcef AL_GAIN with error #");
+        appliedGain = gain;
+    }
+
+    /**
+     * Submit the properties that changed since the last batch, called by the command buffer while holding its lock.
+     *
+     * @param commands the command buffer
+     * @throws OpenAlException
+     */
+    void applyProperties(final AlCommandBuffer commands) throws OpenAlException {
+        if (gain != appliedGain) {
+            AL10.alSourcef(source, AL10.AL_GAIN, gain);
+            commands.applied("Failed alSourcef AL_GAIN with error #");
+            appliedGain = gain;
+        }
+        if (!position.equals(appliedPosition)) {
+            AL10.alSource3f(source, AL10.AL_POSITION, position.x, position.y, position.z);
+            commands.applied("Failed to set source position with error #");
+            appliedPosition.set(position);
+        }
+        if (!velocity.equals(appliedVelocity)) {
+            AL10.alSource3f(source, AL10.AL_VELOCITY, velocity.x, velocity.y, velocity.z);
+            commands.applied("Failed to set source velocity with error #");
+            appliedVelocity.set(velocity);
+        }
+        if (filterRequested) {
+            filterRequested = false;
+            applyFilter(filterEnabled, filterLowGain, filterHighGain);
+            commands.applied("Openal error #");
+        }
+    }
+
+    /**
+     * Wait until the source thread is parked, so that the queue can be changed from the calling thread.
+     * The source must be paused, the caller must hold the monitor and keep it until the queue is changed, the thread cannot leave parkThread before.
+     * A terminating thread notifies its monitor too.
+     */
+    private void awaitParked() throws InterruptedException {
+        while (isAlive() && !parked) {
+            wait();
+        }
+    }
+
+    /**
+     * Wait until the source thread recycled all processed buffers and filled the queue again.
+     * Used to render deterministically with a backend that is not real time.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if the queue is filled, false if the source is not playing or the timeout elapsed
+     * @throws OpenAlException
+     */
+    boolean awaitQueueFilled(final long timeout) throws OpenAlException {
+        final long deadline = System.nanoTime() + timeout * 1000000L;
+        while (play && !sleeping && !end) {
+            final int processed = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
+            AudioEngine.checkAlError("Failed AL_BUFFERS_PROCESSED with error #");
+            if (processed == 0 && queuedBuffers >= latency.getBufferCount())
+                return true;
+            if (System.nanoTime() > deadline)
+                return false;
+            LockSupport.parkNanos(RENDER_IDLE_NANOS);
+        }
+        return false;
     }
 
     private void createBuffer() throws OpenAlException {
-        buffersize = samples * channels * bits / 8;
-        byteBuffer = LibCStdlib.malloc(buffersize);
+        allocateBlocks();
         AL10.alGenBuffers(bufferId);
         AudioEngine.checkAlError("Openal error #");
-        logger.trace("created filter " + bufferId[0] + "-" + bufferId[BUFFER_COUNT - 1]);
-        for (int i = 0; i < BUFFER_COUNT; i++) {
-            buffersUnqueued.add(bufferId[i]);
-        }
+        logger.trace("created filter " + bufferId[0] + "-" + bufferId[bufferId.length - 1]);
+        System.arraycopy(bufferId, 0, freeBuffers, 0, bufferId.length);
+        freeBuffersCount = bufferId.length;
+        queuedBuffers    = 0;
     }
 
     private void createFilter() throws OpenAlException {
@@ -130,23 +312,17 @@ public class OpenAlSource extends Thread {
             logger.trace("created source " + source);
         }
 
-        AL10.alSourcef(source, AL10.AL_REFERENCE_DISTANCE, 0.1f);
+        AL10.alSourcef(source, AL10.AL_REFERENCE_DISTANCE, REFERENCE_DISTANCE);
         AudioEngine.checkAlError("Openal error #");
 
         AL10.alSourcef(source, AL10.AL_MAX_DISTANCE, Float.MAX_VALUE);
         AudioEngine.checkAlError("Openal error #");
 
-        AL10.alSourcef(source, AL10.AL_ROLLOFF_FACTOR, 1f);
+        AL10.alSourcef(source, AL10.AL_ROLLOFF_FACTOR, ROLLOFF_FACTOR);
         AudioEngine.checkAlError("Openal error #");
 
-        if (ambient) {
-            AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
-            AudioEngine.checkAlError("Openal error #");
-        } else {
-            AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, AL10.AL_FALSE);
-            AudioEngine.checkAlError("Openal error #");
-        }
-        setGain(gain);
+        setAmbient(ambient);
+        applyGain(gain);
 //        AL10.alSourcef(source, AL10.AL_GAIN, gain);
 //        AudioEngine.checkAlError("Openal error #");
 
@@ -157,14 +333,40 @@ public class OpenAlSource extends Thread {
         AudioEngine.checkAlError("Openal error #");
 
 //        alSource3i(source, AL_AUXILIARY_SEND_FILTER, distortionEffectSlot, 0, AL_FILTER_NULL);
-        AL11.alSource3i(source, EXTEfx.AL_AUXILIARY_SEND_FILTER, auxiliaryEffectSlot, 1, filter);
+        setAuxiliaryEffectSlot(auxiliaryEffectSlot);
+    }
+
+    /**
+     * Detach the producer, waits until the block that is rendered for it is done.
+     * The producer is not called by this source afterwards and can be mixed or attached elsewhere.
+     */
+    public void detach() {
+        synchronized (renderLock) {
+            audio = null;
+            generation++;
+        }
+    }
+
+    /**
+     * Forget property changes that were not applied yet, they belong to the previous producer.
+     */
+    private void discardProperties() {
+        synchronized (commands) {
+            gain = appliedGain;
+            position.set(appliedPosition);
+            velocity.set(appliedVelocity);
+            filterRequested = false;
+        }
     }
 
     void dispose() throws OpenAlException {
+        discardProperties();
+        stopCaptureQuietly();
         end = true;
         unparkThread();
-        //wait for the thread to terminate before manipulating any objects
-        while (this.isAlive()) {
+        unparkRenderWorker();
+        //wait for the threads to terminate before manipulating any objects
+        while (this.isAlive() || (renderWorker != null && renderWorker.isAlive())) {
             try {
                 Thread.sleep(1);
             } catch (final InterruptedException e) {
@@ -176,22 +378,72 @@ public class OpenAlSource extends Thread {
         removeBuffers();
     }
 
+    /**
+     * @return number of openal buffers this source currently keeps queued
+     */
+    public int getBufferCount() {
+        return latency.getBufferCount();
+    }
+
     public long getBuffersize() {
         return buffersize;
     }
 
-    public List<ByteBufferContainer> getByteBufferCopyList() {
-        return byteBufferCopyList;
+    /**
+     * @return copies of the last rendered blocks, null if keep copy mode is off
+     */
+    public KeepCopyRing getKeepCopyRing() {
+        return keepCopyRing;
     }
 
     public int getRestartedSourceCount() {
         return restartedSourceCount;
     }
 
+    public OpenAlSourceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return current latency in milliseconds
+     */
+    public float getLatency() {
+        return latency.getLatency() * samples * 1000f / samplerate;
+    }
+
+    /**
+     * @return number of buffers that are neither queued in openal nor being filled
+     */
+    int getFreeBufferCount() {
+        return freeBuffersCount;
+    }
+
+    /**
+     * @return number of buffers queued in openal
+     */
+    public int getQueueDepth() {
+        return queuedBuffers;
+    }
+
+    public int getRenderAhead() {
+        return renderAhead;
+    }
+
     public long getSamples() {
         return samples;
     }
 
+    /**
+     * @return number of blocks in one openal buffer
+     */
+    public int getSizeFactor() {
+        return latency.getSizeFactor();
+    }
+
+    public int getUnderrunCount() {
+        return underrunCount;
+    }
+
     public boolean isKeepCopy() {
         return keepCopy;
     }
@@ -206,6 +458,11 @@ public class OpenAlSource extends Thread {
         AudioEngine.checkAlError("Openal error #");
         return AL10.AL_PLAYING == current_playing_state;
     }
+
+    boolean isQueued() {
+        return queued;
+    }
+
     //	private void unqueueAllBuffers() throws Exception {
     //		final int queuedBuffers = AL10.alGetSourcei(source, AL10.AL_BUFFERS_QUEUED);
     //
@@ -226,12 +483,17 @@ public class OpenAlSource extends Thread {
 
     private synchronized void parkThread() {
         //		logger.info("parked thread");
+        parked = true;
+        notifyAll();//wake up awaitParked
         try {
-            wait();
-            sleeping = false;
+            while (sleeping && !end) {
+                wait();
+            }
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Thread interrupted", e);
+        } finally {
+            parked = false;
         }
         //		logger.info("unparked thread");
     }
@@ -262,15 +524,90 @@ public class OpenAlSource extends Thread {
         }
     }
 
-    private void queueBuffers() throws OpenAlException {
-        for (final Integer bufferId : buffersUnqueued) {
-            audio.processBuffer(byteBuffer);
-            AL10.alBufferData(bufferId, audio.getOpenAlFormat(), byteBuffer, samplerate);
-            AudioEngine.checkAlError("Openal error #");
+    /**
+     * Queue buffers until the queue depth the latency policy asks for is reached.
+     *
+     * @return true if at least one buffer was queued
+     */
+    private boolean fillQueue() throws OpenAlException {
+        boolean queued = false;
+        while (queuedBuffers < latency.getBufferCount() && freeBuffersCount > 0) {
+            final int queueDepth = queuedBuffers;
+            if (!queueBuffer(freeBuffers[--freeBuffersCount]))
+                break;
+            queuedBuffers++;
+            queued = true;
+            if (latency.submitted(queueDepth))
+                fireLatencyChanged();
+        }
+        return queued;
+    }
+
+    private void fireLatencyChanged() {
+        logger.trace(String.format("source %d latency %d x %d blocks", source, latency.getBufferCount(), latency.getSizeFactor()));
+        for (final OpenAlSourceListener listener : listeners) {
+            listener.latencyChanged(this, latency.getBufferCount(), latency.getSizeFactor(), getLatency());
+        }
+    }
+
+    /**
+     * Fill the buffer with as many blocks as the latency policy asks for and queue it.
+     * With a render worker the blocks are already rendered and only copied, otherwise they are rendered now.
+     *
+     * @return false if the source was paused or disposed while waiting for the render worker, the buffer stays free
+     */
+    private boolean queueBuffer(final int bufferId) throws OpenAlException {
+        final PcmRing       ring       = this.ring;
+        final int           generation = this.generation;
+        final AudioProducer audio      = this.audio;
+        final ByteBuffer    staging    = stagingBuffer;
+        final ByteBuffer[]  blocks     = this.blocks;
+        final int           factor     = latency.getSizeFactor();
+        ByteBuffer          block      = null;//pre rendered block that is submitted without copying
+        int                 size       = 0;
+        boolean             queued     = false;
+        staging.clear();//the previous buffer may have been smaller
+        try {
+            for (int i = 0; i < factor && audio != null; i++) {
+                if (ring == null) {
+                    if (!render(audio, generation, blocks[i]))
+                        break;
+                } else {
+                    block = takeBlock(ring);
+                    if (block == null)
+                        break;
+                    if (factor > 1) {
+                        staging.put(i * (int) buffersize, block, 0, (int) buffersize);
+                        ring.release();
+                        block = null;
+                    }
+                }
+                size += (int) buffersize;
+            }
+            if (size == 0)
+                return false;
+            final AudioCapture capture = this.capture;
+            if (block != null) {
+                if (capture != null)
+                    capture.offer(block);
+                AL10.alBufferData(bufferId, audio.getOpenAlFormat(), block, samplerate);
+            } else {
+                staging.limit(size);
+                if (capture != null)
+                    capture.offer(staging);
+                AL10.alBufferData(bufferId, audio.getOpenAlFormat(), staging, samplerate);
+            }
+            AudioEngine.checkAlError("Failed alBufferData with error #");
             AL10.alSourceQueueBuffers(source, bufferId);
-            AudioEngine.checkAlError("Openal error #");
+            AudioEngine.checkAlError("Failed alSourceQueueBuffers with error #");
+            queued = true;
+            return true;
+        } finally {
+            if (block != null)
+                ring.release();
+            if (!queued)
+                freeBuffers[freeBuffersCount++] = bufferId;//the buffer stays free
         }
-        buffersUnqueued.clear();
     }
 
     private void removeBuffers() throws OpenAlException {
@@ -278,9 +615,7 @@ public class OpenAlSource extends Thread {
         //		unqueueAllBuffers();
         //		AL10.alDeleteBuffers(bufferId);
         //		AudioEngine.checkAlError("Openal error #");
-        for (final ByteBufferContainer b : byteBufferCopyList)
-            LibCStdlib.free(b.byteBuffer);
-        LibCStdlib.free(byteBuffer);
+        releaseBlocks();
     }
 
     //	void renderBuffer() {
@@ -311,30 +646,138 @@ public class OpenAlSource extends Thread {
         AudioEngine.checkAlError("Openal error #");
     }
 
+    public void removeListener(final OpenAlSourceListener listener) {
+        listeners.remove(listener);
+    }
+
     public void renderBuffer() throws OpenAlException {
         audio.processBuffer(byteBuffer);
     }
 
-    public void reset(int samples, int samplerate, int bits, int channels, float gain, int auxiliaryEffectSlot, boolean ambient) throws OpenAlException {
-        this.samples             = samples;
-        this.samplerate          = samplerate;
-        this.bits                = bits;
-        this.channels            = channels;
-        this.gain                = gain;
-        this.auxiliaryEffectSlot = auxiliaryEffectSlot;
-        this.ambient             = ambient;
-        removeFilter();
-//        removeSource();
-        removeBuffers();
-        createBuffer();
-        createSource();
-        setName("OpenAlSource-" + source);
+    /**
+     * Render one block, unless the producer was detached or replaced in the meantime.
+     *
+     * @return false if the producer was detached or replaced
+     */
+    private boolean render(final AudioProducer audio, final int generation, final ByteBuffer block) throws OpenAlException {
+        synchronized (renderLock) {
+            if (this.audio != audio || this.generation != generation)
+                return false;
+            audio.processBuffer(block);
+            return true;
+        }
+    }
+
+    /**
+     * Render worker loop, stays up to renderAhead blocks ahead of the source thread.
+     * Without producer the worker parks until attach wakes it up, the loop ends when the worker is stopped or the source is disposed.
+     */
+    private void renderBlocks() {
+        final Thread worker = Thread.currentThread();
+        while (!end && renderWorker == worker) {
+            final PcmRing       ring       = this.ring;
+            final int           generation = this.generation;//read before audio, attach changes audio first
+            final AudioProducer audio      = this.audio;
+            if (ring == null || audio == null) {
+                LockSupport.park(this);//attach, setRenderAhead and dispose unpark us
+                continue;
+            }
+            final ByteBuffer block = ring.claim();
+            if (block == null) {
+                LockSupport.parkNanos(RENDER_IDLE_NANOS);//ring is full, wait for the source thread
+                continue;
+            }
+            try {
+                if (render(audio, generation, block))
+                    ring.publish(generation);
+            } catch (final Exception e) {
+                logger.error(e.getMessage(), e);
+                LockSupport.parkNanos(RENDER_IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Prepare this unused source for another producer without deleting and recreating any openal object.
+     * Buffers still queued for the previous producer are dropped, source properties are only changed where the configuration differs.
+     * A source with the same configuration only gets its gain updated, position and filter are updated by the producer.
+     *
+     * @param configuration the configuration the new producer needs
+     * @param gain          the gain of the new producer
+     * @throws OpenAlException
+     */
+    public void reconfigure(final OpenAlSourceConfiguration configuration, final float gain) throws OpenAlException {
+        pause();
+        synchronized (this) {//the source thread cannot leave parkThread while we hold the monitor
+            try {
+                awaitParked();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenAlException("Interrupted while waiting for source thread to park");
+            }
+            AL10.alSourceStop(source);
+            AudioEngine.checkAlError("Openal error #");
+            AL10.alSourcei(source, AL10.AL_BUFFER, 0);//unqueue all buffers
+            AudioEngine.checkAlError("Openal error #");
+            play = false;
+            System.arraycopy(bufferId, 0, freeBuffers, 0, bufferId.length);
+            freeBuffersCount = bufferId.length;
+            queuedBuffers    = 0;
+            pendingStart     = true;
+            if (!configuration.equals(this.configuration)) {
+                this.configuration = configuration;
+                samplerate         = configuration.getSamplerate();
+                if (configuration.getBlockSize() != buffersize) {
+                    synchronized (renderLock) {//the render worker cannot use the keep copy ring or the staging buffer
+                        releaseBlocks();
+                        samples  = configuration.getSamples();
+                        bits     = configuration.getBits();
+                        channels = configuration.getChannels();
+                        allocateBlocks();
+                    }
+                } else {
+                    samples  = configuration.getSamples();
+                    bits     = configuration.getBits();
+                    channels = configuration.getChannels();
+                }
+                if (ambient != configuration.isAmbient())
+                    setAmbient(configuration.isAmbient());
+                if (radio != configuration.isRadio()) {
+                    radio = configuration.isRadio();
+                    removeFilter();//filter type depends on radio, the producer creates a new filter on enable
+                }
+                if (auxiliaryEffectSlot != configuration.getAuxiliaryEffectSlot())
+                    setAuxiliaryEffectSlot(configuration.getAuxiliaryEffectSlot());
+            }
+            synchronized (renderLock) {
+                generation++;
+            }
+        }
+        discardProperties();
+        stopCaptureQuietly();//the capture belongs to the previous producer
+        this.gain = gain;
+        if (appliedGain != gain)
+            applyGain(gain);
+    }
+
+    /**
+     * Release the staging buffer and everything that depends on the block size.
+     */
+    private void releaseBlocks() {
+        if (keepCopyRing != null) {
+            keepCopyRing.dispose();
+            keepCopyRing = null;
+        }
+        stagingLease.release();
+        stagingLease  = null;
+        stagingBuffer = null;
     }
 
     @Override
     public void run() {
+        startRenderWorker();
         try {
-            queueBuffers();
+            fillQueue();
         } catch (final OpenAlException e) {
             logger.error(e.getMessage(), e);
         }
@@ -353,40 +796,46 @@ public class OpenAlSource extends Thread {
                 final int availBuffers = AL10.alGetSourcei(source, AL10.AL_BUFFERS_PROCESSED);
                 AudioEngine.checkAlError("Failed AL_BUFFERS_PROCESSED with error #");
 
-                if (availBuffers > 0) {
+                boolean underrun = false;
+                if (availBuffers > 0 && freeBuffersCount < bufferId.length) {
                     //					System.out.println(String.format("%d buffers processed.", availBuffers));
-
-                    final int[] buffHolder = new int[availBuffers];
+                    final int count = Math.min(availBuffers, bufferId.length - freeBuffersCount);
+                    if (bufferHolder[count] == null)
+                        bufferHolder[count] = new int[count];
+                    final int[] buffHolder = bufferHolder[count];
                     AL10.alSourceUnqueueBuffers(source, buffHolder);
                     AudioEngine.checkAlError("Failed alSourceUnqueueBuffers with error #");
                     //					System.out.println(String.format("Unqueued %d processed buffers.", availBuffers));
-                    for (int ii = 0; ii < availBuffers; ++ii) {
+                    for (int ii = 0; ii < count; ++ii) {
                         // Push the recovered buffers back on the queue
-                        bufferQueue.add(buffHolder[ii]);
+                        freeBuffers[freeBuffersCount++] = buffHolder[ii];
+                    }
+                    queuedBuffers = Math.max(0, queuedBuffers - count);
+                    if (play && queuedBuffers == 0) {
+                        //the queue ran dry, openal played silence or stopped the source
+                        underrun = true;
+                        underrun();
                     }
                 } else {
                     //					System.out.println(String.format("Found %d processed buffers.", availBuffers));
                 }
                 // generate new sound for the empty buffers
-                if (!bufferQueue.isEmpty()) {
-                    //					System.out.println(String.format("Found %d empty buffers.", bufferQueue.size()));
-                    final int myBuff = bufferQueue.remove(0);
-                    audio.processBuffer(byteBuffer);
-                    AL10.alBufferData(myBuff, audio.getOpenAlFormat(), byteBuffer, samplerate);
-                    AudioEngine.checkAlError("Failed alBufferData with error #");
-                    // Queue the buffer
-                    AL10.alSourceQueueBuffers(source, myBuff);
-                    AudioEngine.checkAlError("Failed alSourceQueueBuffers with error #");
+                if ((fillQueue() || pendingStart) && queuedBuffers > 0) {
                     if (play) {
                         // Restart the source if needed (if we take too long and the queue dries up, the source stops playing).
                         final int state = AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE);
                         AudioEngine.checkAlError("Failed alGetSourcei AL_SOURCE_STATE with error #");
                         if (state != AL10.AL_PLAYING) {
-                            System.out.printf("Had to restart source %d.%n", source);
-                            restartedSourceCount++;
+                            if (!pendingStart) {
+                                logger.trace(String.format("Had to restart source %d.", source));
+                                restartedSourceCount++;
+                                if (!underrun)
+                                    underrun();
+                            }
                             AL10.alSourcePlay(source);
                             AudioEngine.checkAlError("Failed alSourcePlay with error #");
                         }
+                        pendingStart = false;
                     }
                 }
             } catch (final Exception e) {
@@ -395,117 +844,224 @@ public class OpenAlSource extends Thread {
         } while (!end);
     }
 
+    private void setAmbient(final boolean ambient) throws OpenAlException {
+        this.ambient = ambient;
+        AL10.alSourcei(source, AL10.AL_SOURCE_RELATIVE, ambient ? AL10.AL_TRUE : AL10.AL_FALSE);
+        AudioEngine.checkAlError("Openal error #");
+    }
+
+    private void setAuxiliaryEffectSlot(final int auxiliaryEffectSlot) {
+        this.auxiliaryEffectSlot = auxiliaryEffectSlot;
+        AL11.alSource3i(source, EXTEfx.AL_AUXILIARY_SEND_FILTER, auxiliaryEffectSlot, 1, filter);
+    }
+
+    /**
+     * The gain is applied with the next batch of the command buffer.
+     */
     public void setGain(final float gain) throws OpenAlException {
-        AL10.alSourcef(source, AL10.AL_GAIN, gain);
-        AudioEngine.checkAlError("Failed alSourcef AL_GAIN with error #");
+        synchronized (commands) {
+            this.gain = gain;
+            commands.enqueue(this);
+        }
     }
 
     public void setKeepCopy(final boolean keepCopy) {
         this.keepCopy = keepCopy;
+        if (keepCopy && keepCopyRing == null) {
+            keepCopyRing = new KeepCopyRing(bufferPool, KEEP_COPY_BLOCKS, (int) buffersize);
+        }
+    }
+
+    /**
+     * @param minBufferCount lowest number of queued buffers
+     * @param maxBufferCount highest number of queued buffers
+     * @param maxSizeFactor  highest number of blocks in one buffer
+     * @see AdaptiveLatency#setBounds(int, int, int)
+     */
+    public void setLatencyBounds(final int minBufferCount, final int maxBufferCount, final int maxSizeFactor) {
+        latency.setBounds(minBufferCount, maxBufferCount, maxSizeFactor);
     }
 
+    /**
+     * Render up to blocks buffers ahead on a separate render worker thread, the source thread then only submits pre rendered blocks to openal.
+     * Takes effect immediately if the source is already running, switching back to 0 stops the render worker and waits for it to terminate.
+     *
+     * @param blocks number of blocks to render ahead, 0 renders every buffer on the source thread just in time
+     */
+    public void setRenderAhead(final int blocks) {
+        if (blocks == renderAhead)
+            return;
+        synchronized (renderLock) {
+            renderAhead = blocks;
+            ring        = blocks > 0 ? new PcmRing(blocks, (int) buffersize) : null;
+            generation++;
+        }
+        if (blocks == 0)
+            stopRenderWorker();
+        else if (isAlive())
+            startRenderWorker();
+        unparkRenderWorker();
+    }
+
+    /**
+     * The position is applied with the next batch of the command buffer.
+     */
     public void setPosition(final float[] position) throws OpenAlException {
-        if (this.position.x != position[0] || this.position.y != position[1] || this.position.z != position[2]) {
+        synchronized (commands) {
             this.position.set(position[0], position[1], position[2]);
-            AL10.alSourcefv(source, AL10.AL_POSITION, position);
-            AudioEngine.checkAlError("Failed to set source position with error #");
+            commands.enqueue(this);
         }
     }
 
+    void setQueued(final boolean queued) {
+        this.queued = queued;
+    }
+
+    /**
+     * The velocity is applied with the next batch of the command buffer.
+     */
     public void setVelocity(final float[] position, final float[] velocity) throws OpenAlException {
-        if (this.velocity.x != velocity[0] || this.velocity.y != velocity[1] || this.velocity.z != velocity[2]) {
+        synchronized (commands) {
             this.velocity.set(velocity[0], velocity[1], velocity[2]);
-            AL10.alSourcefv(source, AL10.AL_VELOCITY, velocity);
-            AudioEngine.checkAlError("Failed to set source velocity with error #");
+            commands.enqueue(this);
         }
     }
 
-    public synchronized void unparkOrStartThread() {
-        if (isAlive()) {
-            notify();
-        } else {
-            start();
+    /**
+     * Record every block this source queues into a wav file, the file grows while the source plays.
+     * Writing happens on a background thread, the source thread only copies the blocks.
+     *
+     * @param fileName file name without extension
+     * @throws IOException
+     */
+    public synchronized void startCapture(final String fileName) throws IOException {
+        stopCapture();
+        capture = new AudioCapture(new File(fileName + ".wav"), samplerate, bits, channels, (int) buffersize, CAPTURE_BLOCKS);
+    }
+
+    private synchronized void startRenderWorker() {
+        if (renderAhead > 0 && renderWorker == null) {
+            renderWorker = new Thread(this::renderBlocks, getName() + "-render");
+            renderWorker.setDaemon(true);
+            renderWorker.start();
         }
     }
 
-    private synchronized void unparkThread() {
-        if (isAlive()) {
-            notify();
+    /**
+     * Stop the render worker and wait for it to terminate, the worker may be rendering a block and needs renderLock to finish it.
+     */
+    private void stopRenderWorker() {
+        final Thread worker;
+        synchronized (this) {
+            worker       = renderWorker;
+            renderWorker = null;
+        }
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error(e.getMessage(), e);
+            }
         }
     }
 
-    public void updateFilter(final boolean enableFilter, final float lowGain, final float highGain) throws OpenAlException {
-        if (filter != 0) {
-            if (enableFilter) {
-                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, EXTEfx.AL_FILTER_NULL);
-                AudioEngine.checkAlError("Openal error #");
-                if (radio) {
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAIN, highGain);
-                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+    /**
+     * Stop recording and complete the wav file.
+     *
+     * @throws IOException
+     */
+    public synchronized void stopCapture() throws IOException {
+        final AudioCapture capture = this.capture;
+        if (capture != null) {
+            this.capture = null;
+            capture.close();
+        }
+    }
 
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAINLF, lowGain);
-                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
-                } else {
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAIN, lowGain);
-                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+    private void stopCaptureQuietly() {
+        try {
+            stopCapture();
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
 
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAINHF, highGain);
-                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
-                }
-                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, filter);
-                AudioEngine.checkAlError("Assigning direct filter failed with error #");
+    /**
+     * Wait for the next pre rendered block of the current generation.
+     *
+     * @return the block or null if the source is paused or disposed before a block is available
+     */
+    private ByteBuffer takeBlock(final PcmRing ring) {
+        while (!end && !sleeping) {
+            final ByteBuffer block = ring.peek();
+            if (block == null) {
+                LockSupport.parkNanos(RENDER_IDLE_NANOS);
+            } else if (ring.peekTag() != generation) {
+                ring.release();//rendered for a previous producer or configuration
             } else {
-                removeFilter();
+                return block;
             }
-        } else {
-            //no filter
-            if (enableFilter) {
-                createFilter();
-                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, EXTEfx.AL_FILTER_NULL);
-                AudioEngine.checkAlError("Openal error #");
-                if (radio) {
+        }
+        return null;
+    }
 
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAIN, highGain);
-                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+    private void underrun() {
+        underrunCount++;
+        for (final OpenAlSourceListener listener : listeners) {
+            listener.underrun(this, underrunCount);
+        }
+        if (latency.underrun())
+            fireLatencyChanged();
+    }
 
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_HIGHPASS_GAINLF, lowGain);
-                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
+    public synchronized void unparkOrStartThread() {
+        sleeping = false;
+        if (isAlive()) {
+            notifyAll();
+        } else {
+            start();
+        }
+    }
 
-                } else {
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAIN, lowGain);
-                    AudioEngine.checkAlError("Failed to set filter lowGain with error #");
+    private void unparkRenderWorker() {
+        final Thread worker = renderWorker;
+        if (worker != null)
+            LockSupport.unpark(worker);
+    }
 
-                    EXTEfx.alFilterf(filter, EXTEfx.AL_LOWPASS_GAINHF, highGain);
-                    AudioEngine.checkAlError("Failed to set filter highgain with error #");
-                }
-                AL10.alSourcei(source, EXTEfx.AL_DIRECT_FILTER, filter);
-                AudioEngine.checkAlError("Assigning direct filter failed with error #");
-            } else {
-                //ok
-            }
+    private synchronized void unparkThread() {
+        if (isAlive()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * The filter is updated with the next batch of the command buffer.
+     */
+    public void updateFilter(final boolean enableFilter, final float lowGain, final float highGain) throws OpenAlException {
+        synchronized (commands) {
+            filterEnabled   = enableFilter;
+            filterLowGain   = lowGain;
+            filterHighGain  = highGain;
+            filterRequested = true;
+            commands.enqueue(this);
         }
     }
 
     private void writeByteBufferToDisk(final ByteBuffer byteBuffer, final String fileName) throws IOException {
-        final byte[] buffer = new byte[byteBuffer.capacity()];
-        for (int i = 0; i < buffer.length; i++) {
-            final int x = byteBuffer.getShort(i);
-            buffer[i++] = (byte) x;
-            buffer[i]   = (byte) (x >>> 8);
+        try (final WavWriter writer = new WavWriter(new File(fileName + ".wav"), samplerate, bits, channels)) {
+            writer.write(byteBuffer.duplicate().clear());
         }
-        final File                 out              = new File(fileName + ".wav");
-        final AudioFormat          format           = new AudioFormat(samplerate, bits, channels, true, false);
-        final ByteArrayInputStream bais             = new ByteArrayInputStream(buffer);
-        final AudioInputStream     audioInputStream = new AudioInputStream(bais, format, buffer.length);
-        AudioSystem.write(audioInputStream, AudioFileFormat.Type.WAVE, out);
-        audioInputStream.close();
     }
 
     void writeWav(final String fileName) throws IOException {
-        if (isKeepCopy()) {
-            for (int i = 0; i < byteBufferCopyList.size(); i++) {
-                final ByteBuffer b = byteBufferCopyList.get(i).byteBuffer;
-                writeByteBufferToDisk(b, fileName + i + "-" + byteBufferCopyList.get(i).startFrequency + "-" + byteBufferCopyList.get(i).endFrequency);
+        final KeepCopyRing keepCopyRing = this.keepCopyRing;
+        if (isKeepCopy() && keepCopyRing != null) {
+            for (int i = 0; i < keepCopyRing.size(); i++) {
+                final ByteBufferContainer container = keepCopyRing.get(i);
+                writeByteBufferToDisk(container.byteBuffer, fileName + i + "-" + container.startFrequency + "-" + container.endFrequency);
             }
         } else {
             writeByteBufferToDisk(byteBuffer, fileName);
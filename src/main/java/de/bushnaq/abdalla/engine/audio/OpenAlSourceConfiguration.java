@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.util.Objects;
+
+/**
+ * Everything that an OpenAlSource is set up with besides gain, position and filter.
+ * Unused sources are pooled by configuration, a source with the same configuration can be handed to another producer without touching any openal state.
+ *
+ * @author abdalla bushnaq
+ */
+public class OpenAlSourceConfiguration {
+    private final boolean ambient;
+    private final int     auxiliaryEffectSlot;
+    private final int     bits;
+    private final int     channels;
+    private final boolean radio;
+    private final int     samplerate;
+    private final long    samples;
+
+    public OpenAlSourceConfiguration(final long samples, final int samplerate, final int bits, final int channels, final int auxiliaryEffectSlot, final boolean ambient, final boolean radio) {
+        this.samples             = samples;
+        this.samplerate          = samplerate;
+        this.bits                = bits;
+        this.channels            = channels;
+        this.auxiliaryEffectSlot = auxiliaryEffectSlot;
+        this.ambient             = ambient;
+        this.radio               = radio;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof OpenAlSourceConfiguration))
+            return false;
+        final OpenAlSourceConfiguration that = (OpenAlSourceConfiguration) o;
+        return ambient == that.ambient && auxiliaryEffectSlot == that.auxiliaryEffectSlot && bits == that.bits && channels == that.channels && radio == that.radio && samplerate == that.samplerate && samples == that.samples;
+    }
+
+    public int getAuxiliaryEffectSlot() {
+        return auxiliaryEffectSlot;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return size of one block in bytes
+     */
+    public long getBlockSize() {
+        return samples * channels * bits / 8;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getSamplerate() {
+        return samplerate;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ambient, auxiliaryEffectSlot, bits, channels, radio, samplerate, samples);
+    }
+
+    public boolean isAmbient() {
+        return ambient;
+    }
+
+    public boolean isRadio() {
+        return radio;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d samples %dHz %d bit %d channels slot %d%s%s", samples, samplerate, bits, channels, auxiliaryEffectSlot, ambient ? " ambient" : "", radio ? " radio" : "");
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+/**
+ * Notified by an OpenAlSource about underruns and latency changes, called on the thread of the source
+ */
+public interface OpenAlSourceListener {
+    /**
+     * @param source      the source that adapted its latency
+     * @param bufferCount number of buffers that are queued from now on
+     * @param sizeFactor  number of blocks in one buffer from now on
+     * @param latency     latency in milliseconds from now on
+     */
+    void latencyChanged(OpenAlSource source, int bufferCount, int sizeFactor, float latency);
+
+    /**
+     * @param source        the source whose queue ran dry while playing
+     * @param underrunCount number of underruns of this source so far
+     */
+    void underrun(OpenAlSource source, int underrunCount);
+}
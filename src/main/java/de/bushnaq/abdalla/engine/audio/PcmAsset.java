@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoded 16 bit pcm audio kept off heap.
+ * The data is never modified after decoding and is shared by all players, players only read it using absolute positions.
+ *
+ * @author abdalla bushnaq
+ */
+public class PcmAsset {
+    private final int        channels;
+    private final ByteBuffer data;//read only, position 0, limit is the size in bytes
+    private final String     name;
+    private final int        samplerate;
+
+    public PcmAsset(final String name, final ByteBuffer data, final int channels, final int samplerate) {
+        this.name       = name;
+        this.data       = data.asReadOnlyBuffer();
+        this.channels   = channels;
+        this.samplerate = samplerate;
+    }
+
+    /**
+     * Copies pcm data into the destination buffer without changing the position of any of the buffers.
+     *
+     * @param offset      offset in bytes into the asset
+     * @param destination the buffer to copy into
+     * @param index       index in bytes into the destination buffer
+     * @param length      number of bytes to copy
+     */
+    public void copy(final int offset, final ByteBuffer destination, final int index, final int length) {
+        destination.put(index, data, offset, length);
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSamplerate() {
+        return samplerate;
+    }
+
+    /**
+     * @return size of the decoded pcm data in bytes
+     */
+    public int size() {
+        return data.limit();
+    }
+
+}
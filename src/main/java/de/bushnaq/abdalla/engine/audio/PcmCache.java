@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.backends.lwjgl3.audio.OggInputStream;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes every ogg file only once into an off heap buffer that is shared by all OggPlayer instances playing that file.
+ * Assets are kept until the cache is cleared.
+ *
+ * @author abdalla bushnaq
+ */
+public class PcmCache {
+    private static final int                   CHUNK_SIZE        = 4096 * 10;
+    private static final int                   COMPRESSION_RATIO = 10;//typical size of decoded pcm data compared to the ogg file, used if the sample count is unknown
+    private static final int                   MAX_OGG_PAGE_SIZE = 65307;//header of 27 bytes, 255 segments of up to 255 bytes
+    private static final int                   OGG_PAGE_HEADER   = 27;
+    private final        Map<String, PcmAsset> assets            = new HashMap<>();
+    private final        Logger                logger            = LoggerFactory.getLogger(this.getClass());
+    private              long                  size              = 0;//bytes of decoded pcm data
+
+    /**
+     * Decode the whole ogg file straight into an off heap buffer.
+     * The buffer is sized from the sample count of the ogg file and only grows if the sample count is unknown or too small.
+     *
+     * @param file the ogg file
+     * @return the decoded asset
+     */
+    public static PcmAsset decode(final FileHandle file) {
+        final long           samples = readSampleCount(file);
+        final OggInputStream input   = new OggInputStream(file.read());
+        try {
+            final int    frameSize = input.getChannels() * 2;//16 bit samples
+            final long   estimate  = samples > 0 ? samples * frameSize : file.length() * COMPRESSION_RATIO;
+            final byte[] chunk     = new byte[CHUNK_SIZE];
+            ByteBuffer   data      = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE - 8, Math.max(estimate, CHUNK_SIZE))).order(ByteOrder.nativeOrder());
+            int          length;
+            while ((length = input.read(chunk, 0, chunk.length)) > 0) {
+                if (data.remaining() < length)
+                    data = grow(data, length);
+                data.put(chunk, 0, length);
+            }
+            data.flip();
+            return new PcmAsset(file.path(), data, input.getChannels(), input.getSampleRate());
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    public synchronized void clear() {
+        assets.clear();
+        size = 0;
+    }
+
+    /**
+     * @param file the ogg file
+     * @return the cached asset, the file is decoded if it is not cached yet
+     */
+    public synchronized PcmAsset get(final FileHandle file) {
+        PcmAsset asset = assets.get(file.path());
+        if (asset == null) {
+            final long time = System.currentTimeMillis();
+            asset = decode(file);
+            assets.put(file.path(), asset);
+            size += asset.size();
+            logger.info(String.format("decoded %s into %d bytes in %dms", file.path(), asset.size(), System.currentTimeMillis() - time));
+        }
+        return asset;
+    }
+
+    public synchronized int getAssetCount() {
+        return assets.size();
+    }
+
+    /**
+     * @return bytes of decoded pcm data held by the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private static ByteBuffer grow(final ByteBuffer data, final int length) {
+        final ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) data.capacity() * 3 / 2, (long) data.position() + length))).order(ByteOrder.nativeOrder());
+        data.flip();
+        grown.put(data);
+        return grown;
+    }
+
+    /**
+     * The granule position of the last ogg page is the number of samples per channel of a vorbis stream.
+     *
+     * @param file the ogg file
+     * @return number of samples per channel or -1 if the file cannot be read or contains no page with a granule position
+     */
+    static long readSampleCount(final FileHandle file) {
+        final long   length = file.length();
+        final int    tail   = (int) Math.min(length, MAX_OGG_PAGE_SIZE);
+        final byte[] bytes  = new byte[tail];
+        try (InputStream in = file.read()) {
+            in.skipNBytes(length - tail);
+            if (in.readNBytes(bytes, 0, tail) != tail)
+                return -1;
+        } catch (final IOException | RuntimeException e) {
+            return -1;
+        }
+        for (int i = tail - OGG_PAGE_HEADER; i >= 0; i--) {
+            if (bytes[i] == 'O' && bytes[i + 1] == 'g' && bytes[i + 2] == 'g' && bytes[i + 3] == 'S') {
+                long granule = 0;
+                for (int b = 7; b >= 0; b--) {
+                    granule = (granule << 8) | (bytes[i + 6 + b] & 0xFF);
+                }
+                if (granule >= 0)//-1 if no packet ends on this page
+                    return granule;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free single producer single consumer ring of pre rendered pcm blocks.
+ * The producer claims a free block, renders into it and publishes it. The consumer peeks at the oldest published block, submits it and releases it.
+ * Blocks are never copied, only ownership moves between the two threads.
+ * Every published block carries a tag, e.g. a generation number, so that the consumer can drop blocks that were rendered for an outdated state.
+ *
+ * @author abdalla bushnaq
+ */
+public class PcmRing {
+    private final ByteBuffer[] blocks;
+    private final int          blockSize;
+    private final AtomicLong   head = new AtomicLong();//next block to consume, only written by the consumer
+    private final AtomicLong   tail = new AtomicLong();//next block to produce, only written by the producer
+    private final int[]        tags;
+
+    /**
+     * @param capacity  number of blocks
+     * @param blockSize size of every block in bytes
+     */
+    public PcmRing(final int capacity, final int blockSize) {
+        this.blockSize = blockSize;
+        blocks         = new ByteBuffer[capacity];
+        tags           = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            blocks[i] = ByteBuffer.allocateDirect(blockSize).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    public int capacity() {
+        return blocks.length;
+    }
+
+    /**
+     * Producer only.
+     *
+     * @return the next free block or null if the ring is full
+     */
+    public ByteBuffer claim() {
+        final long t = tail.get();
+        if (t - head.get() == blocks.length)
+            return null;
+        final ByteBuffer block = blocks[(int) (t % blocks.length)];
+        block.clear();
+        return block;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @return the oldest published block or null if the ring is empty
+     */
+    public ByteBuffer peek() {
+        final long h = head.get();
+        if (h == tail.get())
+            return null;
+        return blocks[(int) (h % blocks.length)];
+    }
+
+    /**
+     * Consumer only, must be called after peek returned a block.
+     *
+     * @return the tag of the oldest published block
+     */
+    public int peekTag() {
+        return tags[(int) (head.get() % blocks.length)];
+    }
+
+    /**
+     * Producer only, hands the block returned by the last claim over to the consumer.
+     *
+     * @param tag tag of the block
+     */
+    public void publish(final int tag) {
+        final long t = tail.get();
+        tags[(int) (t % blocks.length)] = tag;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Consumer only, hands the block returned by the last peek back to the producer.
+     */
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * @return number of published blocks, exact only if called by producer or consumer
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A radio message template like "{name}%s{/name} to {name}%s{/name}{pause} requesting approval to dock." compiled into a list of tokens.
+ * Tokens without format specifiers are literals, the others are slots that are formatted with the arguments when the message is filled.
+ * Filling a template gives the same tokens as formatting the template and tokenizing the result, as long as the arguments do not contain tags themselves.
+ * Templates that use explicit argument indices are not compiled, they are formatted and tokenized every time.
+ *
+ * @author abdalla bushnaq
+ */
+public class RadioMessageTemplate {
+    private static final String[]  END_TAGS       = {"{/name}", "{/pause}"};
+    private static final boolean[] SKIP_START_TAG = {false, true};//text before the start tag of a pause is a token of its own
+    private static final String[]  START_TAGS     = {"{name}", "{pause}"};
+    private final        int[]     argumentCount;//number of arguments consumed by every token, 0 for literals
+    private final        boolean   compiled;
+    private final        String    template;
+    private final        String[]  tokens;
+
+    public RadioMessageTemplate(final String template) {
+        this.template = template;
+        final List<String> list = new ArrayList<>();
+        scan(template, list);
+        tokens        = list.toArray(new String[0]);
+        argumentCount = new int[tokens.length];
+        boolean indexed = false;
+        for (int i = 0; i < tokens.length; i++) {
+            argumentCount[i] = countArguments(tokens[i]);
+            indexed |= tokens[i].indexOf('$') != -1 && argumentCount[i] != 0;
+            if (argumentCount[i] == 0 && tokens[i].indexOf('%') != -1)
+                tokens[i] = String.format(tokens[i]).trim();//literal with escaped percent
+        }
+        compiled = !indexed;
+    }
+
+    /**
+     * @param token part of a template
+     * @return number of arguments the format specifiers of this token consume
+     */
+    private static int countArguments(final String token) {
+        int count = 0;
+        for (int i = token.indexOf('%'); i != -1 && i < token.length() - 1; i = token.indexOf('%', i + 1)) {
+            final char next = token.charAt(i + 1);
+            if (next == '%' || next == 'n') {
+                i++;//escaped percent or line separator do not consume arguments
+            } else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param msg the message
+     * @return the tokens of the message
+     * @see #scan(String, List)
+     */
+    public static List<String> scan(final String msg) {
+        final List<String> tokens = new ArrayList<>();
+        scan(msg, tokens);
+        return tokens;
+    }
+
+    /**
+     * Single pass tokenizer for radio messages.
+     * Text outside of tags, the content of every tag and the text after the last tag are tokens, every token is trimmed.
+     *
+     * @param msg    the message
+     * @param tokens list the tokens are added to
+     */
+    public static void scan(final String msg, final List<String> tokens) {
+        int start = -1;
+        int head  = 0;
+        for (int i = msg.indexOf('{'); i != -1; i = msg.indexOf('{', i + 1)) {
+            for (int t = 0; t < START_TAGS.length; t++) {
+                if (msg.startsWith(START_TAGS[t], i)) {
+                    if (head != i)
+                        tokens.add(msg.substring(head, i).trim());
+                    if (SKIP_START_TAG[t])
+                        head = i + START_TAGS[t].length();
+                    start = i + START_TAGS[t].length();
+                } else if (msg.startsWith(END_TAGS[t], i)) {
+                    tokens.add(msg.substring(start, i).trim());
+                    head = i + END_TAGS[t].length();
+                }
+            }
+        }
+        if (head != msg.length())
+            tokens.add(msg.substring(head).trim());
+    }
+
+    /**
+     * @param args the arguments for the format specifiers of the template
+     * @return the tokens of the message
+     */
+    public List<String> fill(final Object... args) {
+        final List<String> list = new ArrayList<>(tokens.length);
+        fill(list, args);
+        return list;
+    }
+
+    /**
+     * @param list the list the tokens of the message are added to
+     * @param args the arguments for the format specifiers of the template
+     */
+    public void fill(final List<String> list, final Object... args) {
+        if (!compiled) {
+            scan(String.format(template, args), list);
+            return;
+        }
+        int argument = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            final int count = argumentCount[i];
+            if (count == 0) {
+                list.add(tokens[i]);
+            } else if (count == 1 && tokens[i].equals("%s")) {
+                list.add(String.valueOf(args[argument]).trim());
+            } else {
+                final Object[] slice = new Object[count];
+                System.arraycopy(args, argument, slice, 0, count);
+                list.add(String.format(tokens[i], slice).trim());
+            }
+            argument += count;
+        }
+    }
+
+    /**
+     * @return all tokens that do not depend on arguments and are not empty, these are the snippets that can be rendered in advance
+     */
+    public List<String> getLiterals() {
+        final List<String> literals = new ArrayList<>();
+        for (int i = 0; i < tokens.length; i++) {
+            if (argumentCount[i] == 0 && !tokens[i].isEmpty())
+                literals.add(tokens[i]);
+        }
+        return literals;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+}
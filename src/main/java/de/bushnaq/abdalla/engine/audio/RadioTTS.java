@@ -25,38 +25,49 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sound.sampled.AudioFileFormat;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * Main class to manage TTS snippets
+ * Snippets are rendered incrementally, a manifest remembers the hash of text and voice of every rendered snippet and only new or changed snippets are rendered again.
+ * Snippets are rendered in parallel, every worker uses its own voice.
  */
 public class RadioTTS {
-    public static final String                  REQUESTING_APPROVAL_TO_DOCK_01 = "REQUESTING_APPROVAL_TO_DOCK_01";
-    public static final String                  REQUEST_TO_DOCK_APPROVED_01    = "REQUEST_TO_DOCK_APPROVED_01";
-    private final       String                  assetFolderName;
-    private final       AudioEngine             audioEngine;
-    private final       Voice                   helloVoice;
-    private final       Logger                  logger                         = LoggerFactory.getLogger(this.getClass());
-    private final       Map<String, FileHandle> mp3Map                         = new HashMap<>();
-    private final       List<String>            radioMessages                  = new ArrayList<>();
+    private static final long                              CLIP_CACHE_BUDGET              = 16 * 1024 * 1024;//bytes of decoded TTS snippets kept in memory
+    private static final String                            MANIFEST_FILE_NAME             = "radio-manifest.properties";
+    private static final String                            VOICE_NAME                     = "kevin16";
+    public static final  String                            REQUESTING_APPROVAL_TO_DOCK_01 = "REQUESTING_APPROVAL_TO_DOCK_01";
+    public static final  String                            REQUEST_TO_DOCK_APPROVED_01    = "REQUEST_TO_DOCK_APPROVED_01";
+    private final        String                            assetFolderName;
+    private final        AudioEngine                       audioEngine;
+    private final        ClipCache                         clipCache                      = new ClipCache(CLIP_CACHE_BUDGET);
+    private final        Logger                            logger                         = LoggerFactory.getLogger(this.getClass());
+    private final        Map<String, FileHandle>           mp3Map                         = new HashMap<>();
+    private final        Map<String, String>               renderJobs                     = new LinkedHashMap<>();//file name to text of every snippet that needs to exist
+    private final        ExecutorService                   prefetcher;//decodes snippets into the clip cache before they are played
+    private final        Map<String, RadioMessageTemplate> templates                      = new HashMap<>();//compiled radio.properties messages
     Properties radioProperties = new Properties();
     private Set<String> audioFiles;
 
     public RadioTTS(AudioEngine audioEngine, String assetFolderName) throws OpenAlException {
         this.audioEngine     = audioEngine;
         this.assetFolderName = assetFolderName;
+        this.prefetcher      = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RadioTTS-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
 
 
         System.setProperty("freetts.voices", "com.sun.speech.freetts.en.us.cmu_us_kal.KevinVoiceDirectory");
         listAllVoices();
-        VoiceManager voiceManager = VoiceManager.getInstance();
-        helloVoice = voiceManager.getVoice("kevin16");
-        helloVoice.allocate();
 //        loadAudio();
         logger.info("initialized tts");
 
@@ -71,33 +82,73 @@ public class RadioTTS {
     }
 
     public void dispose() {
-        helloVoice.deallocate();
+        prefetcher.shutdownNow();
+        clipCache.clear();
+    }
+
+    /**
+     * Blocks while the snippet is decoded, must not be used by the playback thread.
+     *
+     * @param name the TTS snippet
+     * @return the decoded snippet, only read from disk if it is not in the clip cache. null if there is no such snippet.
+     */
+    public PcmAsset getClip(String name) {
+        FileHandle file = mp3Map.get(name);
+        if (file == null) {
+            logger.warn(String.format("missing TTS snippet %s", name));
+            return null;
+        }
+        return clipCache.get(name, file);
+    }
+
+    /**
+     * Never touches the disk and never waits for the prefetch thread.
+     *
+     * @param name the TTS snippet
+     * @return the decoded snippet or null if it is not in the clip cache yet
+     */
+    public PcmAsset getClipIfPresent(String name) {
+        return clipCache.getIfPresent(name);
+    }
+
+    public ClipCache getClipCache() {
+        return clipCache;
     }
 
     public FileHandle getFileHandle(String name) {
         return mp3Map.get(name);
     }
 
-    private void handleTokenEnd(String token, String value) {
-        logger.info(value);
-        switch (token) {
-            case "name":
-                break;
-            case "pause":
-                break;
-        }
+    private String getWavFileName(String key) {
+        return assetFolderName + "/radio/" + key + ".wav";
     }
 
-    private void handleTokenEnd(String value) {
-        renderTTSString(value.trim(), value);
+    public boolean hasClip(String name) {
+        return mp3Map.containsKey(name);
     }
 
-    private boolean handleTokenStart(String token) {
-        switch (token) {
-            case "pause":
-                return true;
+    /**
+     * @param name the TTS snippet
+     * @return true if the prefetch thread did not finish decoding the snippet yet
+     */
+    public boolean isClipLoading(String name) {
+        return clipCache.isLoading(name);
+    }
+
+    /**
+     * @param text the text to speak
+     * @return hash of text and voice used to detect snippets that need to be rendered again
+     */
+    private String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(VOICE_NAME.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
         }
-        return false;
     }
 
     private String insertPause(String name) {
@@ -122,6 +173,26 @@ public class RadioTTS {
         for (String file : audioFiles) {
             mp3Map.put(removeFileExtension(file), Gdx.files.internal(assetFolderName + "/radio/" + file));
         }
+        //warm up the clip cache, so that the first messages do not need to touch the disk
+        for (Map.Entry<String, FileHandle> entry : mp3Map.entrySet()) {
+            if (clipCache.getSize() + entry.getValue().length() > clipCache.getBudget())
+                break;
+            clipCache.get(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Properties loadManifest() {
+        Properties manifest = new Properties();
+        File       file     = new File(assetFolderName, MANIFEST_FILE_NAME);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                logger.warn(String.format("ignoring unreadable manifest %s", file), e);
+                manifest.clear();
+            }
+        }
+        return manifest;
     }
 
     public void loadResource(Class<?> clazz) {
@@ -129,119 +200,164 @@ public class RadioTTS {
             radioProperties.clear();
             InputStream resourceAsStream = clazz.getResourceAsStream("/radio.properties");
             radioProperties.load(resourceAsStream);
+            templates.clear();
+            for (String key : radioProperties.stringPropertyNames()) {
+                templates.put(key, new RadioMessageTemplate(radioProperties.getProperty(key)));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Decode the snippets into the clip cache on a background thread, missing snippets are ignored.
+     * The snippets are pinned in the clip cache until they are released, so that the playback thread never needs to decode them.
+     *
+     * @param names the TTS snippets that will be played soon
+     */
+    public void prefetch(List<String> names) {
+        for (String name : names) {
+            FileHandle file = mp3Map.get(name);
+            if (file != null) {
+                clipCache.pin(name);
+                clipCache.load(name, file, prefetcher).exceptionally(e -> {
+                    logger.error(e.getMessage(), e);
+                    return null;
+                });
+            }
+        }
+    }
+
+    private void queueTTSString(String key, String value) {
+        renderJobs.put(key, value);
+    }
+
     private String removeFileExtension(String file) {
         return file.substring(0, file.lastIndexOf('.'));
     }
 
     /**
-     * Renders all possible radio messages to wave files.
+     * Queues all possible radio messages to be rendered to wave files.
      */
     private void renderAllResourceStrings() {
-        String[] tags = {"name", "pause"};
-        for (Object key : radioProperties.stringPropertyNames()) {
-            radioMessages.add((String) radioProperties.get(key));
-        }
-
-        for (String msg : radioMessages) {
-            logger.info(msg);
-            int start = -1;
-            int end   = -1;
-            int head  = 0;
-            int i     = 0;
-            for (i = 0; i < msg.length(); i++) {
-                String substring = msg.substring(i);
-                for (String token : tags) {
-                    String st = String.format("{%s}", token);
-                    if (substring.startsWith(st)) {
-                        if (head != i) {
-                            String value = msg.substring(head, i);
-                            handleTokenEnd(value);
-                        }
-                        if (handleTokenStart(token)) {
-                            head = i + st.length();
-                        }
-                        start = i + st.length();
-                    }
-                    String et = String.format("{/%s}", token);
-                    if (substring.startsWith(et)) {
-                        end = i;
-                        String value = msg.substring(start, end);
-                        handleTokenEnd(token, value);
-                        head = i + et.length();
-                    }
-                }
+        for (RadioMessageTemplate template : templates.values()) {
+            for (String literal : template.getLiterals()) {
+                queueTTSString(literal, literal);
             }
-            if (head != msg.length()) {
-                String value = msg.substring(head, i);
-                handleTokenEnd(value);
-            }
-            logger.info("end");
         }
     }
 
-    public void renderAllTTSStrings(List<String> nameList) {
+    /**
+     * Renders all names and radio messages that are new or changed since the last call.
+     *
+     * @param nameList names that can be part of a radio message
+     * @return number of snippets that had to be rendered
+     */
+    public int renderAllTTSStrings(List<String> nameList) {
+        long time = System.currentTimeMillis();
+        renderJobs.clear();
         for (String name : nameList) {
-            renderTTSString(name.trim(), insertPause(name));
+            queueTTSString(name.trim(), insertPause(name));
         }
         renderAllResourceStrings();
+        Properties          manifest = loadManifest();
+        Map<String, String> dirty    = new LinkedHashMap<>();
+        for (Map.Entry<String, String> job : renderJobs.entrySet()) {
+            if (!hash(job.getValue()).equals(manifest.getProperty(job.getKey())) || !new File(getWavFileName(job.getKey())).exists())
+                dirty.put(job.getKey(), job.getValue());
+        }
+        if (!dirty.isEmpty()) {
+            renderParallel(dirty);
+            for (Map.Entry<String, String> job : dirty.entrySet()) {
+                manifest.setProperty(job.getKey(), hash(job.getValue()));
+            }
+            storeManifest(manifest);
+        }
+        logger.info(String.format("rendered %d of %d TTS snippets in %dms", dirty.size(), renderJobs.size(), System.currentTimeMillis() - time));
+        return dirty.size();
+    }
+
+    /**
+     * Render the snippets using one voice per worker thread.
+     *
+     * @param jobs file name to text of the snippets to render
+     */
+    private void renderParallel(Map<String, String> jobs) {
+        int                              workers  = Math.min(Runtime.getRuntime().availableProcessors(), jobs.size());
+        Queue<Map.Entry<String, String>> queue    = new ConcurrentLinkedQueue<>(jobs.entrySet());
+        ExecutorService                  executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>>                  futures  = new ArrayList<>();
+        new File(assetFolderName, "radio").mkdirs();
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> {
+                Voice voice = VoiceManager.getInstance().getVoice(VOICE_NAME);
+                voice.allocate();
+                try {
+                    Map.Entry<String, String> job;
+                    while ((job = queue.poll()) != null) {
+                        renderTTSString(voice, job.getKey(), job.getValue());
+                    }
+                } finally {
+                    voice.deallocate();
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdown();
+        }
     }
 
-    private void renderTTSString(String key, String value) {
+    private void renderTTSString(Voice voice, String key, String value) {
         String                fileName    = assetFolderName + "/radio/" + key;
         SingleFileAudioPlayer audioPlayer = new SingleFileAudioPlayer(fileName, AudioFileFormat.Type.WAVE);
-        helloVoice.setAudioPlayer(audioPlayer);
-        helloVoice.speak(value);
+        voice.setAudioPlayer(audioPlayer);
+        voice.speak(value);
         audioPlayer.close();
         //convert to ogg
 //        wavToOgg(fileName);
     }
 
+    /**
+     * @param name a TTS snippet that was prefetched and is not needed anymore
+     * @see #prefetch(List)
+     */
+    public void release(String name) {
+        clipCache.unpin(name);
+    }
+
     public String resolveString(String stringID) {
         return radioProperties.getProperty(stringID);
     }
 
-    public List<String> tokenize(String msg) {
-        String[]     tags   = {"name", "pause"};
-        List<String> tokens = new ArrayList<>();
-        int          start  = -1;
-        int          end    = -1;
-        int          head   = 0;
-        int          i      = 0;
-        for (i = 0; i < msg.length(); i++) {
-            String substring = msg.substring(i);
-            for (String token : tags) {
-                String st = String.format("{%s}", token);
-                String et = String.format("{/%s}", token);
-                if (substring.startsWith(st)) {
-                    if (head != i) {
-                        String value = msg.substring(head, i);
-                        tokens.add(value.trim());
-//                        handleTokenEnd(value);
-                    }
-                    if (handleTokenStart(token)) {
-                        head = i + st.length();
-                    }
-                    start = i + st.length();
-                } else if (substring.startsWith(et)) {
-                    end = i;
-                    String value = msg.substring(start, end);
-                    tokens.add(value.trim());
-                    handleTokenEnd(token, value);
-                    head = i + et.length();
-                }
-            }
-        }
-        if (head != msg.length()) {
-            String value = msg.substring(head, i);
-            tokens.add(value.trim());
-//                handleTokenEnd(value);
+    private void storeManifest(Properties manifest) {
+        try (OutputStream out = new FileOutputStream(new File(assetFolderName, MANIFEST_FILE_NAME))) {
+            manifest.store(out, "hash of voice and text of every rendered TTS snippet");
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
         }
-        return tokens;
+    }
+
+    /**
+     * @param msg the message
+     * @return the snippets of the message
+     */
+    public List<String> tokenize(String msg) {
+        return RadioMessageTemplate.scan(msg);
+    }
+
+    /**
+     * @param stringID id of the radio message in radio.properties
+     * @param args     the arguments of the message, usually names
+     * @return the snippets of the message
+     */
+    public List<String> tokenize(String stringID, Object... args) {
+        return templates.get(stringID).fill(args);
     }
 
 //    public void speak(String message) {
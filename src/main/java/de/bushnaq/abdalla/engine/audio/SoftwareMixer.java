@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
+
+/**
+ * Mixes many mono audio producers in software into one stereo submix.
+ * The submix is itself an ambient audio producer and is played by a single openal source.
+ * Every producer is attenuated by distance the same way openal does it (inverse distance clamped) and panned with equal power according to the listener orientation.
+ * Producers are mixed on the thread of the openal source that plays the submix.
+ *
+ * @author abdalla bushnaq
+ */
+public class SoftwareMixer extends AbstractAudioProducer {
+    static final  float               MAX_GAIN         = 1f;//same as openal AL_MAX_GAIN default
+    private final float[]             accumulator;//stereo interleaved
+    private final ByteBuffer          inputBuffer;//mono buffer every producer renders into
+    private final Vector3             listenerPosition = new Vector3();
+    private final Vector3             mixPosition      = new Vector3();//listener position used by the mixing thread
+    private final Vector3             mixRight         = new Vector3(1, 0, 0);//listener right vector used by the mixing thread
+    private final List<AudioProducer> producers        = new ArrayList<>();
+    private final Vector3             right            = new Vector3(1, 0, 0);
+    private final int                 samples;
+    private final Vector3             toSource         = new Vector3();
+    private       AudioProducer[]     snapshot         = new AudioProducer[0];
+
+    public SoftwareMixer(final int samples, final int samplerate) {
+        super(samplerate);
+        this.samples = samples;
+        accumulator  = new float[samples * 2];
+        inputBuffer  = ByteBuffer.allocateDirect(samples * 2).order(ByteOrder.nativeOrder());
+        setAmbient(true);//always follows camera, panning is done by us
+    }
+
+    /**
+     * openal inverse distance clamped model using the same parameters as OpenAlSource
+     *
+     * @param distance distance between listener and producer
+     * @return attenuation factor
+     */
+    static float attenuation(final float distance) {
+        final float d = Math.max(distance, OpenAlSource.REFERENCE_DISTANCE);
+        return OpenAlSource.REFERENCE_DISTANCE / (OpenAlSource.REFERENCE_DISTANCE + OpenAlSource.ROLLOFF_FACTOR * (d - OpenAlSource.REFERENCE_DISTANCE));
+    }
+
+    public synchronized boolean add(final AudioProducer producer) {
+        if (!canMix(producer) || producers.contains(producer))
+            return false;
+        producers.add(producer);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Only positional mono producers with our sample rate can be mixed, all others need their own openal source.
+     *
+     * @param producer the producer
+     * @return true if the producer can be mixed by this mixer
+     */
+    public boolean canMix(final AudioProducer producer) {
+        return !producer.isAmbient() && !producer.isRadio() && producer.getChannels() == 1 && producer.getSamplerate() == samplerate;
+    }
+
+    public synchronized boolean contains(final AudioProducer producer) {
+        return producers.contains(producer);
+    }
+
+    @Override
+    public int getChannels() {
+        return 2;
+    }
+
+    @Override
+    public int getOpenAlFormat() {
+        return AL_FORMAT_STEREO16;
+    }
+
+    /**
+     * Renders all producers into the given stereo 16 bit buffer.
+     *
+     * @param byteBuffer the buffer to fill, interleaved stereo
+     * @throws OpenAlException
+     */
+    public void mix(final ByteBuffer byteBuffer) throws OpenAlException {
+        final int             frames = Math.min(byteBuffer.capacity() / 4, samples);
+        final AudioProducer[] list;
+        synchronized (this) {
+            if (snapshot == null)
+                snapshot = producers.toArray(new AudioProducer[0]);
+            list = snapshot;
+            mixPosition.set(listenerPosition);
+            mixRight.set(right);
+        }
+        Arrays.fill(accumulator, 0f);
+        for (final AudioProducer producer : list) {
+            if (!producer.isPlaying())
+                continue;
+            toSource.set(producer.getPosition()).sub(mixPosition);
+            final float  distance  = toSource.len();
+            final float  gain      = Math.min(producer.getGain() * attenuation(distance), MAX_GAIN);
+            final float  pan       = distance > 0 ? toSource.dot(mixRight) / distance : 0f;
+            final double angle     = (pan + 1) * Math.PI / 4;
+            final float  leftGain  = gain * (float) Math.cos(angle);
+            final float  rightGain = gain * (float) Math.sin(angle);
+            inputBuffer.clear();
+            producer.processBuffer(inputBuffer);
+            for (int i = 0; i < frames; i++) {
+                final short value = inputBuffer.getShort(i * 2);
+                accumulator[i * 2] += value * leftGain;
+                accumulator[i * 2 + 1] += value * rightGain;
+            }
+        }
+        for (int i = 0; i < frames * 2; i++) {
+            final float value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, accumulator[i]));
+            byteBuffer.putShort(i * 2, (short) value);
+        }
+    }
+
+    @Override
+    public void processBuffer(final ByteBuffer byteBuffer) throws OpenAlException {
+        mix(byteBuffer);
+    }
+
+    public synchronized boolean remove(final AudioProducer producer) {
+        snapshot = null;
+        return producers.remove(producer);
+    }
+
+    /**
+     * Update the listener, usually the camera.
+     */
+    public synchronized void setListener(final Vector3 position, final Vector3 direction, final Vector3 up) {
+        listenerPosition.set(position);
+        right.set(direction).crs(up).nor();
+    }
+
+    public synchronized int size() {
+        return producers.size();
+    }
+
+}
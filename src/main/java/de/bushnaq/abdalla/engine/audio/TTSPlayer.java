@@ -16,31 +16,32 @@
 
 package de.bushnaq.abdalla.engine.audio;
 
-import com.badlogic.gdx.backends.lwjgl3.audio.Wav;
-import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.utils.StreamUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.lwjgl.openal.AL10.AL_FORMAT_MONO16;
 import static org.lwjgl.openal.AL10.AL_FORMAT_STEREO16;
 
+/**
+ * Plays TTS snippets. Queuing a message only starts decoding its snippets into the RadioTTS clip cache in the background, the game thread never touches the disk.
+ * The playback thread only takes the snippets from the clip cache and plays silence while the background decoding did not reach the next snippet yet.
+ */
 public class TTSPlayer extends AbstractAudioProducer {
-    private final AudioEngine        audioEngine;
-    private final Logger             logger   = LoggerFactory.getLogger(this.getClass());
-    private final List<String>       messages = new ArrayList<>();
-    protected     FileHandle         file;
-    private       int                channels = 1;
-    private       int                format   = AL_FORMAT_MONO16;
+    private final AudioEngine    audioEngine;
+    private final Logger         logger   = LoggerFactory.getLogger(this.getClass());
+    private final Queue<String>  messages = new ConcurrentLinkedQueue<>();//snippets queued by the game thread
+    private       int            channels = 1;
+    private       PcmAsset       clip;//the snippet we are playing
+    private       int            cursor;//next byte of the clip to play
+    private       int            format   = AL_FORMAT_MONO16;
     //    private       float              highGain = 0.0f;
-    private       Wav.WavInputStream input;
     //    private       float              lowGain  = 1.0f;
-    private       boolean            optIn    = false;//by default ttsPlayer is opting out, which means that it is disabled by  the AudioEngine
+    private       boolean        optIn    = false;//by default ttsPlayer is opting out, which means that it is disabled by  the AudioEngine
 //    private       int                sampleRate = 16000;//default for tts
 
     public TTSPlayer(AudioEngine audioEngine) throws OpenAlException {
@@ -52,15 +53,27 @@ public class TTSPlayer extends AbstractAudioProducer {
 //        filters.lowGain  = 0.05f;
     }
 
+    /**
+     * @return true if the next snippet is ready to play, false if there is none or it is still being decoded
+     */
     private boolean bufferNextMessage() {
-        if (messages.isEmpty())
-            return false;
-        String msg = messages.remove(0);
-        logger.info(String.format("TTS: %s", msg));
-        file  = audioEngine.radioTTS.getFileHandle(msg);
-        input = new Wav.WavInputStream(file);
-        setup(input.channels, input.sampleRate);
-        return true;
+        String token;
+        while ((token = messages.peek()) != null) {
+            final PcmAsset next = audioEngine.radioTTS.getClipIfPresent(token);
+            if (next == null && audioEngine.radioTTS.isClipLoading(token))
+                return false;//play silence until the snippet is decoded
+            messages.poll();
+            if (next != null) {
+                clip   = next;
+                cursor = 0;
+                logger.info(String.format("TTS: %s", clip.getName()));
+                setup(clip.getChannels(), clip.getSamplerate());
+                return true;
+            }
+            logger.warn(String.format("TTS: skipping snippet %s that could not be decoded", token));
+            audioEngine.radioTTS.release(token);
+        }
+        return false;
     }
 
     public void enable(final OpenAlSource source) throws OpenAlException {
@@ -92,59 +105,36 @@ public class TTSPlayer extends AbstractAudioProducer {
 
     @Override
     public void processBuffer(final ByteBuffer byteBuffer) {
-        if (input == null) {
-            if (!bufferNextMessage()) {
-                fastZero(byteBuffer);
+        final int capacity = byteBuffer.capacity();
+        int       index    = 0;
+        while (index < capacity) {
+            if (clip == null && !bufferNextMessage()) {
+                //zero the rest
+                for (int i = index; i < capacity; i++) {
+                    byteBuffer.put(i, (byte) 0);
+                }
                 return;
             }
-        }
-        for (int i = 0; i < byteBuffer.capacity() / 2; i += 1) {
-            int byte1;
-            int byte2;
-            try {
-                byte1 = input.read();
-                byte2 = input.read();
-                if (byte2 == -1) {
-                    if (!bufferNextMessage()) {
-                        input = null;
-//                    logger.info("break");
-                        fastZero(byteBuffer);
-                        return;
-                    } else {
-                        byte1 = input.read();
-                        byte2 = input.read();
-                    }
-                }
-//                if (filters.filter != null) {
-//                    int   intValue1   = byte1 + (byte2 << 8);
-//                    float floatValue1 = (float) intValue1 / 32768 - 1f;
-//                    float floatValue2 = filters.filter.process(floatValue1);
-//                    int   intValue2   = (int) ((floatValue2 + 1f) * 32768);
-//                    intValue2 = Math.max(intValue2, 0);
-//                    intValue2 = (int) Math.min((long) intValue2, 256L * 256L);
-//                    int nbyte2 = intValue2 >> 8;
-//                    int nbyte1 = intValue2 & 0xff;
-//                    if (nbyte1 != byte1)
-//                        logger.info(String.format("%d %d", byte1, nbyte1));
-//                    if (nbyte2 != byte2)
-//                        logger.info(String.format("%d %d", byte2, nbyte2));
-//                    logger.info(String.format("%d %d %d %f %f", byte1, byte2, intValue1, floatValue1, floatValue2));
-//                    byteBuffer.put(i * 2, (byte) nbyte1);
-//                    byteBuffer.put(i * 2 + 1, (byte) nbyte2);
-//                } else
-                {
-                    byteBuffer.put(i * 2, (byte) byte1);
-                    byteBuffer.put(i * 2 + 1, (byte) byte2);
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            final int remaining = clip.size() - cursor;
+            if (remaining == 0) {
+                releaseClip();
+                continue;
             }
+            final int length = Math.min(capacity - index, remaining);
+            clip.copy(cursor, byteBuffer, index, length);
+            cursor += length;
+            index += length;
         }
     }
 
+    private void releaseClip() {
+        audioEngine.radioTTS.release(clip.getName());
+        clip = null;
+    }
+
     public void reset() {
-        StreamUtils.closeQuietly(input);
-        input = null;
+        if (clip != null)
+            releaseClip();
     }
 
     public void setOptIn(boolean optIn) {
@@ -157,8 +147,27 @@ public class TTSPlayer extends AbstractAudioProducer {
     }
 
     public void speak(String msg) {
-        List<String> tokens = audioEngine.radioTTS.tokenize(msg);
-        messages.addAll(tokens);
+        queue(audioEngine.radioTTS.tokenize(msg));
+    }
+
+    /**
+     * Speak a radio message using its compiled template.
+     *
+     * @param stringID id of the radio message in radio.properties
+     * @param args     the arguments of the message, usually names
+     */
+    public void speakMessage(String stringID, Object... args) {
+        queue(audioEngine.radioTTS.tokenize(stringID, args));
+    }
+
+    private void queue(List<String> tokens) {
+        audioEngine.radioTTS.prefetch(tokens);
+        for (String token : tokens) {
+            if (audioEngine.radioTTS.hasClip(token))
+                messages.add(token);
+            else
+                logger.warn(String.format("TTS: skipping missing snippet %s", token));
+        }
     }
 
 }
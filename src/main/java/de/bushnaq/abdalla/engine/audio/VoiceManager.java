@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which audio producers get an openal source (a voice).
+ * Producers are ranked by a priority score made of gain, user priority and distance attenuation. Ambient producers are not attenuated and are weighted by ambientWeight.
+ * The best producers are kept using a bounded min heap of the size of the voice budget.
+ * Producers that had a voice in the last selection get their score multiplied by hysteresis, so that voices do not thrash on and off.
+ * A producer that had a voice, is still a candidate and loses its voice is reported as stolen.
+ *
+ * @author abdalla bushnaq
+ */
+public class VoiceManager {
+    private final List<VoiceStealListener> listeners     = new ArrayList<>();
+    private final Set<AudioProducer>       voiced        = new HashSet<>();//producers selected in the last selection
+    private       float                    ambientWeight = 10f;
+    private       int[]                    heap          = new int[0];//min heap of candidate indices ordered by score
+    private       int                      heapSize;
+    private       float                    hysteresis    = 1.25f;
+    private       float[]                  scores        = new float[0];
+    private       boolean[]                selected      = new boolean[0];
+    private       long                     stealCount    = 0;
+
+    public void addListener(final VoiceStealListener listener) {
+        listeners.add(listener);
+    }
+
+    public float getAmbientWeight() {
+        return ambientWeight;
+    }
+
+    public float getHysteresis() {
+        return hysteresis;
+    }
+
+    public long getStealCount() {
+        return stealCount;
+    }
+
+    /**
+     * @param index index of the candidate in the list passed to the last call of select
+     * @return true if the candidate got a voice
+     */
+    public boolean isSelected(final int index) {
+        return selected[index];
+    }
+
+    private boolean less(final int i, final int j) {
+        return scores[heap[i]] < scores[heap[j]];
+    }
+
+    public void removeListener(final VoiceStealListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Calculates the priority score of a producer.
+     *
+     * @param producer         the producer
+     * @param listenerPosition position of the listener
+     * @return the score, higher is more important
+     */
+    public float score(final AudioProducer producer, final Vector3 listenerPosition) {
+        final float weight = producer.isAmbient() ? ambientWeight : SoftwareMixer.attenuation(listenerPosition.dst(producer.getPosition()));
+        return producer.getGain() * producer.getPriority() * weight;
+    }
+
+    /**
+     * Selects the best maxVoices candidates. Query the result with isSelected.
+     *
+     * @param candidates       producers that are allowed to play
+     * @param listenerPosition position of the listener
+     * @param maxVoices        number of voices available
+     * @return number of selected candidates
+     */
+    public int select(final List<AudioProducer> candidates, final Vector3 listenerPosition, final int maxVoices) {
+        final int size = candidates.size();
+        if (scores.length < size) {
+            scores   = new float[size];
+            selected = new boolean[size];
+        }
+        if (heap.length < maxVoices)
+            heap = new int[maxVoices];
+        heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            final AudioProducer producer = candidates.get(i);
+            float               score    = score(producer, listenerPosition);
+            if (voiced.contains(producer))
+                score *= hysteresis;
+            scores[i]   = score;
+            selected[i] = false;
+            if (heapSize < maxVoices) {
+                heap[heapSize++] = i;
+                siftUp(heapSize - 1);
+            } else if (maxVoices > 0 && score > scores[heap[0]]) {
+                heap[0] = i;
+                siftDown(0);
+            }
+        }
+        for (int i = 0; i < heapSize; i++) {
+            selected[heap[i]] = true;
+        }
+        final float threshold = heapSize > 0 ? scores[heap[0]] : Float.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final AudioProducer producer = candidates.get(i);
+            if (!selected[i] && voiced.contains(producer)) {
+                stealCount++;
+                for (final VoiceStealListener listener : listeners) {
+                    listener.voiceStolen(producer, scores[i], threshold);
+                }
+            }
+        }
+        voiced.clear();
+        for (int i = 0; i < heapSize; i++) {
+            voiced.add(candidates.get(heap[i]));
+        }
+        return heapSize;
+    }
+
+    public void setAmbientWeight(final float ambientWeight) {
+        this.ambientWeight = ambientWeight;
+    }
+
+    /**
+     * @param hysteresis factor applied to the score of producers that already have a voice, 1 means no hysteresis
+     */
+    public void setHysteresis(final float hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            final int left     = 2 * i + 1;
+            final int right    = left + 1;
+            int       smallest = i;
+            if (left < heapSize && less(left, smallest))
+                smallest = left;
+            if (right < heapSize && less(right, smallest))
+                smallest = right;
+            if (smallest == i)
+                return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            final int parent = (i - 1) / 2;
+            if (!less(i, parent))
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+
+}
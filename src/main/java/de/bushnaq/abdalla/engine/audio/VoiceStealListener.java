@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+/**
+ * Notified by the VoiceManager whenever a producer loses its voice to producers with a higher score
+ */
+public interface VoiceStealListener {
+    /**
+     * @param producer  the producer that lost its voice
+     * @param score     the score of the producer including hysteresis
+     * @param threshold the lowest score that got a voice
+     */
+    void voiceStolen(AudioProducer producer, float score, float threshold);
+}
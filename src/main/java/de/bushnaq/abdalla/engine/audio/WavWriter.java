@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams pcm data into a growing wav file.
+ * The header is written with the sizes known so far and fixed up periodically, so that a file of a session that did not end properly is still readable.
+ *
+ * @author abdalla bushnaq
+ */
+public class WavWriter implements Closeable {
+    static final  int         HEADER_SIZE = 44;
+    private final int         bits;
+    private final FileChannel channel;
+    private final int         channels;
+    private       long        dataSize    = 0;//bytes of pcm data written
+    private final long        fixupInterval;//bytes of pcm data between two header fixups
+    private final ByteBuffer  header      = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private       long        lastFixup   = 0;
+    private final int         samplerate;
+    private       ByteBuffer  swapBuffer;//used to convert big endian samples
+
+    /**
+     * @param file       the file, an existing file is overwritten
+     * @param samplerate samples per second
+     * @param bits       bits per sample
+     * @param channels   number of channels
+     * @throws IOException
+     */
+    public WavWriter(final File file, final int samplerate, final int bits, final int channels) throws IOException {
+        this.samplerate = samplerate;
+        this.bits       = bits;
+        this.channels   = channels;
+        fixupInterval   = (long) samplerate * channels * bits / 8;//one second
+        channel         = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+        channel.position(HEADER_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeHeader();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return bytes of pcm data written
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Append pcm data.
+     *
+     * @param data samples in native byte order from position to limit, position and limit are not changed
+     * @throws IOException
+     */
+    public void write(final ByteBuffer data) throws IOException {
+        ByteBuffer source = data.duplicate().order(data.order());
+        if (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN && bits == 16) {
+            if (swapBuffer == null || swapBuffer.capacity() < source.remaining())
+                swapBuffer = ByteBuffer.allocateDirect(source.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            swapBuffer.clear();
+            swapBuffer.asShortBuffer().put(source.order(ByteOrder.BIG_ENDIAN).asShortBuffer());
+            swapBuffer.limit(source.remaining() & ~1);
+            source = swapBuffer;
+        }
+        final int size = source.remaining();
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+        dataSize += size;
+        if (dataSize - lastFixup >= fixupInterval)
+            writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        final int  blockAlign = channels * bits / 8;
+        final long size       = Math.min(dataSize, 0xffffffffL - 36);//a wav file cannot describe more data
+        header.clear();
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) (36 + size));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);//size of fmt chunk
+        header.putShort((short) 1);//pcm
+        header.putShort((short) channels);
+        header.putInt(samplerate);
+        header.putInt(samplerate * blockAlign);
+        header.putShort((short) blockAlign);
+        header.putShort((short) bits);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) size);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        lastFixup = dataSize;
+    }
+
+}
@@ -16,14 +16,12 @@
 
 package de.bushnaq.abdalla.engine.audio.synthesis;
 
-import com.scottlogic.util.UnsortedList;
 import de.bushnaq.abdalla.engine.audio.AudioEngine;
 import de.bushnaq.abdalla.engine.audio.OpenAlException;
-
-import java.util.List;
+import de.bushnaq.abdalla.engine.util.SlotMap;
 
 public abstract class AbstractSynthesizerFactory<T> implements SynthesizerFactory<T> {
-    private final List<T> synthsCache = new UnsortedList<>();
+    private final SlotMap<T> synthsCache = new SlotMap<>();//synths that were removed from the audio engine and can be reused
 
     @Override
     public void cacheSynth(final T synth) {
@@ -33,7 +31,7 @@ public abstract class AbstractSynthesizerFactory<T> implements SynthesizerFactor
     @Override
     public T createSynth(AudioEngine audioEngine) throws OpenAlException {
         if (synthsCache.size() != 0) {
-            final T synth = synthsCache.remove(0);
+            final T synth = synthsCache.removeLast();
             return synth;
         } else {
             final T synth = uncacheSynth(audioEngine);
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio.synthesis;
+
+import de.bushnaq.abdalla.engine.audio.Filter;
+
+/**
+ * Block filter engine running cascaded biquad sections for many voices side by side.
+ * <p>
+ * All coefficients and filter states are stored in primitive arrays (structure of arrays), indexed by [section * voices + voice].
+ * The multi voice process method iterates the voices in the innermost loop over contiguous arrays, which is the shape the JIT auto-vectorizes.
+ * Every section is a transposed direct form II biquad with normalized coefficients (a0 == 1).
+ * Unused sections are set to identity and cost one multiply-add.
+ *
+ * @author abdalla bushnaq
+ */
+public class BiquadFilterBank {
+    private final float[] a1;
+    private final float[] a2;
+    private final float[] b0;
+    private final float[] b1;
+    private final float[] b2;
+    private final int[]   activeSections;//number of sections used per voice, the rest are identity
+    private final int     sections;
+    private final int     voices;
+    private final float[] x;//scratch buffer for one frame of all voices
+    private final float[] z1;//filter state
+    private final float[] z2;//filter state
+
+    public BiquadFilterBank(final int voices, final int sections) {
+        this.voices    = voices;
+        this.sections  = sections;
+        a1             = new float[voices * sections];
+        a2             = new float[voices * sections];
+        b0             = new float[voices * sections];
+        b1             = new float[voices * sections];
+        b2             = new float[voices * sections];
+        z1             = new float[voices * sections];
+        z2             = new float[voices * sections];
+        activeSections = new int[voices];
+        x              = new float[voices];
+        for (int voice = 0; voice < voices; voice++) {
+            clear(voice);
+        }
+    }
+
+    /**
+     * Sets all sections of the voice to identity and resets the filter state
+     *
+     * @param voice index of the voice
+     */
+    public void clear(final int voice) {
+        for (int section = 0; section < sections; section++) {
+            setCoefficients(voice, section, 1f, 0f, 0f, 1f, 0f, 0f);
+        }
+        activeSections[voice] = 0;
+        reset(voice);
+    }
+
+    public int getActiveSections(final int voice) {
+        return activeSections[voice];
+    }
+
+    public int getSections() {
+        return sections;
+    }
+
+    public int getVoices() {
+        return voices;
+    }
+
+    /**
+     * Process a block of samples of one voice in place.
+     *
+     * @param voice  index of the voice
+     * @param buffer the samples
+     * @param offset first sample to process
+     * @param length number of samples to process
+     */
+    public void process(final int voice, final float[] buffer, final int offset, final int length) {
+        final int end = offset + length;
+        for (int section = 0; section < activeSections[voice]; section++) {
+            final int   index = section * voices + voice;
+            final float cb0   = b0[index];
+            final float cb1   = b1[index];
+            final float cb2   = b2[index];
+            final float ca1   = a1[index];
+            final float ca2   = a2[index];
+            float       s1    = z1[index];
+            float       s2    = z2[index];
+            for (int i = offset; i < end; i++) {
+                final float in  = buffer[i];
+                final float out = cb0 * in + s1;
+                s1        = cb1 * in - ca1 * out + s2;
+                s2        = cb2 * in - ca2 * out;
+                buffer[i] = out;
+            }
+            z1[index] = s1;
+            z2[index] = s2;
+        }
+    }
+
+    /**
+     * Process a block of samples of all voices in place.
+     * The buffer is interleaved by voice, sample i of voice v is at buffer[i * voices + v].
+     *
+     * @param buffer  the interleaved samples of all voices
+     * @param samples number of samples per voice
+     */
+    public void process(final float[] buffer, final int samples) {
+        for (int i = 0; i < samples; i++) {
+            final int frame = i * voices;
+            System.arraycopy(buffer, frame, x, 0, voices);
+            for (int section = 0; section < sections; section++) {
+                final int base = section * voices;
+                for (int voice = 0; voice < voices; voice++) {
+                    final int   index = base + voice;
+                    final float in    = x[voice];
+                    final float out   = b0[index] * in + z1[index];
+                    z1[index] = b1[index] * in - a1[index] * out + z2[index];
+                    z2[index] = b2[index] * in - a2[index] * out;
+                    x[voice]  = out;
+                }
+            }
+            System.arraycopy(x, 0, buffer, frame, voices);
+        }
+    }
+
+    /**
+     * Resets the filter state of the voice, keeps the coefficients.
+     *
+     * @param voice index of the voice
+     */
+    public void reset(final int voice) {
+        for (int section = 0; section < sections; section++) {
+            z1[section * voices + voice] = 0f;
+            z2[section * voices + voice] = 0f;
+        }
+    }
+
+    /**
+     * Configures the voice as a low shelf bass boost, same coefficients as {@link BassBoost} without the clipping.
+     *
+     * @param voice      index of the voice
+     * @param frequency  shelf frequency in Hz
+     * @param dbBoost    gain in dB
+     * @param sampleRate sample rate in Hz
+     */
+    public void setBassBoost(final int voice, final float frequency, final float dbBoost, final int sampleRate) {
+        clear(voice);
+        final double omega = 2 * Math.PI * frequency / sampleRate;
+        final double sn    = Math.sin(omega);
+        final double cs    = Math.cos(omega);
+        final double a     = Math.exp(Math.log(10.0) * dbBoost / 40);
+        final double shape = 1.0;
+        final double beta  = Math.sqrt((a * a + 1) / shape - (Math.pow((a - 1), 2)));
+        setCoefficients(voice, 0,//
+                a * ((a + 1) - (a - 1) * cs + beta * sn),//
+                2 * a * ((a - 1) - (a + 1) * cs),//
+                a * ((a + 1) - (a - 1) * cs - beta * sn),//
+                ((a + 1) + (a - 1) * cs + beta * sn),//
+                -2 * ((a - 1) + (a + 1) * cs),//
+                (a + 1) + (a - 1) * cs - beta * sn);
+        activeSections[voice] = 1;
+    }
+
+    /**
+     * Configures the voice as a Butterworth filter of the given order, split into second order sections.
+     * Odd orders use one first order section for the real pole, the pole pairs of the other sections sit at multiples of PI / order.
+     *
+     * @param voice      index of the voice
+     * @param passType   Highpass or Lowpass
+     * @param order      filter order, at most 2 * sections
+     * @param frequency  cutoff frequency in Hz
+     * @param sampleRate sample rate in Hz
+     */
+    public void setButterworth(final int voice, final Filter.PassType passType, final int order, final float frequency, final int sampleRate) {
+        if (passType != Filter.PassType.Highpass && passType != Filter.PassType.Lowpass) {
+            throw new IllegalArgumentException("Unsupported pass type " + passType);
+        }
+        if (order < 1 || (order + 1) / 2 > sections) {
+            throw new IllegalArgumentException(String.format("Order %d does not fit into %d sections", order, sections));
+        }
+        clear(voice);
+        final boolean highpass = passType == Filter.PassType.Highpass;
+        final double  w0       = 2 * Math.PI * frequency / sampleRate;
+        final double  cs       = Math.cos(w0);
+        final double  sn       = Math.sin(w0);
+        int           section  = 0;
+        for (int k = 1; k <= order / 2; k++) {
+            final double q     = order % 2 == 1 ? 1 / (2 * Math.cos(Math.PI * k / order)) : 1 / (2 * Math.cos(Math.PI * (2 * k - 1) / (2 * order)));
+            final double alpha = sn / (2 * q);
+            if (highpass) {
+                setCoefficients(voice, section++, (1 + cs) / 2, -(1 + cs), (1 + cs) / 2, 1 + alpha, -2 * cs, 1 - alpha);
+            } else {
+                setCoefficients(voice, section++, (1 - cs) / 2, 1 - cs, (1 - cs) / 2, 1 + alpha, -2 * cs, 1 - alpha);
+            }
+        }
+        if (order % 2 == 1) {
+            final double k = Math.tan(w0 / 2);
+            if (highpass) {
+                setCoefficients(voice, section++, 1, -1, 0, 1 + k, k - 1, 0);
+            } else {
+                setCoefficients(voice, section++, k, k, 0, 1 + k, k - 1, 0);
+            }
+        }
+        activeSections[voice] = section;
+    }
+
+    /**
+     * Sets the coefficients of one biquad section, the coefficients are normalized by a0.
+     */
+    public void setCoefficients(final int voice, final int section, final double b0, final double b1, final double b2, final double a0, final double a1, final double a2) {
+        final int index = section * voices + voice;
+        this.b0[index] = (float) (b0 / a0);
+        this.b1[index] = (float) (b1 / a0);
+        this.b2[index] = (float) (b2 / a0);
+        this.a1[index] = (float) (a1 / a0);
+        this.a2[index] = (float) (a2 / a0);
+        activeSections[voice] = Math.max(activeSections[voice], section + 1);
+    }
+
+}
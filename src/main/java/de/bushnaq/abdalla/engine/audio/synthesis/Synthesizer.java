@@ -18,7 +18,6 @@ package de.bushnaq.abdalla.engine.audio.synthesis;
 
 import de.bushnaq.abdalla.engine.audio.*;
 import org.lwjgl.openal.AL10;
-import org.lwjgl.system.libc.LibCStdlib;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -26,11 +25,12 @@ import java.util.List;
 
 public class Synthesizer extends AbstractAudioProducer {
 
-    private final List<Lfo>       lfos          = new ArrayList<>();
-    private final List<Oscilator> oscillators   = new ArrayList<>();
+    private static final int             BITS          = 16;
+    private final        List<Lfo>       lfos          = new ArrayList<>();
+    private final        List<Oscilator> oscillators   = new ArrayList<>();
     //	private boolean play = false;//is the source playing?
     //	private final Vector3 position = new Vector3();//position of the audio source
-    volatile      double          lastFrequency = 0.0;
+    volatile             double          lastFrequency = 0.0;
     long lastIndex;
     //	private boolean enabled = false;//a disabled synth does not possess an audio source and any of the source attached resource like filters and buffers
     //	private float gain = 1.0f;
@@ -128,26 +128,31 @@ public class Synthesizer extends AbstractAudioProducer {
         double              f1                  = -1;
         double              f2                  = 0.0;
         ByteBufferContainer byteBufferContainer = null;
-        if (isKeepCopy()) {
-            byteBufferContainer            = new ByteBufferContainer();
-            byteBufferContainer.byteBuffer = LibCStdlib.malloc(source.getBuffersize());
-            source.getByteBufferCopyList().add(byteBufferContainer);
+        final boolean       keepCopy            = isEnabled() && isKeepCopy();//a software mixed synth has no source
+        final int           channels            = getChannels();
+        final int           frameSize           = channels * BITS / 8;
+        final int           samples             = byteBuffer.remaining() / frameSize;
+        final int           position            = byteBuffer.position();
+        if (keepCopy) {
+            byteBufferContainer = source.getKeepCopyRing().next();
         }
-        for (int sampleIndex = 0, bufferIndex = 0; sampleIndex < source.getSamples(); sampleIndex++, bufferIndex += 2) {
-            final Short value = process(lastIndex + sampleIndex);
+        for (int sampleIndex = 0, bufferIndex = 0; sampleIndex < samples; sampleIndex++, bufferIndex += frameSize) {
+            final short value = process(lastIndex + sampleIndex);
             f2 = lastFrequency;
             if (f1 == -1)
                 f1 = f2;
-            byteBuffer.putShort(bufferIndex, value);
-            if (isKeepCopy()) {
-                byteBufferContainer.byteBuffer.putShort(bufferIndex, value);
+            for (int channel = 0; channel < channels; channel++) {
+                byteBuffer.putShort(position + bufferIndex + channel * BITS / 8, value);
+                if (keepCopy) {
+                    byteBufferContainer.byteBuffer.putShort(bufferIndex + channel * BITS / 8, value);
+                }
             }
         }
-        if (isKeepCopy()) {
+        if (keepCopy) {
             byteBufferContainer.startFrequency = f1;
             byteBufferContainer.endFrequency   = f2;
         }
-        lastIndex += source.getSamples();
+        lastIndex += samples;
     }
 
     //	/**
@@ -17,7 +17,6 @@
 package de.bushnaq.abdalla.engine;
 
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.Cubemap.CubemapSide;
 import com.badlogic.gdx.graphics.Pixmap.Format;
@@ -32,18 +31,18 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BufferUtils;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.ScreenUtils;
-import net.mgsx.gltf.scene3d.utils.EnvironmentUtil;
-import net.mgsx.gltf.scene3d.utils.FacedMultiCubemapData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.zip.Deflater;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Quick procedural IBL environment generation.
@@ -55,6 +54,8 @@ import java.util.zip.Deflater;
  * and
  * https://learnopengl.com/PBR/IBL/Diffuse-irradiance
  * and related tools to generate them from HDRIs.
+ * <p>
+ * Every generated map is cached in one {@link IblCubemapData} file in the output directory. The file name contains a hash of all parameters the map depends on, so changed parameters generate a new map.
  *
  * @author mgsx
  */
@@ -70,12 +71,12 @@ public class myIBLBuilder implements Disposable {
     private final        ShaderProgram sunShader;
     public               boolean       renderGradient  = true;
     public               boolean       renderSun       = true;
-    String              folder;
-    File                folderFile;
-    Map<String, String> sideNameMap = new HashMap<>();
     private ShapeRenderer shapes;
     private ShapeRenderer sunShapes;
 
+    /**
+     * @param outputDirectory directory of the cache files, null to generate the maps every time.
+     */
     public myIBLBuilder(String outputDirectory) {
         this.outputDirectory = outputDirectory;
         shapes               = new ShapeRenderer(20);
@@ -88,12 +89,6 @@ public class myIBLBuilder implements Disposable {
 
         sunShapes = new ShapeRenderer(20, sunShader);
         sunShapes.getProjectionMatrix().setToOrtho2D(0, 0, 1, 1);
-        sideNameMap.put("PositiveX", "posx");
-        sideNameMap.put("NegativeX", "negx");
-        sideNameMap.put("PositiveY", "posy");
-        sideNameMap.put("NegativeY", "negy");
-        sideNameMap.put("PositiveZ", "posz");
-        sideNameMap.put("NegativeZ", "negz");
     }
 
     private static void renderName(int size, CustomizedSpriteBatch batch, BitmapFont font, CubemapSide side) {
@@ -116,36 +111,7 @@ public class myIBLBuilder implements Disposable {
      * @return generated cubemap, caller is responsible to dispose it when no longer used.
      */
     public Cubemap buildEnvMap(int size, CustomizedSpriteBatch batch, BitmapFont font) {
-        folder     = outputDirectory + "environment/";
-        folderFile = new File(folder);
-        if (folderFile.exists()) {
-            logger.info("Loading IBL env map.");
-            Cubemap map = EnvironmentUtil.createCubemap(new InternalFileHandleResolver(), folder + "/environment_", "_0.png", EnvironmentUtil.FACE_NAMES_NEG_POS);
-            return map;
-        } else {
-            logger.info("Generating IBL env map.");
-            FrameBufferCubemap fbo = new FrameBufferCubemap(Format.RGBA8888, size, size, false) {
-                @Override
-                protected void disposeColorTexture(Cubemap colorTexture) {
-                }
-            };
-            fbo.begin();
-            while (fbo.nextSide()) {
-                Gdx.gl.glClearColor(0, 0, 0, 0);
-                Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
-                CubemapSide side = fbo.getSide();
-                renderGradient(side, 0);
-                renderLights(side, false);
-//                renderName(size, batch, font, side);
-                String fileName = String.format(folder + "environment_%s_0.png", sideNameMap.get(side.name()));
-                PixmapIO.writePNG(Gdx.files.local(fileName), ScreenUtils.getFrameBufferPixmap(0, 0, size, size), Deflater.DEFAULT_COMPRESSION, false);
-            }
-            fbo.end();
-
-            Cubemap map = fbo.getColorBufferTexture();
-            fbo.dispose();
-            return map;
-        }
+        return buildMap("environment", size, 0);
     }
 
     /**
@@ -157,35 +123,42 @@ public class myIBLBuilder implements Disposable {
      * @return generated cubemap, caller is responsible to dispose it when no longer used.
      */
     public Cubemap buildIrradianceMap(int size, CustomizedSpriteBatch batch, BitmapFont font) {
-        folder     = outputDirectory + "irradiance/";
-        folderFile = new File(folder);
-        if (folderFile.exists()) {
-            logger.info("Loading IBL irradiance map.");
-            Cubemap map = EnvironmentUtil.createCubemap(new InternalFileHandleResolver(), folder + "/irradiance_", "_0.png", EnvironmentUtil.FACE_NAMES_NEG_POS);
-            return map;
-        } else {
-            logger.info("Generating IBL irradiance map.");
-            FrameBufferCubemap fbo = new FrameBufferCubemap(Format.RGBA8888, size, size, false) {
-                @Override
-                protected void disposeColorTexture(Cubemap colorTexture) {
-                }
-            };
-            fbo.begin();
-            while (fbo.nextSide()) {
-                Gdx.gl.glClearColor(0, 0, 0, 0);
-                Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
-                CubemapSide side = fbo.getSide();
-                renderGradient(side, 0.5f);
-                renderLights(side, false);
-//                renderName(size, batch, font, side);
-                String fileName = String.format(folder + "irradiance_%s_0.png", sideNameMap.get(side.name()));
-                PixmapIO.writePNG(Gdx.files.local(fileName), ScreenUtils.getFrameBufferPixmap(0, 0, size, size), Deflater.DEFAULT_COMPRESSION, false);
+        return buildMap("irradiance", size, 0.5f);
+    }
+
+    private Cubemap buildMap(final String name, final int size, final float blur) {
+        final long    key    = cacheKey(name, size, 1);
+        final File    file   = getCacheFile(name, key);
+        final Cubemap cached = loadCubemap(file, key, name);
+        if (cached != null) {
+            return cached;
+        }
+        logger.info("Generating IBL " + name + " map.");
+        final ByteBuffer pixels = file == null ? null : BufferUtils.newByteBuffer(IblCubemapData.byteSize(size, 1));
+        FrameBufferCubemap fbo = new FrameBufferCubemap(Format.RGBA8888, size, size, false) {
+            @Override
+            protected void disposeColorTexture(Cubemap colorTexture) {
             }
-            fbo.end();
-            Cubemap map = fbo.getColorBufferTexture();
-            fbo.dispose();
-            return map;
+        };
+        fbo.begin();
+        while (fbo.nextSide()) {
+            Gdx.gl.glClearColor(0, 0, 0, 0);
+            Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+            CubemapSide side = fbo.getSide();
+            renderGradient(side, blur);
+            renderLights(side, false);
+//            renderName(size, batch, font, side);
+            if (pixels != null) {
+                readPixels(pixels, size, 0, side);
+            }
+        }
+        fbo.end();
+        Cubemap map = fbo.getColorBufferTexture();
+        fbo.dispose();
+        if (pixels != null) {
+            writeCache(new IblCubemapData(pixels, size, 1), file, key);
         }
+        return map;
     }
 
     /**
@@ -198,42 +171,65 @@ public class myIBLBuilder implements Disposable {
      * @return generated cubemap, caller is responsible to dispose it when no longer used.
      */
     public Cubemap buildRadianceMap(final int mipMapLevels, CustomizedSpriteBatch batch, BitmapFont font) {
-        folder     = outputDirectory + "radiance/";
-        folderFile = new File(folder);
-        if (folderFile.exists()) {
-            logger.info("Loading IBL radiance map.");
-            Cubemap map = EnvironmentUtil.createCubemap(new InternalFileHandleResolver(), folder + "/radiance_", "_", "." + "png", mipMapLevels, EnvironmentUtil.FACE_NAMES_NEG_POS);
-            return map;
-        } else {
-            logger.info("Generating IBL radiance map.");
-            Pixmap[] maps  = new Pixmap[mipMapLevels * 6];
-            int      index = 0;
-            for (int level = 0; level < mipMapLevels; level++) {
-                int         size = 1 << (mipMapLevels - level - 1);
-                FrameBuffer fbo  = new FrameBuffer(Format.RGBA8888, size, size, false);
-                fbo.begin();
-                for (int s = 0; s < 6; s++) {
-                    Gdx.gl.glClearColor(0, 0, 0, 0);
-                    Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
-                    CubemapSide side = CubemapSide.values()[s];
-                    float       blur = (float) level / (float) mipMapLevels;
-                    renderGradient(side, blur);
-                    renderLights(side, false);
-                    maps[index] = ScreenUtils.getFrameBufferPixmap(0, 0, size, size);
-//                    renderName(size, batch, font, side);
-                    String fileName = String.format(folder + "radiance_%s_%d.png", sideNameMap.get(side.name()), level);
-                    PixmapIO.writePNG(Gdx.files.local(fileName), maps[index], Deflater.DEFAULT_COMPRESSION, false);
-
-                    index++;
-                }
-                fbo.end();
-                fbo.dispose();
+        final int     baseSize = 1 << (mipMapLevels - 1);
+        final long    key      = cacheKey("radiance", baseSize, mipMapLevels);
+        final File    file     = getCacheFile("radiance", key);
+        final Cubemap cached   = loadCubemap(file, key, "radiance");
+        if (cached != null) {
+            return cached;
+        }
+        logger.info("Generating IBL radiance map.");
+        final ByteBuffer pixels = BufferUtils.newByteBuffer(IblCubemapData.byteSize(baseSize, mipMapLevels));
+        for (int level = 0; level < mipMapLevels; level++) {
+            int         size = 1 << (mipMapLevels - level - 1);
+            FrameBuffer fbo  = new FrameBuffer(Format.RGBA8888, size, size, false);
+            fbo.begin();
+            for (int s = 0; s < 6; s++) {
+                Gdx.gl.glClearColor(0, 0, 0, 0);
+                Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+                CubemapSide side = CubemapSide.values()[s];
+                float       blur = (float) level / (float) mipMapLevels;
+                renderGradient(side, blur);
+                renderLights(side, false);
+                readPixels(pixels, baseSize, level, side);
+//                renderName(size, batch, font, side);
             }
-            FacedMultiCubemapData data = new FacedMultiCubemapData(maps, mipMapLevels);
-            Cubemap               map  = new Cubemap(data);
+            fbo.end();
+            fbo.dispose();
+        }
+        final IblCubemapData data = new IblCubemapData(pixels, baseSize, mipMapLevels);
+        if (file != null) {
+            writeCache(data, file, key);
+        }
+        return createCubemap(data);
+    }
+
+    /**
+     * Hash of everything the pixels of a map depend on.
+     */
+    private long cacheKey(final String name, final int size, final int levels) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(name).append(';').append(size).append(';').append(levels).append(';').append(renderGradient);
+        sb.append(';').append(nearSkyColor).append(';').append(farSkyColor).append(';').append(nearGroundColor).append(';').append(farGroundColor);
+        for (final Light light : lights) {
+            sb.append(';').append(light.direction).append(';').append(light.color).append(';').append(light.exponent);
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Cubemap createCubemap(final IblCubemapData data) {
+        final Cubemap map = new Cubemap(data);
+        if (data.getLevels() > 1) {
             map.setFilter(TextureFilter.MipMap, TextureFilter.Linear);
-            return map;
+        } else {
+            map.setFilter(TextureFilter.Linear, TextureFilter.Linear);
         }
+        return map;
     }
 
     @Override
@@ -243,6 +239,40 @@ public class myIBLBuilder implements Disposable {
         shapes.dispose();
     }
 
+    // one file per map and key, null if there is no output directory..
+    private File getCacheFile(final String name, final long key) {
+        if (outputDirectory == null) {
+            return null;
+        }
+        return new File(outputDirectory + String.format("%s-%016x.ibl", name, key));
+    }
+
+    private Cubemap loadCubemap(final File file, final long key, final String name) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            final IblCubemapData data = IblCubemapData.load(file, key);
+            if (data != null) {
+                logger.info("Loading IBL " + name + " map.");
+                return createCubemap(data);
+            }
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // reads the current frame buffer into the face of the given level..
+    private static void readPixels(final ByteBuffer pixels, final int baseSize, final int level, final CubemapSide side) {
+        final int        size   = Math.max(1, baseSize >> level);
+        final int        offset = IblCubemapData.offset(baseSize, level, side.index);
+        final ByteBuffer face   = pixels.duplicate();
+        face.position(offset).limit(offset + size * size * 4);
+        Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
+        Gdx.gl.glReadPixels(0, 0, size, size, GL20.GL_RGBA, GL20.GL_UNSIGNED_BYTE, face.slice());
+    }
+
     private void renderGradient(Cubemap.CubemapSide side, float blur) {
         if (this.renderGradient) {
             Color aveSky     = this.farSkyColor.cpy().lerp(this.nearSkyColor, 0.5F);
@@ -286,6 +316,14 @@ public class myIBLBuilder implements Disposable {
         Gdx.gl.glBlendFunc(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
     }
 
+    private void writeCache(final IblCubemapData data, final File file, final long key) {
+        try {
+            data.write(file, key);
+        } catch (final IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
     public static class Light {
 
         private static final Vector3 localDir    = new Vector3();
@@ -21,20 +21,53 @@ import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.PixmapIO;
 import com.badlogic.gdx.graphics.g2d.PixmapPacker;
-import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.tools.texturepacker.TexturePacker;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.NameFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.imageio.ImageIO;
 import java.io.File;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
+/**
+ * Packs the images of the input folders and the generated font images into one texture atlas.
+ * <p>
+ * The content of every input is hashed and written into a manifest next to the atlas. The atlas is only packed again if the manifest changed, touching a file does not trigger packing. The images are packed
+ * directly from the input folders, only the generated font images are kept in the aggregated input folder.
+ * <p>
+ * Sub folders are packed too, their region names are prefixed with the path relative to the input folder, like {@link TexturePacker#process(String, String, String)} does. A pack.json at the top of an
+ * input folder is applied to the whole atlas, a later folder overrides the settings of an earlier one. Settings for a single sub folder are not supported, a pack.json in a sub folder fails the generation.
+ */
 public class AtlasGenerator {
+    private static final String     MANIFEST_EXTENSION    = ".manifest";
+    private static final int        MAX_HEIGHT            = 4096;
     private static final int        MAX_ITERATIONS        = 64;
+    private static final int        MAX_WIDTH             = 4096;
+    private static final int        PADDING               = 1;
+    private static final String     SETTINGS_FILE_NAME    = "pack.json";
     protected final      Logger     logger                = LoggerFactory.getLogger(this.getClass());
     private              String     aggregatedInputFolder = "app/assets/raw/";
     private              FontData[] fontData;
@@ -46,137 +79,323 @@ public class AtlasGenerator {
         return 64 * i;
     }
 
-    private boolean foundMissingImage(TextureAtlas atlas, File srcDir) {
-        Collection<File> files = FileUtils.listFiles(srcDir, new String[]{"png"}, false);
-        for (File file : files) {
-            String fileName = file.getName();
-            if (fileName.endsWith(".9.png")) fileName = fileName.substring(0, fileName.indexOf(".9.png")) + ".png";
-            TextureAtlas.AtlasRegion atlasRegion = atlas.findRegion(removeFileExtension(fileName));
-            if (atlasRegion == null) {
-                return true;
+    /**
+     * Collects the images of all input folders and their sub folders by region name, an image in a later folder replaces an image with the same name in an earlier folder.
+     */
+    private SortedMap<String, File> collectImages() {
+        final SortedMap<String, File> images = new TreeMap<>();
+        for (final File folder : inputFolders) {
+            for (final File file : FileUtils.listFiles(folder, new String[]{"png", "jpg"}, true)) {
+                images.put(toRegionName(toImageName(folder, file)), file);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Collects the pack.json files at the top of the input folders in the order they are applied.
+     *
+     * @throws Exception if a sub folder contains a pack.json
+     */
+    private List<File> collectSettingsFiles() throws Exception {
+        final List<File> settingsFiles = new ArrayList<>();
+        for (final File folder : inputFolders) {
+            for (final File file : FileUtils.listFiles(folder, new NameFileFilter(SETTINGS_FILE_NAME), TrueFileFilter.INSTANCE)) {
+                if (!file.getParentFile().equals(folder))
+                    throw new Exception(String.format("Settings of sub folders are not supported, move %s to %s.", file.getPath(), new File(folder, SETTINGS_FILE_NAME).getPath()));
+                settingsFiles.add(file);
             }
         }
-        return false;
+        return settingsFiles;
     }
 
-    private void generateAtlas(File atlasFile, String atlasAtlasFileName, String generationReason) throws Exception {
+    /**
+     * One line per input, the images are hashed in parallel.
+     */
+    private List<String> createManifest(final List<File> settingsFiles, final SortedMap<String, File> images) throws IOException {
+        final List<String> manifest = new ArrayList<>();
+        manifest.add(String.format("settings\t%d\t%d", MAX_WIDTH, MAX_HEIGHT));
+        for (final File file : settingsFiles) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                manifest.add(String.format("settings\t%s\t%s", hash(in), file.getPath()));
+            }
+        }
+        for (final FontData fontData : fontData) {
+            try (InputStream in = Gdx.files.internal(fontData.file).read()) {
+                manifest.add(fontLine(fontData, hash(in)));
+            }
+        }
+        try {
+            manifest.addAll(images.entrySet().parallelStream().map(entry -> {
+                try (InputStream in = Files.newInputStream(entry.getValue().toPath())) {
+                    return String.format("image\t%s\t%s\t%s", entry.getKey(), hash(in), entry.getValue().getPath());
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList()));
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return manifest;
+    }
+
+    // a font that is not part of the previous manifest, or was changed, is generated again..
+    private void deleteChangedFonts(final List<String> previousManifest, final List<String> manifest) {
+        for (final FontData fontData : fontData) {
+            final String prefix = "font\t" + fontData.name + "\t";
+            for (final String line : manifest) {
+                if (line.startsWith(prefix) && !previousManifest.contains(line)) {
+                    final File fontFile = new File(aggregatedInputFolder + "/" + fontData.name + ".png");
+                    if (fontFile.delete()) {
+                        logger.info("Font '" + fontData.name + "' changed.");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Smallest page size index that could hold all glyphs, from their area and their biggest side.
+     */
+    private int estimatePageSizeIndex(final Array<Pixmap> glyphs) {
+        long area    = 0;
+        int  maxSide = 0;
+        for (final Pixmap glyph : glyphs) {
+            area += (long) (glyph.getWidth() + PADDING) * (glyph.getHeight() + PADDING);
+            maxSide = Math.max(maxSide, Math.max(glyph.getWidth(), glyph.getHeight()) + PADDING);
+        }
+        final double side = Math.max(Math.sqrt(area), maxSide);
+        return Math.min(Math.max(1, (int) Math.ceil(side / calculatePageSize(1))), MAX_ITERATIONS - 1);
+    }
+
+    /**
+     * Page size that roughly holds all default characters of the font, a glyph is about as high and at most as wide as the font size.
+     */
+    private int estimateRecorderPageSize(final FontData fontData) {
+        final int    columns = (int) Math.ceil(Math.sqrt(FreeTypeFontGenerator.DEFAULT_CHARS.length()));
+        final double side    = (double) columns * (fontData.fontSize + PADDING);
+        return calculatePageSize(Math.min(Math.max(1, (int) Math.ceil(side / calculatePageSize(1))), MAX_ITERATIONS - 1));
+    }
+
+    private static String fontLine(final FontData fontData, final String hash) {
+        return String.format("font\t%s\t%d\t%s\t%s", fontData.name, fontData.fontSize, hash, fontData.file);
+    }
+
+    private void generateAtlas(File atlasFile, String atlasAtlasFileName, String generationReason, List<File> settingsFiles, SortedMap<String, File> images) throws Exception {
         File aggregatedInputFolderFile = new File(aggregatedInputFolder);
         logger.info("----------------------------------------------------------------------------------");
         logger.info(generationReason);
         if (!aggregatedInputFolderFile.exists())
-            aggregatedInputFolderFile.mkdir();
-        else
-            FileUtils.cleanDirectory(aggregatedInputFolderFile);
+            aggregatedInputFolderFile.mkdirs();
         atlasFile.delete();
         (new File(atlasAtlasFileName)).delete();
         generateFonts();
-        for (File f : inputFolders) {
-            FileUtils.copyDirectory(f, aggregatedInputFolderFile);
-        }
         TexturePacker.Settings settings = new TexturePacker.Settings();
-        settings.maxWidth  = 4096;
-        settings.maxHeight = 4096;
-        TexturePacker.process(settings, aggregatedInputFolder, outputFolder, packFileName);
+        settings.maxWidth  = MAX_WIDTH;
+        settings.maxHeight = MAX_HEIGHT;
+        for (final File file : settingsFiles) {
+            new Json().readFields(settings, new JsonReader().parse(new FileHandle(file)));
+        }
+        final TexturePacker packer = new TexturePacker(settings);
+        for (final FontData fontData : fontData) {
+            if (!images.containsKey(fontData.name)) {
+                packer.addImage(new File(aggregatedInputFolder + "/" + fontData.name + ".png"));
+            }
+        }
+        for (final Map.Entry<String, File> entry : images.entrySet()) {
+            //the packer takes the region name from the image name, a nine patch keeps its .9
+            final String imageName = entry.getValue().getName().endsWith(".9.png") ? entry.getKey() + ".9" : entry.getKey();
+            packer.addImage(ImageIO.read(entry.getValue()), imageName);
+        }
+        packer.pack(new File(outputFolder), packFileName);
         logger.info("----------------------------------------------------------------------------------");
     }
 
+    /**
+     * Rasterizes the glyphs of the font once and searches the smallest page size that holds them in one page. The glyphs are packed in the same order and with the same packer settings as
+     * {@link FreeTypeFontGenerator#generateData(FreeTypeFontGenerator.FreeTypeFontParameter)} does, so the page matches the layout a packer of that size produces when the font is loaded.
+     * <p>
+     * The binary search assumes that glyphs that fit into a page also fit into every bigger page. The packer does not guarantee that, so the size found can be bigger than the smallest size a linear scan
+     * would find, it is never smaller than a size the glyphs fit into.
+     */
+    private void generateFont(final FontData fontData) throws Exception {
+        final Array<Pixmap> glyphs = rasterizeGlyphs(fontData);
+        try {
+            int          low    = estimatePageSizeIndex(glyphs);
+            int          high   = MAX_ITERATIONS - 1;
+            PixmapPacker packer = null;//packer of the smallest page size found so far, holds page size high
+            while (low < high) {
+                final int          middle    = (low + high) >>> 1;
+                final PixmapPacker candidate = packGlyphs(glyphs, calculatePageSize(middle));
+                if (candidate == null) {
+                    low = middle + 1;
+                } else {
+                    if (packer != null)
+                        packer.dispose();
+                    packer = candidate;
+                    high   = middle;
+                }
+            }
+            if (packer == null) {
+                //every smaller size failed, the biggest size was never tried
+                packer = packGlyphs(glyphs, calculatePageSize(high));
+                if (packer == null)
+                    throw new Exception(String.format("Page size of %d too small for font: %s", calculatePageSize(MAX_ITERATIONS), fontData.name));
+            }
+            try {
+                logger.info("Generating font '" + fontData.name + ".png' with page size " + calculatePageSize(high) + ".");
+                final FileHandle fh = new FileHandle(aggregatedInputFolder + "/" + fontData.name + ".png");
+                PixmapIO.writePNG(fh, packer.getPages().get(0).getPixmap());
+            } finally {
+                packer.dispose();
+            }
+        } finally {
+            for (final Pixmap glyph : glyphs) {
+                glyph.dispose();
+            }
+        }
+    }
+
+    /**
+     * Generates the missing font images, the fonts are generated in parallel.
+     */
     private void generateFonts() throws Exception {
+        final List<FontData> missingFonts = new ArrayList<>();
         for (final FontData fontData : fontData) {
-            File fontFile = new File(aggregatedInputFolder + "/" + fontData.name + ".png");
-            if (!fontFile.exists()) {
+            if (!new File(aggregatedInputFolder + "/" + fontData.name + ".png").exists()) {
                 //font was never generated
-                int i = 1;
-                int pageSize;
-                for (; i < MAX_ITERATIONS; i++) {
-                    pageSize = calculatePageSize(i);
-                    try {
-
-                        final PixmapPacker packer = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, 1, false);
-                        {
-                            final FreeTypeFontGenerator                       generator = new FreeTypeFontGenerator(Gdx.files.internal(fontData.file));
-                            final FreeTypeFontGenerator.FreeTypeFontParameter parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
-                            parameter.size   = (fontData.fontSize);
-                            parameter.packer = packer;
-                            generator.generateData(parameter);
-                            generator.dispose(); // don't forget to dispose to avoid memory leaks!
-                        }
-                        final Array<PixmapPacker.Page> pages = packer.getPages();
-                        if (pages.size == 1) {
-                            final PixmapPacker.Page p      = pages.get(0);
-                            final Pixmap            pixmap = p.getPixmap();
-                            logger.info("Generating font '" + fontData.name + ".png'.");
-                            final FileHandle fh = new FileHandle(aggregatedInputFolder + "/" + fontData.name + ".png");
-                            PixmapIO.writePNG(fh, pixmap);
-                            pixmap.dispose();
-                            break;
-                        }
-                    } catch (final GdxRuntimeException e) {
-                        if (e.getMessage().equals("Page size too small for pixmap.")) {
-                            //ignore
-                        } else {
-                            throw e;
-                        }
-                    }
-                }
-                if (i == MAX_ITERATIONS)
-                    throw new Exception(String.format("Page size of %d too small for font: %s", calculatePageSize(MAX_ITERATIONS), fontData.name));
+                missingFonts.add(fontData);
             }
         }
+        try {
+            missingFonts.parallelStream().forEach(fontData -> {
+                try {
+                    generateFont(fontData);
+                } catch (final Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
     }
 
     public void generateIfNeeded() throws Exception {
-        String atlasAtlasFileName = outputFolder + packFileName + ".atlas";
-        String atlasImageFileName = outputFolder + packFileName + ".png";
-        File   atlasFile          = new File(atlasImageFileName);
-        if (!atlasFile.exists()) {
+        String                        atlasAtlasFileName = outputFolder + packFileName + ".atlas";
+        String                        atlasImageFileName = outputFolder + packFileName + ".png";
+        File                          atlasFile          = new File(atlasImageFileName);
+        File                          manifestFile       = new File(outputFolder + packFileName + MANIFEST_EXTENSION);
+        final List<File>              settingsFiles      = collectSettingsFiles();
+        final SortedMap<String, File> images             = collectImages();
+        final List<String>            manifest           = createManifest(settingsFiles, images);
+        final List<String>            previousManifest   = manifestFile.exists() ? Files.readAllLines(manifestFile.toPath()) : Collections.emptyList();
+        String                        generationReason   = null;
+        if (!atlasFile.exists() || !new File(atlasAtlasFileName).exists()) {
             //atlas does not exist
-            generateAtlas(atlasFile, atlasAtlasFileName, "Atlas missing, generating atlas.");
-            return;
-        }
-        {
+            generationReason = "Atlas missing, generating atlas.";
+        } else if (!manifest.equals(previousManifest)) {
+            //at least one input was added, removed or changed
+            generationReason = "Content of at least one input changed, generating atlas.";
+        } else {
             for (final FontData fontData : fontData) {
                 File fontFile = new File(aggregatedInputFolder + "/" + fontData.name + ".png");
                 if (!fontFile.exists()) {
-                    generateAtlas(atlasFile, atlasAtlasFileName, "At least one font file is missing, generating atlas.");
-                    return;
+                    generationReason = "At least one font file is missing, generating atlas.";
+                    break;
                 }
             }
         }
-        {
-            long lastAtlasGeneration = atlasFile.lastModified();
-            for (File f : inputFolders) {
-                long lastPngGeneration = getNewestFile(f);
-                if (lastAtlasGeneration < lastPngGeneration) {
-                    //there is at least on png file newer than the atlas
-                    generateAtlas(atlasFile, atlasAtlasFileName, "At least one png file is newer than atlas, generating atlas.");
-                    return;
-                }
+        if (generationReason != null) {
+            deleteChangedFonts(previousManifest, manifest);
+            generateAtlas(atlasFile, atlasAtlasFileName, generationReason, settingsFiles, images);
+            Files.write(manifestFile.toPath(), manifest);
+        }
+    }
+
+    private static String hash(final InputStream in) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[]        buffer = new byte[65536];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
             }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
-        {
-            TextureAtlas atlas = new TextureAtlas(Gdx.files.internal(atlasAtlasFileName));
-            try {
-                for (File f : inputFolders) {
-                    if (foundMissingImage(atlas, f)) {
-                        //there is at least one file missing in the current atlas
-                        generateAtlas(atlasFile, atlasAtlasFileName, "At least one png file not found in atlas, generating atlas.");
-                        return;
-                    }
+    }
 
-                }
-            } finally {
-                atlas.dispose();
+    /**
+     * Packs the glyphs into a page of the given size.
+     *
+     * @return the packer or null if the glyphs do not fit into one page.
+     */
+    private PixmapPacker packGlyphs(final Array<Pixmap> glyphs, final int pageSize) {
+        final PixmapPacker packer = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, PADDING, false);
+        try {
+            for (final Pixmap glyph : glyphs) {
+                packer.pack(glyph);
+            }
+        } catch (final GdxRuntimeException e) {
+            packer.dispose();
+            if (e.getMessage().equals("Page size too small for pixmap.")) {
+                return null;
+            }
+            throw e;
+        }
+        if (packer.getPages().size != 1) {
+            packer.dispose();
+            return null;
+        }
+        return packer;
+    }
+
+    /**
+     * Lets the font generator pack all glyphs and keeps a copy of every glyph in the order they were packed.
+     * The recorder starts with the page size estimated from the font size and adds pages of that size while packing, the page size is only doubled if a single glyph does not fit.
+     */
+    private Array<Pixmap> rasterizeGlyphs(final FontData fontData) {
+        final int maxPageSize = calculatePageSize(MAX_ITERATIONS - 1);
+        for (int pageSize = estimateRecorderPageSize(fontData); ; pageSize = Math.min(pageSize * 2, maxPageSize)) {
+            try {
+                return rasterizeGlyphs(fontData, pageSize);
+            } catch (final GdxRuntimeException e) {
+                if (pageSize == maxPageSize || !"Page size too small for pixmap.".equals(e.getMessage()))
+                    throw e;
             }
         }
     }
 
-    private long getNewestFile(File srcDir) {
-        long             lastPngGeneration = 0;
-        Collection<File> files             = FileUtils.listFiles(srcDir, null, false);
-        for (File file : files) {
-            lastPngGeneration = Math.max(lastPngGeneration, file.lastModified());
+    private Array<Pixmap> rasterizeGlyphs(final FontData fontData, final int pageSize) {
+        final Array<Pixmap> glyphs   = new Array<>();
+        final PixmapPacker  recorder = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, PADDING, false) {
+            @Override
+            public synchronized Rectangle pack(final String name, final Pixmap image) {
+                final Pixmap glyph = new Pixmap(image.getWidth(), image.getHeight(), image.getFormat());
+                glyph.setBlending(Pixmap.Blending.None);
+                glyph.drawPixmap(image, 0, 0);
+                glyphs.add(glyph);
+                return super.pack(name, image);
+            }
+        };
+        final FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal(fontData.file));
+        try {
+            final FreeTypeFontGenerator.FreeTypeFontParameter parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
+            parameter.size   = (fontData.fontSize);
+            parameter.packer = recorder;
+            generator.generateData(parameter);
+        } catch (final RuntimeException e) {
+            for (final Pixmap glyph : glyphs) {
+                glyph.dispose();
+            }
+            throw e;
+        } finally {
+            generator.dispose(); // don't forget to dispose to avoid memory leaks!
+            recorder.dispose();
         }
-        return lastPngGeneration;
+        return glyphs;
     }
 
     private String removeFileExtension(String name) {
@@ -198,4 +417,16 @@ public class AtlasGenerator {
     public void setPackFileName(String packFileName) {
         this.packFileName = packFileName;
     }
+
+    /**
+     * @return the path of the file relative to the folder with / as separator
+     */
+    private static String toImageName(final File folder, final File file) {
+        return folder.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private String toRegionName(String fileName) {
+        if (fileName.endsWith(".9.png")) fileName = fileName.substring(0, fileName.indexOf(".9.png")) + ".png";
+        return removeFileExtension(fileName);
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool of daemon worker threads that accepts at most capacity tasks at a time, counting the running and the queued ones.
+ * A producer that is faster than the workers is blocked in {@link #submit(Runnable)} until a task finished, instead of queueing unbounded work and memory.
+ *
+ * @author abdalla bushnaq
+ */
+public class BoundedExecutor implements Closeable {
+    private final int             capacity;
+    private final ExecutorService executor;
+    private final AtomicInteger   failed  = new AtomicInteger();
+    private final Logger          logger  = LoggerFactory.getLogger(this.getClass());
+    private final Semaphore       permits;
+    private final AtomicInteger   threads = new AtomicInteger();
+
+    /**
+     * @param name     prefix of the worker thread names
+     * @param threads  number of worker threads
+     * @param capacity maximum number of running and queued tasks, at least threads
+     */
+    public BoundedExecutor(final String name, final int threads, final int capacity) {
+        this.capacity = Math.max(threads, capacity);
+        permits       = new Semaphore(this.capacity);
+        executor      = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + this.threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Waits until all submitted tasks are done and stops the workers.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.info(String.format("waiting for %d tasks", getPending()));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Runnable guard(final Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (final RuntimeException e) {
+                failed.incrementAndGet();
+                logger.error(e.getMessage(), e);
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of tasks that threw an exception
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of running and queued tasks
+     */
+    public int getPending() {
+        return capacity - permits.availablePermits();
+    }
+
+    /**
+     * Submits the task, blocks while the executor is full.
+     *
+     * @param task the task
+     * @throws InterruptedException if interrupted while waiting, the task is not submitted
+     */
+    public void submit(final Runnable task) throws InterruptedException {
+        permits.acquire();
+        executor.execute(guard(task));
+    }
+
+    /**
+     * Submits the task only if the executor is not full.
+     *
+     * @param task the task
+     * @return false if the executor is full and the task was not submitted
+     */
+    public boolean trySubmit(final Runnable task) {
+        if (!permits.tryAcquire())
+            return false;
+        executor.execute(guard(task));
+        return true;
+    }
+
+}
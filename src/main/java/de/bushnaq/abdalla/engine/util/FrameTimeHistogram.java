@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, like a HdrHistogram.
+ * <p>
+ * Values below {@link #SUB_BUCKET_COUNT} get a bucket each, above that every power of two range is split into {@link #SUB_BUCKET_COUNT}/2 buckets, so a bucket is never wider than 1/128 of its values. Values
+ * up to {@link #HIGHEST_VALUE} (about 18 minutes) are tracked, larger values are counted in the last bucket. Minimum, maximum and sum are exact.
+ * <p>
+ * Recording does not allocate. This implementation is not synchronised.
+ *
+ * @author abdalla bushnaq
+ */
+public class FrameTimeHistogram {
+    public static final  long   HIGHEST_VALUE    = (1L << 40) - 1;
+    private static final int    SUB_BUCKET_BITS  = 8;
+    public static final  int    SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int    SUB_BUCKET_HALF  = SUB_BUCKET_COUNT / 2;
+    private final        long[] counts           = new long[indexOf(HIGHEST_VALUE) + 1];
+    private              long   hitchCount       = 0;
+    private final        long   hitchThreshold;
+    private              long   max              = 0;
+    private              long   min              = Long.MAX_VALUE;
+    private              long   sum              = 0;
+    private              long   totalCount       = 0;
+
+    /**
+     * @param hitchThreshold values above this threshold in nanoseconds are counted as hitches.
+     */
+    public FrameTimeHistogram(final long hitchThreshold) {
+        this.hitchThreshold = hitchThreshold;
+    }
+
+    // highest value that falls into the bucket with the given index..
+    private static long highestValueOf(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF - 1;
+        final int sub   = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((long) (sub + 1) << shift) - 1;
+    }
+
+    private static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Adds all values recorded by the other histogram to this histogram.
+     *
+     * @param other histogram with the same hitch threshold.
+     */
+    public void add(final FrameTimeHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        hitchCount += other.hitchCount;
+        max = Math.max(max, other.max);
+        min = Math.min(min, other.min);
+        sum += other.sum;
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * @param value duration in nanoseconds.
+     * @return number of recorded values that are bigger than the given value, accurate to the bucket width.
+     */
+    public long getCountAbove(final long value) {
+        long count = 0;
+        for (int i = indexOf(Math.min(Math.max(value, 0), HIGHEST_VALUE)) + 1; i < counts.length; i++) {
+            count += counts[i];
+        }
+        return count;
+    }
+
+    /**
+     * @return number of recorded values above the hitch threshold.
+     */
+    public long getHitchCount() {
+        return hitchCount;
+    }
+
+    public long getHitchThreshold() {
+        return hitchThreshold;
+    }
+
+    /**
+     * @return biggest recorded value in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return average of all recorded values in nanoseconds or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @return smallest recorded value in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the value that the given percentage of all recorded values are smaller or equal to. The result is the highest value of the bucket, but never bigger than the maximum.
+     *
+     * @param percentile percentile between 0 and 100, e.g. 99 for the p99 frame time.
+     * @return the value at the given percentile in nanoseconds or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * totalCount));
+        long       count  = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= target) {
+                return i == counts.length - 1 ? max : Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param value duration in nanoseconds, negative values are counted as 0.
+     */
+    public void record(final long value) {
+        final long v = Math.max(value, 0);
+        counts[indexOf(Math.min(v, HIGHEST_VALUE))]++;
+        if (v > hitchThreshold) {
+            hitchCount++;
+        }
+        if (v > max) {
+            max = v;
+        }
+        if (v < min) {
+            min = v;
+        }
+        sum += v;
+        totalCount++;
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        hitchCount = 0;
+        max        = 0;
+        min        = Long.MAX_VALUE;
+        sum        = 0;
+        totalCount = 0;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Appends the statistics of rolling windows of durations to a csv file, one line per window.
+ * <p>
+ * Every line holds the end of the window in milliseconds since the epoch, the number of values, mean, p50, p95, p99 and max in milliseconds and the number of hitches. Nothing is allocated until a window is
+ * written.
+ *
+ * @author abdalla bushnaq
+ */
+public class FrameTimeLog implements Closeable {
+    private static final String             HEADER = "time,count,mean,p50,p95,p99,max,hitches";
+    private final        Logger             logger = LoggerFactory.getLogger(this.getClass());
+    private final        FrameTimeHistogram window;
+    private final        long               windowNanos;
+    private              long               windowStart;
+    private              BufferedWriter     writer;
+
+    /**
+     * @param file           the csv file, an existing file is appended to.
+     * @param windowNanos    length of a window in nanoseconds.
+     * @param hitchThreshold values above this threshold in nanoseconds are counted as hitches.
+     * @throws IOException
+     */
+    public FrameTimeLog(final Path file, final long windowNanos, final long hitchThreshold) throws IOException {
+        this.windowNanos = windowNanos;
+        window           = new FrameTimeHistogram(hitchThreshold);
+        final boolean exists = Files.exists(file) && Files.size(file) != 0;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!exists) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.flush();
+        }
+        windowStart = System.nanoTime();
+    }
+
+    private static String toMs(final double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1000000);
+    }
+
+    /**
+     * Writes the current window, if it is not empty, and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            try {
+                if (window.getTotalCount() != 0) {
+                    write();
+                }
+            } finally {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Records one value and writes the window to the file once it is complete. A failing write is logged and ends the log.
+     *
+     * @param value duration in nanoseconds.
+     */
+    public void record(final long value) {
+        if (writer == null) {
+            return;
+        }
+        window.record(value);
+        final long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            try {
+                write();
+            } catch (final IOException e) {
+                logger.error(e.getMessage(), e);
+                try {
+                    writer.close();
+                } catch (final IOException ignored) {
+                    // the first error was reported already
+                }
+                writer = null;
+            }
+            windowStart = now;
+        }
+    }
+
+    private void write() throws IOException {
+        writer.write(System.currentTimeMillis() + "," + window.getTotalCount() + "," + toMs(window.getMean()) + "," + toMs(window.getValueAtPercentile(50)) + "," + toMs(window.getValueAtPercentile(95)) + "," + toMs(window.getValueAtPercentile(99)) + "," + toMs(window.getMax()) + "," + window.getHitchCount());
+        writer.newLine();
+        writer.flush();
+        window.reset();
+    }
+
+}
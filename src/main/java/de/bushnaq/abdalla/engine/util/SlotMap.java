@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import java.util.*;
+
+/**
+ * Unordered collection that keeps its elements in one dense array.
+ * <p>
+ * add returns a handle that stays valid until the element is removed, removing by handle takes <i>O(1)</i> time by moving the last element into the gap.
+ * Iteration walks the dense array, the order changes whenever an element is removed.
+ * A handle consists of a slot and the generation of the slot, so a handle of a removed element never resolves to an element that was added later.
+ * <p>
+ * This implementation is not synchronised. The iterators are <i>fail-fast</i>.
+ *
+ * @param <T> the type of the elements
+ * @author abdalla bushnaq
+ */
+public class SlotMap<T> extends AbstractCollection<T> {
+    public static final  long     INVALID_HANDLE   = -1L;
+    private static final int      DEFAULT_CAPACITY = 16;
+    private              int      freeSlot         = -1;//head of the list of free slots, linked through slotIndex
+    private              int      modCount         = 0;
+    private              int      size             = 0;
+    private              int      slotCount        = 0;//slots ever used
+    private              int[]    slotGeneration;//incremented whenever the element of the slot is removed
+    private              int[]    slotIndex;//index of the element in the dense array, or the next free slot
+    private              int[]    valueSlot;//slot of every element in the dense array
+    private              Object[] values;//the dense array
+
+    public SlotMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of elements the map can hold before it grows
+     */
+    public SlotMap(final int capacity) {
+        final int c = Math.max(1, capacity);
+        values         = new Object[c];
+        valueSlot      = new int[c];
+        slotIndex      = new int[c];
+        slotGeneration = new int[c];
+    }
+
+    private static long handle(final int slot, final int generation) {
+        return ((long) generation << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Adds the element, use {@link #addElement(Object)} to get its handle.
+     *
+     * @return <code>true</code>
+     */
+    @Override
+    public boolean add(final T value) {
+        addElement(value);
+        return true;
+    }
+
+    /**
+     * Adds the element in <i>O(1)</i> amortized time.
+     *
+     * @return the handle of the element
+     */
+    public long addElement(final T value) {
+        final int slot;
+        if (freeSlot != -1) {
+            slot     = freeSlot;
+            freeSlot = slotIndex[slot];
+        } else {
+            if (slotCount == slotIndex.length) {
+                slotIndex      = Arrays.copyOf(slotIndex, slotCount * 2);
+                slotGeneration = Arrays.copyOf(slotGeneration, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        if (size == values.length) {
+            values    = Arrays.copyOf(values, size * 2);
+            valueSlot = Arrays.copyOf(valueSlot, size * 2);
+        }
+        values[size]    = value;
+        valueSlot[size] = slot;
+        slotIndex[slot] = size;
+        size++;
+        modCount++;
+        return handle(slot, slotGeneration[slot]);
+    }
+
+    @Override
+    public void clear() {
+        while (size > 0) {
+            removeAt(size - 1);
+        }
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return indexOf(o) != -1;
+    }
+
+    /**
+     * @param handle a handle returned by {@link #addElement(Object)}
+     * @return true if the element of the handle was not removed yet
+     */
+    public boolean containsHandle(final long handle) {
+        return indexOfHandle(handle) != -1;
+    }
+
+    /**
+     * @param index index in the dense array, 0 to size - 1
+     * @return the element
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int index) {
+        Objects.checkIndex(index, size);
+        return (T) values[index];
+    }
+
+    /**
+     * @param index index in the dense array, 0 to size - 1
+     * @return the handle of the element at index
+     */
+    public long getHandle(final int index) {
+        Objects.checkIndex(index, size);
+        final int slot = valueSlot[index];
+        return handle(slot, slotGeneration[slot]);
+    }
+
+    private int indexOf(final Object o) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(o, values[i]))
+                return i;
+        }
+        return -1;
+    }
+
+    private int indexOfHandle(final long handle) {
+        final int slot = (int) handle;
+        if (slot < 0 || slot >= slotCount || slotGeneration[slot] != (int) (handle >>> 32))
+            return -1;
+        return slotIndex[slot];
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int cursor           = 0;
+            private int expectedModCount = modCount;
+            private int last             = -1;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                if (cursor >= size)
+                    throw new NoSuchElementException();
+                last = cursor++;
+                return (T) values[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last == -1)
+                    throw new IllegalStateException();
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                removeAt(last);
+                cursor           = last;//the last element moved into the gap and still needs to be visited
+                last             = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * Removes the first occurrence of the element, takes <i>O(n)</i> time to find it, use {@link #removeHandle(long)} if the handle is known.
+     */
+    @Override
+    public boolean remove(final Object o) {
+        final int index = indexOf(o);
+        if (index == -1)
+            return false;
+        removeAt(index);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeAt(final int index) {
+        final T   value = (T) values[index];
+        final int slot  = valueSlot[index];
+        final int last  = --size;
+        if (index != last) {
+            values[index]               = values[last];
+            valueSlot[index]            = valueSlot[last];
+            slotIndex[valueSlot[index]] = index;
+        }
+        values[last] = null;
+        slotGeneration[slot]++;
+        slotIndex[slot] = freeSlot;
+        freeSlot        = slot;
+        modCount++;
+        return value;
+    }
+
+    /**
+     * Removes the element in <i>O(1)</i> time.
+     *
+     * @param handle a handle returned by {@link #addElement(Object)}
+     * @return the removed element or null if the handle is not valid anymore
+     */
+    public T removeHandle(final long handle) {
+        final int index = indexOfHandle(handle);
+        if (index == -1)
+            return null;
+        return removeAt(index);
+    }
+
+    /**
+     * Removes the element that is last in the dense array in <i>O(1)</i> time.
+     *
+     * @return the removed element
+     * @throws NoSuchElementException if the map is empty
+     */
+    public T removeLast() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        return removeAt(size - 1);
+    }
+
+    /**
+     * @param handle a handle returned by {@link #addElement(Object)}
+     * @return the element or null if the handle is not valid anymore
+     */
+    @SuppressWarnings("unchecked")
+    public T resolve(final long handle) {
+        final int index = indexOfHandle(handle);
+        return index == -1 ? null : (T) values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
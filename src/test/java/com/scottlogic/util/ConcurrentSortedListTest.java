@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ConcurrentSortedListTest {
+    private static final int    ELEMENTS   = 1000;
+    private static final int    OPERATIONS = 20000;
+    private static final int    READERS    = 3;
+    private static final int    WRITERS    = 2;
+    private final        Logger logger     = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Runs reader threads doing get/rank against writer threads that add and remove, the readers do 20 reads for every write.
+     */
+    private long contend(final Reads reads, final Writes writes) throws InterruptedException {
+        final List<Thread>               threads = new ArrayList<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long                       time1   = System.nanoTime();
+        for (int t = 0; t < READERS + WRITERS; t++) {
+            final boolean writer = t < WRITERS;
+            final int     seed   = t;
+            final Thread  thread = new Thread(() -> {
+                try {
+                    final Random random = new Random(seed);
+                    long         sum    = 0;
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        if (writer) {
+                            if (i % 20 == 0) {
+                                writes.write(random.nextInt(ELEMENTS));
+                            }
+                        } else {
+                            sum += reads.read(random.nextInt(ELEMENTS));
+                        }
+                        if (i % 1000 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    if (sum == Long.MIN_VALUE) {
+                        logger.info("unlikely");//keep the reads alive
+                    }
+                } catch (final Throwable e) {
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(failure.get(), is(nullValue()));
+        return System.nanoTime() - time1;
+    }
+
+    /**
+     * Mixed read/write contention, compared with a NaturalSortedList guarded by a single monitor.
+     */
+    @Test
+    public void contentionTest() throws InterruptedException {
+        final ConcurrentSortedList<Integer> list = new ConcurrentSortedList<>(Comparator.naturalOrder());
+        final NaturalSortedList<Integer>    tree = new NaturalSortedList<>();
+        for (int i = 0; i < ELEMENTS; i++) {
+            list.add(i);
+            tree.add(i);
+        }
+        long listTime = 0;
+        long treeTime = 0;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            listTime = contend(value -> {
+                final List<Integer> snapshot = list.snapshot();//size and get must see the same elements
+                return snapshot.get(value % snapshot.size()) + list.rank(value);
+            }, value -> {
+                if (list.remove(Integer.valueOf(value))) {
+                    list.add(value);
+                }
+            });
+            treeTime = contend(value -> {
+                synchronized (tree) {
+                    return tree.get(value % tree.size()) + tree.rank(value);
+                }
+            }, value -> {
+                synchronized (tree) {
+                    if (tree.remove(Integer.valueOf(value))) {
+                        tree.add(value);
+                    }
+                }
+            });
+        }
+        logger.info(String.format("%d readers %d writers ConcurrentSortedList %dms synchronized NaturalSortedList %dms", READERS, WRITERS, listTime / 1000000, treeTime / 1000000));
+        assertThat(list.size(), is(ELEMENTS));
+        assertThat(list, is(tree));
+        assertThat(listTime / 1000000, lessThan(10000L));
+    }
+
+    @Test
+    public void listTest() {
+        final Random                        random    = new Random(0);
+        final ConcurrentSortedList<Integer> list      = new ConcurrentSortedList<>(Comparator.naturalOrder());
+        final List<Integer>                 reference = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            final int operation = random.nextInt(10);
+            if (operation < 6 || reference.isEmpty()) {
+                final int value = random.nextInt(200);
+                list.add(value);
+                reference.add(value);
+            } else if (operation < 8) {
+                final int index = random.nextInt(reference.size());
+                assertThat(list.remove(index), is(reference.remove(index)));
+            } else if (operation < 9) {
+                final Integer value = random.nextInt(200);
+                assertThat(list.remove(value), is(reference.remove(value)));
+            } else {
+                final List<Integer> added = new ArrayList<>();
+                for (int a = random.nextInt(20); a > 0; a--) {
+                    added.add(random.nextInt(200));
+                }
+                list.addAll(added);
+                reference.addAll(added);
+            }
+            Collections.sort(reference);
+            assertThat(list, is(reference));
+            final int value = random.nextInt(200);
+            assertThat(list.rank(value), is(reference.contains(value) ? reference.indexOf(value) : -Collections.binarySearch(reference, value) - 1));
+            assertThat(list.contains(value), is(reference.contains(value)));
+        }
+        final List<Integer> snapshot = list.snapshot();
+        list.clear();
+        assertThat(list.isEmpty(), is(true));
+        assertThat(snapshot, is(reference));
+        assertThat(list.add(null), is(false));
+    }
+
+    /**
+     * Every writer adds and removes its own values while the readers check that every snapshot they see is sorted and consistent with get and rank.
+     */
+    @Test
+    public void stressTest() throws InterruptedException {
+        final ConcurrentSortedList<Integer> list    = new ConcurrentSortedList<>(Comparator.naturalOrder());
+        final AtomicBoolean                 running = new AtomicBoolean(true);
+        final AtomicReference<Throwable>    failure = new AtomicReference<>();
+        final List<Thread>                  writers = new ArrayList<>();
+        final List<Thread>                  readers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(new Thread(() -> {
+                try {
+                    final Random        random = new Random(writer);
+                    final List<Integer> mine   = new ArrayList<>();
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        if (mine.isEmpty() || random.nextInt(3) != 0) {
+                            final Integer value = random.nextInt(ELEMENTS) * WRITERS + writer;//values of one writer never equal the values of another
+                            list.add(value);
+                            mine.add(value);
+                        } else {
+                            final Integer value = mine.remove(random.nextInt(mine.size()));
+                            if (!list.remove(value)) {
+                                throw new IllegalStateException("lost " + value);
+                            }
+                        }
+                        if (i % 500 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                    for (final Integer value : mine) {
+                        if (!list.contains(value)) {
+                            throw new IllegalStateException("missing " + value);
+                        }
+                    }
+                } catch (final Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            readers.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        final List<Integer> snapshot = list.snapshot();
+                        for (int i = 1; i < snapshot.size(); i++) {
+                            if (snapshot.get(i - 1) > snapshot.get(i)) {
+                                throw new IllegalStateException("unsorted snapshot");
+                            }
+                        }
+                        int previous = Integer.MIN_VALUE;
+                        for (final Integer value : list) {
+                            if (value < previous) {
+                                throw new IllegalStateException("unsorted iteration");
+                            }
+                            previous = value;
+                        }
+                        if (!snapshot.isEmpty()) {
+                            final Integer value = snapshot.get(snapshot.size() / 2);
+                            if (list.rank(value) < 0 || Collections.binarySearch(snapshot, value) < 0) {
+                                throw new IllegalStateException("rank out of range");
+                            }
+                        }
+                        Thread.yield();
+                    }
+                } catch (final Throwable e) {
+                    failure.set(e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writers.forEach(Thread::start);
+        for (final Thread thread : writers) {
+            thread.join();
+        }
+        running.set(false);
+        for (final Thread thread : readers) {
+            thread.join();
+        }
+        assertThat(failure.get(), is(nullValue()));
+        for (int i = 1; i < list.size(); i++) {
+            assertThat(list.get(i - 1) <= list.get(i), is(true));
+        }
+        logger.info(String.format("%d elements left after %d operations", list.size(), WRITERS * OPERATIONS));
+    }
+
+    private interface Reads {
+        int read(int value);
+    }
+
+    private interface Writes {
+        void write(int value);
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PrimitiveSortedListTest {
+    private static final int    ELEMENTS = 1000000;
+    private static final int    QUERIES  = 1000000;
+    private final        Logger logger   = LoggerFactory.getLogger(this.getClass());
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Compare memory per element and rank/select latency with the AVL based NaturalSortedList.
+     */
+    @Test
+    public void benchmarkTest() {
+        final Random    random  = new Random(0);
+        final int[]     sorted  = new int[ELEMENTS];
+        final Integer[] boxed   = new Integer[ELEMENTS];
+        final int[]     queries = new int[QUERIES];
+        for (int i = 0; i < ELEMENTS; i++) {
+            sorted[i] = random.nextInt();
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < ELEMENTS; i++) {
+            boxed[i] = sorted[i];
+        }
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = random.nextInt(ELEMENTS);
+        }
+
+        final long                       memory1   = usedMemory();
+        final IntSortedList              list      = new IntSortedList(sorted);
+        final long                       memory2   = usedMemory();
+        final NaturalSortedList<Integer> tree      = new NaturalSortedList<>(boxed);
+        final long                       memory3   = usedMemory();
+        final float                      listBytes = (float) (memory2 - memory1) / ELEMENTS;
+        final float                      treeBytes = (float) (memory3 - memory2) / ELEMENTS;//boxed values are already allocated
+        logger.info(String.format("memory per element IntSortedList %.1f bytes, NaturalSortedList %.1f bytes", listBytes, treeBytes));
+
+        long listSelect = 0;
+        long treeSelect = 0;
+        long listRank   = 0;
+        long treeRank   = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long       sum1  = 0;
+            long       sum2  = 0;
+            final long time1 = System.nanoTime();
+            for (final int index : queries) {
+                sum1 += list.get(index);
+            }
+            final long time2 = System.nanoTime();
+            for (final int index : queries) {
+                sum2 += tree.get(index);
+            }
+            final long time3 = System.nanoTime();
+            for (final int index : queries) {
+                sum1 += list.rank(sorted[index]);
+            }
+            final long time4 = System.nanoTime();
+            for (final int index : queries) {
+                sum2 += tree.rank(boxed[index]);
+            }
+            final long time5 = System.nanoTime();
+            assertThat(sum1, is(sum2));
+            listSelect = time2 - time1;
+            treeSelect = time3 - time2;
+            listRank   = time4 - time3;
+            treeRank   = time5 - time4;
+        }
+        logger.info(String.format("select IntSortedList %dns NaturalSortedList %dns", listSelect / QUERIES, treeSelect / QUERIES));
+        logger.info(String.format("rank   IntSortedList %dns NaturalSortedList %dns", listRank / QUERIES, treeRank / QUERIES));
+        assertThat(listBytes, lessThan(treeBytes));
+    }
+
+    @Test
+    public void floatTest() {
+        final float[]         values = {3f, -0f, 0f, Float.NaN, -1.5f, Float.NEGATIVE_INFINITY, 2f, -1.5f, Float.MAX_VALUE, -Float.MIN_VALUE};
+        final FloatSortedList list   = new FloatSortedList();
+        for (final float value : values) {
+            list.add(value);
+        }
+        final float[] expected = values.clone();
+        Arrays.sort(expected);//same order as Float.compare
+        assertThat(Arrays.equals(list.toArray(), expected), is(true));
+        assertThat(list.rank(0f), is(5));
+        assertThat(list.indexOf(-1.5f), is(1));
+        assertThat(list.removeValue(-0f), is(true));
+        assertThat(list.contains(-0f), is(false));
+        assertThat(list.contains(0f), is(true));
+        assertThat(new FloatSortedList(expected).get(9), is(Float.NaN));
+    }
+
+    @Test
+    public void intTest() {
+        final Random        random    = new Random(1);
+        final IntSortedList list      = new IntSortedList();
+        final List<Integer> reference = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            final int operation = random.nextInt(10);
+            if (operation < 6 || reference.isEmpty()) {
+                final int value = random.nextInt(2000);
+                list.add(value);
+                reference.add(value);
+                Collections.sort(reference);
+            } else if (operation < 8) {
+                final int index = random.nextInt(reference.size());
+                assertThat(list.removeAt(index), is(reference.remove(index)));
+            } else if (operation < 9) {
+                final int value = random.nextInt(2000);
+                assertThat(list.removeValue(value), is(reference.remove(Integer.valueOf(value))));
+            } else {
+                final int[] added = new int[random.nextInt(100)];
+                for (int a = 0; a < added.length; a++) {
+                    added[a] = random.nextInt(2000);
+                    reference.add(added[a]);
+                }
+                list.addAll(added);
+                Collections.sort(reference);
+            }
+            assertThat(list.size(), is(reference.size()));
+            if (i % 100 == 0) {
+                final int value   = random.nextInt(2000);
+                int       smaller = 0;
+                while (smaller < reference.size() && reference.get(smaller) < value) {
+                    smaller++;
+                }
+                assertThat(list.rank(value), is(smaller));
+                assertThat(list.indexOf(value), is(reference.indexOf(value)));
+                for (int index = 0; index < reference.size(); index++) {
+                    assertThat(list.get(index), is(reference.get(index)));
+                }
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(list.size()));
+        assertThrows(IllegalArgumentException.class, () -> new IntSortedList(new int[]{2, 1}));
+        list.clear();
+        assertThat(list.isEmpty(), is(true));
+        assertThat(list.rank(5), is(0));
+    }
+
+    @Test
+    public void longTest() {
+        final long[] sorted = new long[10000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = Long.MIN_VALUE + i * 3L;
+        }
+        final LongSortedList list = new LongSortedList(sorted);
+        list.add(Long.MAX_VALUE);
+        list.add(Long.MIN_VALUE + 1);
+        assertThat(list.size(), is(10002));
+        assertThat(list.get(1), is(Long.MIN_VALUE + 1));
+        assertThat(list.get(10001), is(Long.MAX_VALUE));
+        assertThat(list.rank(Long.MIN_VALUE + 3), is(2));
+        assertThat(list.removeAt(0), is(Long.MIN_VALUE));
+        list.addAll(sorted);
+        assertThat(list.size(), is(20001));
+        assertThat(list.get(0), is(Long.MIN_VALUE));
+        assertThat(list.get(1), is(Long.MIN_VALUE + 1));
+    }
+
+}
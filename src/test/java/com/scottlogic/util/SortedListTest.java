@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.scottlogic.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SortedListTest {
+    private static final int    ELEMENTS = 100000;
+    private final        Logger logger   = LoggerFactory.getLogger(this.getClass());
+
+    private static void assertBalanced(final SortedList<?> list) {
+        assertThat(list.maxBalanceFactor(), lessThanOrEqualTo(1));
+        assertThat(-list.minBalanceFactor(), lessThanOrEqualTo(1));
+    }
+
+    @Test
+    public void addAllTest() {
+        final Random                     random    = new Random(0);
+        final NaturalSortedList<Integer> list      = new NaturalSortedList<>();
+        final List<Integer>              reference = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            final List<Integer> added = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(1000); i++) {
+                added.add(random.nextInt(500));
+            }
+            if (round % 2 == 0) {
+                list.addAll(added.subList(0, 1 + added.size() / 100));//one by one
+                reference.addAll(added.subList(0, 1 + added.size() / 100));
+            } else {
+                list.addAll(added);//merged and rebuilt
+                reference.addAll(added);
+            }
+            Collections.sort(reference);
+            assertThat(list, is(reference));
+            assertBalanced(list);
+        }
+        //the list still works after a rebuild
+        list.add(250);
+        reference.add(250);
+        list.remove(Integer.valueOf(reference.get(0)));
+        reference.remove(0);
+        Collections.sort(reference);
+        assertThat(list, is(reference));
+        assertThat(list.rank(250), is(reference.indexOf(250)));
+        assertThat(list.rank(1000), is(reference.size()));
+    }
+
+    @Test
+    public void bulkBuildTest() {
+        final Integer[] sorted = new Integer[ELEMENTS];
+        for (int i = 0; i < ELEMENTS; i++) {
+            sorted[i] = i / 2;//with duplicates
+        }
+        final long                       time1 = System.currentTimeMillis();
+        final NaturalSortedList<Integer> bulk  = new NaturalSortedList<>(sorted);
+        final long                       time2 = System.currentTimeMillis();
+        final NaturalSortedList<Integer> list  = new NaturalSortedList<>();
+        for (final Integer value : sorted) {
+            list.add(value);
+        }
+        final long time3 = System.currentTimeMillis();
+        logger.info(String.format("bulk build %dms, add one by one %dms", time2 - time1, time3 - time2));
+        assertThat(bulk.size(), is(ELEMENTS));
+        assertThat(bulk, is(list));
+        assertBalanced(bulk);
+        for (int i = 0; i < ELEMENTS; i += 997) {
+            assertThat(bulk.get(i), is(i / 2));
+            assertThat(bulk.rank(i / 2), is(i & ~1));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new NaturalSortedList<>(new Integer[]{2, 1}));
+        assertThrows(IllegalArgumentException.class, () -> new SortedList<>(Comparator.<Integer>naturalOrder(), new Integer[]{1, null}));
+    }
+
+    @Test
+    public void unsortedAddAllTest() {
+        final UnsortedList<String> list = new UnsortedList<>();
+        list.add("c");
+        list.add("a");
+        list.addAll(List.of("b", "e", "d"));
+        assertThat(list, is(List.of("c", "a", "b", "e", "d")));
+        list.add(1, "x");
+        list.remove("e");
+        list.add("f");
+        assertThat(list, is(List.of("c", "x", "a", "b", "d", "f")));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AdaptiveLatencyTest {
+
+    @Test
+    public void boundsTest() {
+        final AdaptiveLatency latency = new AdaptiveLatency();
+        latency.setBounds(2, 2, 1);
+        assertThat(latency.getBufferCount(), is(2));
+        assertThat("nothing left to grow", latency.underrun(), is(false));
+        assertThrows(IllegalArgumentException.class, () -> latency.setBounds(1, 4, 1));
+        assertThrows(IllegalArgumentException.class, () -> latency.setBounds(4, 3, 1));
+        assertThrows(IllegalArgumentException.class, () -> latency.setBounds(2, 4, 3));
+        assertThrows(IllegalArgumentException.class, () -> latency.setBounds(2, AdaptiveLatency.MAX_BUFFER_COUNT + 1, 1));
+    }
+
+    @Test
+    public void growTest() {
+        final AdaptiveLatency latency = new AdaptiveLatency();
+        latency.setBounds(2, 4, 4);
+        assertThat(latency.getBufferCount(), is(AdaptiveLatency.DEFAULT_BUFFER_COUNT));
+        assertThat(latency.underrun(), is(true));
+        assertThat(latency.getBufferCount(), is(4));
+        assertThat(latency.getSizeFactor(), is(1));
+        //more buffers first, then bigger buffers
+        assertThat(latency.underrun(), is(true));
+        assertThat(latency.getSizeFactor(), is(2));
+        assertThat(latency.underrun(), is(true));
+        assertThat(latency.getSizeFactor(), is(4));
+        assertThat(latency.getLatency(), is(16));
+        assertThat(latency.underrun(), is(false));
+    }
+
+    @Test
+    public void shrinkTest() {
+        final AdaptiveLatency latency = new AdaptiveLatency();
+        latency.setBounds(2, 4, 2);
+        latency.underrun();
+        latency.underrun();
+        assertThat(latency.getLatency(), is(8));
+        //a window that drained the queue down to one buffer does not reduce the latency
+        for (int i = 0; i < AdaptiveLatency.STABLE_WINDOW; i++) {
+            assertThat(latency.submitted(i == 100 ? 1 : 3), is(false));
+        }
+        assertThat(latency.getLatency(), is(8));
+        //stable windows reduce the latency in reverse order
+        final int[] expected = {4, 3, 2};
+        for (final int bufferCount : expected) {
+            for (int i = 0; i < AdaptiveLatency.STABLE_WINDOW - 1; i++) {
+                assertThat(latency.submitted(2), is(false));
+            }
+            assertThat(latency.submitted(2), is(true));
+            assertThat(latency.getBufferCount(), is(bufferCount));
+            assertThat(latency.getSizeFactor(), is(1));
+        }
+        for (int i = 0; i < AdaptiveLatency.STABLE_WINDOW; i++) {
+            assertThat("lower bound reached", latency.submitted(2), is(false));
+        }
+        //an underrun restarts the window
+        for (int i = 0; i < AdaptiveLatency.STABLE_WINDOW - 1; i++) {
+            latency.submitted(2);
+        }
+        latency.underrun();
+        assertThat(latency.getBufferCount(), is(3));
+        assertThat(latency.submitted(2), is(false));
+    }
+
+}
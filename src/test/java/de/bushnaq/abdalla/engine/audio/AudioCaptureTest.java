@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Writes pcm data through the capture ring into a wav file and reads it back, no openal needed
+ */
+public class AudioCaptureTest {
+    private static final int    BLOCK_SIZE = 4096;
+    private static final int    SAMPLERATE = 48000;
+    private final        Logger logger     = LoggerFactory.getLogger(this.getClass());
+
+    private static ByteBuffer readWav(final File file) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void captureTest() throws Exception {
+        final int          blocks  = 1000;
+        final File         file    = new File("target/capture-test.wav");
+        final ByteBuffer   data    = ByteBuffer.allocateDirect(BLOCK_SIZE * 2).order(ByteOrder.nativeOrder());//every offer needs two ring blocks
+        short              sample  = 0;
+        final long         time1   = System.currentTimeMillis();
+        final AudioCapture capture = new AudioCapture(file, SAMPLERATE, 16, 2, BLOCK_SIZE, 64);
+        for (int i = 0; i < blocks; i++) {
+            data.clear();
+            while (data.hasRemaining()) {
+                data.putShort(sample++);
+            }
+            data.flip();
+            capture.offer(data);
+            assertThat("offer must not change the position", data.position(), is(0));
+            Thread.yield();
+        }
+        capture.close();
+        final long dropped = capture.getDroppedBytes();
+        final long written = capture.getWrittenBytes();
+        final long time2 = System.currentTimeMillis();
+        logger.info(String.format("captured %d bytes and dropped %d bytes in %dms", written, dropped, time2 - time1));
+        assertThat(written + dropped, is((long) blocks * data.capacity()));
+        final ByteBuffer wav = readWav(file);
+        assertThat((long) wav.getInt(40), is(written));
+        for (int i = 0; i < BLOCK_SIZE; i += 2) {
+            //the first offer always fits into the empty ring
+            assertThat(wav.getShort(WavWriter.HEADER_SIZE + i), is((short) (i / 2)));
+        }
+        assertThat(time2 - time1, lessThan(10000L));
+    }
+
+    @Test
+    public void headerTest() throws Exception {
+        final File file = new File("target/wav-writer-test.wav");
+        try (final WavWriter writer = new WavWriter(file, SAMPLERATE, 16, 2)) {
+            final ByteBuffer data = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+            data.putShort((short) 1).putShort((short) -1).putShort((short) 2).putShort((short) -2).flip();
+            writer.write(data);
+            assertThat("write must not change the position", data.position(), is(0));
+            writer.write(data);
+            assertThat(writer.getDataSize(), is(16L));
+        }
+        final ByteBuffer wav = readWav(file);
+        assertThat(wav.capacity(), is(WavWriter.HEADER_SIZE + 16));
+        assertThat(wav.getInt(4), is(36 + 16));
+        assertThat(wav.getShort(22), is((short) 2));
+        assertThat(wav.getInt(24), is(SAMPLERATE));
+        assertThat(wav.getInt(28), is(SAMPLERATE * 4));
+        assertThat(wav.getShort(34), is((short) 16));
+        assertThat(wav.getInt(40), is(16));
+        assertThat(wav.getShort(44), is((short) 1));
+        assertThat(wav.getShort(46), is((short) -1));
+        assertThat(wav.getShort(58), is((short) -2));
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinSynthesizer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class AudioProducerGridTest {
+    private static final int     EMITTERS   = 100000;
+    private static final float   RADIUS     = 2000;
+    private static final float   WORLD_SIZE = 100000;
+    private final        Logger  logger     = LoggerFactory.getLogger(this.getClass());
+    private final        Random  random     = new Random(0);
+
+    private List<AudioProducer> createProducers(final AudioProducerGrid grid, final int count) throws OpenAlException {
+        final List<AudioProducer> producers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final SinSynthesizer synth = new SinSynthesizer();
+            synth.setPositionAndVelocity(randomPosition(), null);
+            synth.setGrid(grid);
+            grid.add(synth);
+            producers.add(synth);
+        }
+        return producers;
+    }
+
+    private Set<AudioProducer> inRadius(final Collection<AudioProducer> producers, final Vector3 center) {
+        final Set<AudioProducer> result = new HashSet<>();
+        for (final AudioProducer producer : producers) {
+            if (producer.isAmbient() || center.dst2(producer.getPosition()) <= RADIUS * RADIUS)
+                result.add(producer);
+        }
+        return result;
+    }
+
+    @Test
+    public void moveTest() throws Exception {
+        final AudioProducerGrid grid  = new AudioProducerGrid(RADIUS / 2);
+        final SinSynthesizer    synth = new SinSynthesizer();
+        synth.setGrid(grid);
+        grid.add(synth);
+        final List<AudioProducer> result = new ArrayList<>();
+        grid.query(new Vector3(), RADIUS, result);
+        assertThat(result.contains(synth), is(true));
+        //move far away
+        synth.setPositionAndVelocity(new float[]{10 * RADIUS, 0, -10 * RADIUS}, null);
+        result.clear();
+        grid.query(new Vector3(), RADIUS, result);
+        assertThat("moved out of the queried cells", result.contains(synth), is(false));
+        result.clear();
+        grid.query(new Vector3(10 * RADIUS, 0, -10 * RADIUS), RADIUS, result);
+        assertThat(result.contains(synth), is(true));
+        //ambient producers follow the camera
+        synth.setAmbient(true);
+        result.clear();
+        grid.query(new Vector3(), RADIUS, result);
+        assertThat("ambient producers are always returned", result.contains(synth), is(true));
+        assertThat(grid.getCellCount(), is(0));
+        synth.setAmbient(false);
+        assertThat(grid.getCellCount(), is(1));
+        grid.remove(synth);
+        assertThat(grid.size(), is(0));
+        assertThat(grid.contains(synth), is(false));
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        final AudioProducerGrid   grid      = new AudioProducerGrid(RADIUS / 2);
+        final List<AudioProducer> producers = createProducers(grid, EMITTERS);
+        final Vector3[]           listeners = new Vector3[1000];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new Vector3(random.nextFloat() * WORLD_SIZE, 0, random.nextFloat() * WORLD_SIZE);
+        }
+        final List<AudioProducer> result = new ArrayList<>();
+        long                      found1 = 0;
+        final long                time1  = System.currentTimeMillis();
+        for (final Vector3 listener : listeners) {
+            for (final AudioProducer producer : producers) {
+                if (listener.dst2(producer.getPosition()) <= RADIUS * RADIUS)
+                    found1++;
+            }
+        }
+        final long time2  = System.currentTimeMillis();
+        long       found2 = 0;
+        for (final Vector3 listener : listeners) {
+            result.clear();
+            grid.query(listener, RADIUS, result);
+            for (final AudioProducer producer : result) {
+                if (listener.dst2(producer.getPosition()) <= RADIUS * RADIUS)
+                    found2++;
+            }
+        }
+        final long time3 = System.currentTimeMillis();
+        logger.info(String.format("%d queries over %d emitters, full scan %dms, grid %dms", listeners.length, EMITTERS, time2 - time1, time3 - time2));
+        assertThat(found2, is(found1));
+        assertThat(time3 - time2, is(lessThan(1000L)));
+    }
+
+    @Test
+    public void queryTest() throws Exception {
+        final AudioProducerGrid   grid      = new AudioProducerGrid(RADIUS / 2);
+        final List<AudioProducer> producers = createProducers(grid, 10000);
+        producers.get(0).setAmbient(true);
+        assertThat(grid.size(), is(producers.size()));
+        final List<AudioProducer> result = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final Vector3 center = new Vector3(randomPosition());
+            result.clear();
+            grid.query(center, RADIUS, result);
+            assertThat("query returns every producer within radius", inRadius(result, center), is(inRadius(producers, center)));
+        }
+        //move all producers and query again
+        for (final AudioProducer producer : producers) {
+            producer.setPositionAndVelocity(randomPosition(), null);
+        }
+        for (int i = 0; i < 100; i++) {
+            final Vector3 center = new Vector3(randomPosition());
+            result.clear();
+            grid.query(center, RADIUS, result);
+            assertThat("query returns every producer within radius", inRadius(result, center), is(inRadius(producers, center)));
+        }
+    }
+
+    private float[] randomPosition() {
+        return new float[]{random.nextFloat() * WORLD_SIZE, random.nextFloat() * 100, random.nextFloat() * WORLD_SIZE};
+    }
+
+}
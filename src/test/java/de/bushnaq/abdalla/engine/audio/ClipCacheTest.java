@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ClipCacheTest {
+    private static final int    SAMPLERATE = 16000;
+    private final        Path   folder;
+    private final        Logger logger     = LoggerFactory.getLogger(this.getClass());
+
+    public ClipCacheTest() throws IOException {
+        folder = Files.createTempDirectory("clip-cache");
+        folder.toFile().deleteOnExit();
+    }
+
+    /**
+     * write a mono 16 bit wav file
+     */
+    private FileHandle createWav(final String name, final int samples) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(44 + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes()).putInt(36 + samples * 2).put("WAVE".getBytes());
+        buffer.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1).putInt(SAMPLERATE).putInt(SAMPLERATE * 2).putShort((short) 2).putShort((short) 16);
+        buffer.put("data".getBytes()).putInt(samples * 2);
+        for (int i = 0; i < samples; i++) {
+            buffer.putShort((short) (i * 7));
+        }
+        final File file = folder.resolve(name + ".wav").toFile();
+        Files.write(file.toPath(), buffer.array());
+        file.deleteOnExit();
+        return new FileHandle(file);
+    }
+
+    @Test
+    public void decodeTest() throws Exception {
+        final ClipCache cache = new ClipCache(1024 * 1024);
+        final PcmAsset  clip  = cache.get("ship", createWav("ship", 1000));
+        assertThat(clip.size(), is(2000));
+        assertThat(clip.getChannels(), is(1));
+        assertThat(clip.getSamplerate(), is(SAMPLERATE));
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(2000).order(ByteOrder.LITTLE_ENDIAN);
+        clip.copy(0, byteBuffer, 0, clip.size());
+        for (int i = 0; i < 1000; i++) {
+            assertThat(byteBuffer.getShort(i * 2), is((short) (i * 7)));
+        }
+    }
+
+    /**
+     * The playback thread must not see a clip before it is decoded and must never decode itself.
+     */
+    @Test
+    public void loadTest() throws Exception {
+        final ClipCache      cache    = new ClipCache(1024 * 1024);
+        final FileHandle     file     = createWav("ship", 1000);
+        final List<Runnable> deferred = new ArrayList<>();//executor that decodes when we tell it to
+        final CompletableFuture<PcmAsset> future = cache.load("ship", file, deferred::add);
+        assertThat(cache.isLoading("ship"), is(true));
+        assertThat(cache.getIfPresent("ship"), is(nullValue()));
+        assertThat("a second load joins the first one", cache.load("ship", file, deferred::add), is(future));
+        assertThat(deferred.size(), is(1));
+        deferred.get(0).run();
+        assertThat(cache.isLoading("ship"), is(false));
+        assertThat(cache.getIfPresent("ship"), is(future.get()));
+        assertThat(cache.getMisses(), is(1L));
+        final CompletableFuture<PcmAsset> broken = cache.load("broken", new FileHandle(folder.resolve("missing.wav").toFile()), Runnable::run);
+        assertThat("failed decoding is not loading anymore", cache.isLoading("broken"), is(false));
+        assertThat(broken.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void lruTest() throws Exception {
+        final ClipCache  cache = new ClipCache(3 * 2000);
+        final FileHandle a     = createWav("a", 1000);
+        final FileHandle b     = createWav("b", 1000);
+        final FileHandle c     = createWav("c", 1000);
+        final FileHandle d     = createWav("d", 1000);
+        cache.get("a", a);
+        cache.get("b", b);
+        cache.get("c", c);
+        cache.get("a", a);//a is now the most recently used
+        assertThat(cache.getHits(), is(1L));
+        cache.get("d", d);//evicts b
+        assertThat(cache.getClipCount(), is(3));
+        assertThat(cache.getSize(), is(3 * 2000L));
+        cache.get("a", a);
+        cache.get("c", c);
+        assertThat(cache.getHits(), is(3L));
+        cache.get("b", b);
+        assertThat("b was evicted", cache.getMisses(), is(5L));
+        cache.setBudget(2000);
+        assertThat(cache.getClipCount(), is(1));
+    }
+
+    /**
+     * Clips queued for playback are pinned and must survive eviction.
+     */
+    @Test
+    public void pinTest() throws Exception {
+        final ClipCache  cache = new ClipCache(2 * 2000);
+        final FileHandle a     = createWav("a", 1000);
+        cache.pin("a");
+        cache.get("a", a);
+        cache.get("b", createWav("b", 1000));
+        cache.get("c", createWav("c", 1000));//evicts b instead of the pinned a
+        assertThat(cache.getIfPresent("a"), is(notNullValue()));
+        assertThat(cache.getIfPresent("b"), is(nullValue()));
+        cache.pin("a");
+        cache.unpin("a");
+        cache.get("d", createWav("d", 1000));
+        assertThat("still pinned once", cache.getIfPresent("a"), is(notNullValue()));
+        cache.unpin("a");
+        cache.get("e", createWav("e", 1000));//evicts d, a was used more recently
+        cache.get("f", createWav("f", 1000));//evicts a
+        assertThat(cache.getIfPresent("a"), is(nullValue()));
+        assertThat(cache.getClipCount(), is(2));
+    }
+
+    @Test
+    public void performanceTest() throws Exception {
+        final ClipCache  cache      = new ClipCache(1024 * 1024);
+        final FileHandle file       = createWav("name", SAMPLERATE);
+        final int        iterations = 1000;
+        final long       time1      = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            ClipCache.decode("name", file);
+        }
+        final long time2 = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            cache.get("name", file);
+        }
+        final long time3 = System.currentTimeMillis();
+        logger.info(String.format("%d x 1s clip, decoding %dms, cache %dms", iterations, time2 - time1, time3 - time2));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(time3 - time2, is(lessThan(1000L)));
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class KeepCopyRingTest {
+
+    @Test
+    public void boundedTest() {
+        final NativeBufferPool pool = new NativeBufferPool();
+        final KeepCopyRing     ring = new KeepCopyRing(pool, 4, 256);
+        for (int i = 0; i < 10; i++) {
+            final ByteBufferContainer container = ring.next();
+            container.byteBuffer.putInt(0, i);
+            container.startFrequency = i;
+        }
+        assertThat(ring.size(), is(4));
+        assertThat(ring.getOverwrittenCount(), is(6L));
+        assertThat("memory is bounded by the capacity", pool.getAllocationCount(), is(4L));
+        for (int i = 0; i < 4; i++) {
+            assertThat("oldest copy first", ring.get(i).byteBuffer.getInt(0), is(6 + i));
+            assertThat(ring.get(i).startFrequency, is(6.0 + i));
+        }
+        ring.dispose();
+        assertThat(pool.getOutstandingCount(), is(0));
+        final KeepCopyRing reused = new KeepCopyRing(pool, 4, 256);
+        for (int i = 0; i < 4; i++) {
+            reused.next();
+        }
+        assertThat("buffers come from the pool", pool.getAllocationCount(), is(4L));
+        reused.dispose();
+        pool.dispose();
+    }
+
+}
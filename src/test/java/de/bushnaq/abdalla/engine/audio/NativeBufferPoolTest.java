@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class NativeBufferPoolTest {
+
+    private void leak(final NativeBufferPool pool) {
+        pool.acquire(1000);
+    }
+
+    @Test
+    public void leakTest() throws Exception {
+        final NativeBufferPool pool = new NativeBufferPool();
+        pool.setLeakTracing(true);
+        leak(pool);
+        assertThat(pool.getOutstandingCount(), is(1));
+        for (int i = 0; i < 100 && pool.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(pool.getLeakCount(), is(1L));
+        assertThat(pool.getOutstandingCount(), is(0));
+        pool.acquire(1000).release();
+        assertThat("the leaked buffer was recovered", pool.getAllocationCount(), is(1L));
+        pool.dispose();
+    }
+
+    @Test
+    public void reuseTest() {
+        final NativeBufferPool       pool  = new NativeBufferPool();
+        final NativeBufferPool.Lease lease = pool.acquire(1000);
+        assertThat(lease.buffer().capacity(), is(1000));
+        assertThat(lease.buffer().order(), is(ByteOrder.nativeOrder()));
+        lease.release();
+        assertThrows(IllegalStateException.class, lease::release);
+        for (int i = 0; i < 100; i++) {
+            //same size class, e.g. a source that is reset with a different buffer size
+            final NativeBufferPool.Lease l = pool.acquire(513 + i);
+            assertThat(l.buffer().capacity(), is(513 + i));
+            l.release();
+        }
+        assertThat(pool.getAllocationCount(), is(1L));
+        assertThat(pool.getReuseCount(), is(100L));
+        pool.acquire(2000).release();
+        assertThat("different size class", pool.getAllocationCount(), is(2L));
+        assertThat(pool.getOutstandingCount(), is(0));
+        pool.dispose();
+    }
+
+    @Test
+    public void sizeClassTest() {
+        assertThat(NativeBufferPool.sizeClass(1), is(8));
+        assertThat(NativeBufferPool.sizeClass(256), is(8));
+        assertThat(NativeBufferPool.sizeClass(257), is(9));
+        assertThat(NativeBufferPool.sizeClass(4096), is(12));
+        assertThat(NativeBufferPool.sizeClass(4097), is(13));
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinSynthesizer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Renders without sound device, runs on a headless build machine.
+ */
+public class OpenAlSourceTest {
+    private static final int              SAMPLERATE = 44100;
+    private static final int              SAMPLES    = 4410;
+    private              LoopbackBackend  backend;
+    private final        NativeBufferPool bufferPool = new NativeBufferPool();
+    private final        AlCommandBuffer  commands   = new AlCommandBuffer();
+
+    @BeforeEach
+    public void create() throws OpenAlException {
+        backend = new LoopbackBackend();
+        backend.create(SAMPLERATE);
+    }
+
+    private OpenAlSource createSource() throws OpenAlException {
+        return new OpenAlSource(new OpenAlSourceConfiguration(SAMPLES, SAMPLERATE, 16, 1, 0, false, false), 1f, bufferPool, commands);
+    }
+
+    /**
+     * The audio engine mixes a producer in software right after it lost its source, the render worker of the source must not render for it anymore.
+     */
+    @Test
+    public void disableThenMixTest() throws Exception {
+        final OpenAlSource source = createSource();
+        source.setRenderAhead(4);
+        final ProbeSynthesizer synth = new ProbeSynthesizer();
+        synth.play();
+        final SoftwareMixer mixer = new SoftwareMixer(SAMPLES, SAMPLERATE);
+        mixer.setListener(new Vector3(0, 0, 0), new Vector3(0, 0, -1), new Vector3(0, 1, 0));
+        mixer.play();
+        final ByteBuffer mix = ByteBuffer.allocateDirect(SAMPLES * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 20; i++) {
+            synth.enable(source);
+            Thread.sleep(3);//render worker is busy rendering ahead
+            synth.disable();
+            final int sourceCalls = synth.sourceCalls.get();
+            mixer.add(synth);
+            mixer.processBuffer(mix);
+            Thread.sleep(10);
+            mixer.remove(synth);
+            assertThat("source rendered for a disabled producer", synth.sourceCalls.get(), is(sourceCalls));
+        }
+        assertThat("producer was rendered concurrently", synth.overlaps.get(), is(0));
+        source.dispose();
+    }
+
+    @AfterEach
+    public void dispose() throws OpenAlException {
+        backend.dispose();
+        bufferPool.dispose();
+    }
+
+    /**
+     * Underruns grow the buffers until they hold the maximum number of blocks, every buffer must still be filled from the render worker and none may get lost.
+     */
+    @Test
+    public void renderAheadGrowTest() throws Exception {
+        final OpenAlSource source = createSource();
+        source.setRenderAhead(4);
+        source.setLatencyBounds(AdaptiveLatency.MIN_BUFFER_COUNT, AdaptiveLatency.MIN_BUFFER_COUNT, AdaptiveLatency.MAX_SIZE_FACTOR);
+        final SinSynthesizer synth = new SinSynthesizer();
+        synth.play();
+        synth.enable(source);
+        final ByteBuffer output = ByteBuffer.allocateDirect(SAMPLES * AdaptiveLatency.MAX_SIZE_FACTOR * AdaptiveLatency.MAX_BUFFER_COUNT * 4).order(ByteOrder.nativeOrder());
+        int              grown  = 0;//queues filled after reaching the maximum size factor
+        for (int i = 0; i < 100 && grown < 5; i++) {
+            output.clear();
+            backend.render(output);//plays more than is queued, the source underruns
+            assertThat("queue filled", source.awaitQueueFilled(1000), is(true));
+            assertThat("lost buffers", source.getFreeBufferCount() + source.getQueueDepth(), is(AdaptiveLatency.MAX_BUFFER_COUNT));
+            if (source.getSizeFactor() == AdaptiveLatency.MAX_SIZE_FACTOR)
+                grown++;
+        }
+        assertThat(source.getSizeFactor(), is(AdaptiveLatency.MAX_SIZE_FACTOR));
+        synth.disable();
+        source.dispose();
+    }
+
+    /**
+     * Switching render ahead off must stop the render worker, the source keeps playing on its own thread.
+     */
+    @Test
+    public void renderAheadOffTest() throws Exception {
+        final OpenAlSource source = createSource();
+        source.setRenderAhead(4);
+        final SinSynthesizer synth = new SinSynthesizer();
+        synth.play();
+        synth.enable(source);
+        final ByteBuffer output = ByteBuffer.allocateDirect(SAMPLES * AdaptiveLatency.MAX_SIZE_FACTOR * AdaptiveLatency.MAX_BUFFER_COUNT * 4).order(ByteOrder.nativeOrder());
+        backend.render(output);
+        assertThat("queue filled", source.awaitQueueFilled(1000), is(true));
+        assertThat(renderWorkerCount(source), is(1));
+        source.setRenderAhead(0);
+        assertThat("render worker stopped", renderWorkerCount(source), is(0));
+        output.clear();
+        backend.render(output);
+        assertThat("queue filled without render worker", source.awaitQueueFilled(1000), is(true));
+        synth.disable();
+        source.dispose();
+    }
+
+    private int renderWorkerCount(final OpenAlSource source) {
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(source.getName() + "-render") && thread.isAlive())
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * A source that is reused with another block size must wait for its threads before it reallocates the blocks they use.
+     */
+    @Test
+    public void reconfigureTest() throws Exception {
+        final OpenAlSource source = createSource();
+        source.setRenderAhead(4);
+        final ByteBuffer output = ByteBuffer.allocateDirect(SAMPLES * AdaptiveLatency.MAX_SIZE_FACTOR * AdaptiveLatency.MAX_BUFFER_COUNT * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 10; i++) {
+            final SinSynthesizer synth = new SinSynthesizer();
+            synth.play();
+            synth.enable(source);
+            output.clear();
+            backend.render(output);
+            assertThat("queue filled", source.awaitQueueFilled(1000), is(true));
+            synth.disable();
+            final int samples = i % 2 == 0 ? SAMPLES * 2 : SAMPLES;
+            source.reconfigure(new OpenAlSourceConfiguration(samples, SAMPLERATE, 16, 1, 0, false, false), 1f);
+            assertThat(source.getBuffersize(), is((long) samples * 2));
+        }
+        source.dispose();
+    }
+
+    /**
+     * Slow synthesizer that records who renders it.
+     */
+    private static class ProbeSynthesizer extends SinSynthesizer {
+        private final AtomicInteger active      = new AtomicInteger();
+        private final AtomicInteger overlaps    = new AtomicInteger();
+        private final AtomicInteger sourceCalls = new AtomicInteger();//calls from the source thread or its render worker
+
+        ProbeSynthesizer() throws OpenAlException {
+        }
+
+        @Override
+        public void processBuffer(final ByteBuffer byteBuffer) throws OpenAlcException {
+            if (active.getAndIncrement() != 0)
+                overlaps.incrementAndGet();
+            try {
+                if (Thread.currentThread().getName().startsWith("OpenAlSource"))
+                    sourceCalls.incrementAndGet();
+                super.processBuffer(byteBuffer);
+                Thread.sleep(1);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+}
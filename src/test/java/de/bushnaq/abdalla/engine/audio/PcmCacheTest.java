@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.files.FileHandle;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Decoding and playback from the cache do not need an audio device
+ */
+public class PcmCacheTest {
+    private static final int        BUFFER_SIZE = 4096 * 10;
+    private final        FileHandle file        = new FileHandle(new File("app/assets/audio/bass-dropmp3.ogg"));
+    private final        Logger     logger      = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void cacheTest() {
+        final PcmCache cache = new PcmCache();
+        final PcmAsset asset = cache.get(file);
+        assertThat(cache.get(file) == asset, is(true));
+        assertThat(cache.getAssetCount(), is(1));
+        assertThat(cache.getSize(), is((long) asset.size()));
+        cache.clear();
+        assertThat(cache.getSize(), is(0L));
+    }
+
+    @Test
+    public void endTest() throws Exception {
+        final PcmCache  cache  = new PcmCache();
+        final OggPlayer player = new OggPlayer(cache);
+        player.setFile(file);
+        player.play();
+        final int        size       = cache.get(file).size();
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+        for (int played = 0; played <= size; played += BUFFER_SIZE) {
+            player.processBuffer(byteBuffer);
+        }
+        assertThat("player pauses at the end of the file", player.isPlaying(), is(false));
+        final int tail = size % BUFFER_SIZE;
+        for (int i = tail; i < BUFFER_SIZE; i++) {
+            assertThat(byteBuffer.get(i), is((byte) 0));
+        }
+        assertThat(byteBuffer.position(), is(0));
+    }
+
+    @Test
+    public void loopTest() throws Exception {
+        final PcmCache  cache   = new PcmCache();
+        final OggPlayer player1 = new OggPlayer(cache);
+        final OggPlayer player2 = new OggPlayer(cache);
+        player1.setFile(file);
+        player2.setFile(file);
+        player1.setLoop(true);
+        player1.play();
+        assertThat("players share the decoded asset", cache.getAssetCount(), is(1));
+        final PcmAsset   asset    = cache.get(file);
+        final ByteBuffer expected = ByteBuffer.allocate(asset.size());
+        asset.copy(0, expected, 0, asset.size());
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+        final int        loops      = 10;
+        final int        buffers    = loops * asset.size() / BUFFER_SIZE;
+        final long       time1      = System.currentTimeMillis();
+        long             played     = 0;
+        for (int b = 0; b < buffers; b++) {
+            player1.processBuffer(byteBuffer);
+            for (int i = 0; i < BUFFER_SIZE; i += 997) {
+                assertThat(byteBuffer.get(i), is(expected.get((int) ((played + i) % asset.size()))));
+            }
+            played += BUFFER_SIZE;
+        }
+        final long time2 = System.currentTimeMillis();
+        logger.info(String.format("played %d buffers, %d loops in %dms", buffers, loops, time2 - time1));
+        assertThat(player1.isPlaying(), is(true));
+        assertThat(time2 - time1, is(lessThan(1000L)));
+    }
+
+    @Test
+    public void sampleCountTest() throws Exception {
+        final long samples = PcmCache.readSampleCount(file);
+        logger.info(String.format("%s has %d samples per channel", file.name(), samples));
+        assertThat(samples, is(greaterThan(0L)));
+        final File text = File.createTempFile("pcm-cache", ".txt");
+        try {
+            Files.writeString(text.toPath(), "not an ogg file");
+            assertThat(PcmCache.readSampleCount(new FileHandle(text)), is(-1L));
+        } finally {
+            text.delete();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Stress tests the ring with a producer and a consumer thread, no openal needed
+ */
+public class PcmRingTest {
+    private static final int    BLOCK_SIZE = 1024;
+    private final        Logger logger     = LoggerFactory.getLogger(this.getClass());
+
+    @Test
+    public void capacityTest() {
+        final PcmRing ring = new PcmRing(3, BLOCK_SIZE);
+        assertThat(ring.peek(), is(nullValue()));
+        for (int i = 0; i < 3; i++) {
+            ring.claim().putInt(0, i);
+            ring.publish(i);
+        }
+        assertThat("ring is full", ring.claim(), is(nullValue()));
+        assertThat(ring.size(), is(3));
+        assertThat(ring.peek().getInt(0), is(0));
+        ring.release();
+        ring.claim().putInt(0, 3);
+        ring.publish(3);
+        for (int i = 1; i < 4; i++) {
+            assertThat(ring.peekTag(), is(i));
+            assertThat(ring.peek().getInt(0), is(i));
+            ring.release();
+        }
+        assertThat(ring.isEmpty(), is(true));
+    }
+
+    @Test
+    public void stressTest() throws Exception {
+        final int     blocks   = 1000000;
+        final PcmRing ring     = new PcmRing(8, BLOCK_SIZE);
+        final Thread  producer = new Thread(() -> {
+            for (int i = 0; i < blocks; i++) {
+                ByteBuffer block;
+                while ((block = ring.claim()) == null) {
+                    Thread.yield();
+                }
+                //fill the whole block so that torn reads are detected
+                for (int index = 0; index < BLOCK_SIZE; index += 4) {
+                    block.putInt(index, i);
+                }
+                ring.publish(i);
+            }
+        });
+        final long time1 = System.currentTimeMillis();
+        producer.start();
+        int errors = 0;
+        for (int i = 0; i < blocks; i++) {
+            ByteBuffer block;
+            while ((block = ring.peek()) == null) {
+                Thread.yield();
+            }
+            if (ring.peekTag() != i || block.getInt(0) != i || block.getInt(BLOCK_SIZE / 2) != i || block.getInt(BLOCK_SIZE - 4) != i)
+                errors++;
+            ring.release();
+        }
+        producer.join();
+        final long time2 = System.currentTimeMillis();
+        logger.info(String.format("%d blocks of %d bytes passed through the ring in %dms", blocks, BLOCK_SIZE, time2 - time1));
+        assertThat("blocks lost, duplicated or torn", errors, is(0));
+        assertThat(ring.isEmpty(), is(true));
+        assertThat(time2 - time1, is(lessThan(10000L)));
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Compares the single pass scanner and the compiled templates with the original tokenizer
+ */
+public class RadioMessageTemplateTest {
+    private static final String[] NAMES    = {"T-1", "P-81", "Alpha", "Bravo-2", " Charlie ", "D", "Echo Foxtrot", "x-y-z"};
+    private static final String[] PIECES   = {"to", " ", "requesting", "approval", "dock.", "-", "{", "}", "name", "pause", "{name}", "{/name}", "{pause}", "{/pause}", "%s", "50%%"};
+    private static final String   TEMPLATE = "{name}%s{/name} to {name}%s{/name}{pause} requesting approval to dock.";
+    private final        Logger   logger   = LoggerFactory.getLogger(this.getClass());
+    private final        Random   random   = new Random(0);
+
+    /**
+     * The original O(n^2) tokenizer of RadioTTS
+     */
+    private static List<String> legacyTokenize(String msg) {
+        String[]     tags   = {"name", "pause"};
+        List<String> tokens = new ArrayList<>();
+        int          start  = -1;
+        int          end    = -1;
+        int          head   = 0;
+        int          i      = 0;
+        for (i = 0; i < msg.length(); i++) {
+            String substring = msg.substring(i);
+            for (String token : tags) {
+                String st = String.format("{%s}", token);
+                String et = String.format("{/%s}", token);
+                if (substring.startsWith(st)) {
+                    if (head != i) {
+                        String value = msg.substring(head, i);
+                        tokens.add(value.trim());
+                    }
+                    if (token.equals("pause")) {
+                        head = i + st.length();
+                    }
+                    start = i + st.length();
+                } else if (substring.startsWith(et)) {
+                    end = i;
+                    String value = msg.substring(start, end);
+                    tokens.add(value.trim());
+                    head = i + et.length();
+                }
+            }
+        }
+        if (head != msg.length()) {
+            String value = msg.substring(head, i);
+            tokens.add(value.trim());
+        }
+        return tokens;
+    }
+
+    private Object legacyResult(final String msg) {
+        try {
+            return legacyTokenize(msg);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
+    @Test
+    public void performanceTest() {
+        final int                  iterations = 100000;
+        final RadioMessageTemplate template   = new RadioMessageTemplate(TEMPLATE);
+        final String               msg        = String.format(TEMPLATE, "T-1", "P-81");
+        final List<String>         tokens     = new ArrayList<>();
+        final long                 time1      = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            legacyTokenize(String.format(TEMPLATE, "T-1", "P-81"));
+        }
+        final long time2 = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            tokens.clear();
+            RadioMessageTemplate.scan(msg, tokens);
+        }
+        final long time3 = System.currentTimeMillis();
+        for (int i = 0; i < iterations; i++) {
+            tokens.clear();
+            template.fill(tokens, "T-1", "P-81");
+        }
+        final long time4 = System.currentTimeMillis();
+        logger.info(String.format("%d messages, format and legacy tokenizer %dms, scanner %dms, compiled template %dms", iterations, time2 - time1, time3 - time2, time4 - time3));
+        assertThat(tokens, is(legacyTokenize(msg)));
+        assertThat(time4 - time3, is(lessThan(1000L)));
+    }
+
+    private String randomMessage(final String[] pieces, final int length) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * well formed template made of text, name slots and pauses
+     */
+    private String randomTemplate() {
+        final StringBuilder sb       = new StringBuilder();
+        final int           segments = 1 + random.nextInt(8);
+        for (int i = 0; i < segments; i++) {
+            switch (random.nextInt(5)) {
+                case 0 -> sb.append("{name}%s{/name}");
+                case 1 -> sb.append("{pause}");
+                case 2 -> sb.append("{pause}").append(randomMessage(new String[]{"wait", " ", "%s"}, 1 + random.nextInt(3))).append("{/pause}");
+                case 3 -> sb.append(randomMessage(new String[]{" ", "to", "dock", "%s", "50%%"}, random.nextInt(4)));
+                default -> sb.append(" requesting approval ");
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void scanTest() {
+        assertThat(RadioMessageTemplate.scan(String.format(TEMPLATE, "T-1", "P-81")), is(List.of("T-1", "to", "P-81", "requesting approval to dock.")));
+        for (int i = 0; i < 10000; i++) {
+            final String msg = randomMessage(PIECES, random.nextInt(12));
+            Object       result;
+            try {
+                result = RadioMessageTemplate.scan(msg);
+            } catch (RuntimeException e) {
+                result = e.getClass();
+            }
+            assertThat(msg, result, is(legacyResult(msg)));
+        }
+    }
+
+    @Test
+    public void templateTest() {
+        for (int i = 0; i < 10000; i++) {
+            final String               msg      = randomTemplate();
+            final RadioMessageTemplate template = new RadioMessageTemplate(msg);
+            final Object[]             args     = new Object[msg.split("%s", -1).length - 1];
+            for (int a = 0; a < args.length; a++) {
+                args[a] = NAMES[random.nextInt(NAMES.length)];
+            }
+            assertThat(msg, template.fill(args), is(legacyTokenize(String.format(msg, args))));
+        }
+        assertThat(new RadioMessageTemplate(TEMPLATE).getLiterals(), is(List.of("to", "requesting approval to dock.")));
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * TTS rendering does not need an audio device
+ */
+public class RadioTTSTest {
+
+    @Test
+    public void incrementalRenderTest() throws Exception {
+        final File folder = Files.createTempDirectory("radio-tts").toFile();
+        try {
+            final RadioTTS     radioTTS = new RadioTTS(null, folder.getPath());
+            final List<String> names    = new ArrayList<>(List.of("T-1", "P-81", "Alpha"));
+            assertThat("cold cache renders everything", radioTTS.renderAllTTSStrings(names), is(3));
+            assertThat(new File(folder, "radio/P-81.wav").exists(), is(true));
+            assertThat("warm cache renders nothing", radioTTS.renderAllTTSStrings(names), is(0));
+            names.add("Bravo");
+            assertThat("only new names are rendered", radioTTS.renderAllTTSStrings(names), is(1));
+            new File(folder, "radio/T-1.wav").delete();
+            assertThat("missing files are rendered again", radioTTS.renderAllTTSStrings(names), is(1));
+            final RadioTTS restarted = new RadioTTS(null, folder.getPath());
+            assertThat("the manifest survives a restart", restarted.renderAllTTSStrings(names), is(0));
+        } finally {
+            final File[] files = new File(folder, "radio").listFiles();
+            if (files != null) {
+                for (final File file : files) {
+                    file.delete();
+                }
+            }
+            new File(folder, "radio").delete();
+            new File(folder, "radio-manifest.properties").delete();
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void missingClipTest() throws Exception {
+        final RadioTTS radioTTS = new RadioTTS(null, Files.createTempDirectory("radio-tts").toFile().getPath());
+        try {
+            assertThat(radioTTS.hasClip("unknown"), is(false));
+            assertThat("missing snippets are skipped", radioTTS.getClip("unknown"), is(nullValue()));
+            radioTTS.prefetch(List.of("unknown"));
+            assertThat(radioTTS.getClipCache().getMisses(), is(0L));
+        } finally {
+            radioTTS.dispose();
+        }
+    }
+
+}
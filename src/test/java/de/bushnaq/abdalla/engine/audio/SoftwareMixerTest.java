@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinSynthesizer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Software mixing does not need an audio device
+ */
+public class SoftwareMixerTest {
+    private static final int SAMPLERATE = 44100;
+    private static final int SAMPLES    = 4410;
+
+    @Test
+    public void attenuationTest() {
+        assertThat(SoftwareMixer.attenuation(0f), is(1f));
+        assertThat(SoftwareMixer.attenuation(OpenAlSource.REFERENCE_DISTANCE), is(1f));
+        final float distance = 100;
+        final float expected = OpenAlSource.REFERENCE_DISTANCE / (OpenAlSource.REFERENCE_DISTANCE + OpenAlSource.ROLLOFF_FACTOR * (distance - OpenAlSource.REFERENCE_DISTANCE));
+        assertThat(SoftwareMixer.attenuation(distance), is(expected));
+        assertThat(SoftwareMixer.attenuation(2 * distance), is(lessThan(expected)));
+    }
+
+    @Test
+    public void canMixTest() throws Exception {
+        final SoftwareMixer  mixer = createMixer();
+        final SinSynthesizer synth = new SinSynthesizer();
+        assertThat(mixer.add(synth), is(true));
+        assertThat("cannot add twice", mixer.add(synth), is(false));
+        final SinSynthesizer ambient = new SinSynthesizer();
+        ambient.setAmbient(true);
+        assertThat("ambient producers need their own source", mixer.add(ambient), is(false));
+        assertThat(mixer.size(), is(1));
+        assertThat(mixer.remove(synth), is(true));
+        assertThat(mixer.size(), is(0));
+    }
+
+    private SoftwareMixer createMixer() {
+        final SoftwareMixer mixer = new SoftwareMixer(SAMPLES, SAMPLERATE);
+        mixer.setListener(new Vector3(0, 0, 0), new Vector3(0, 0, -1), new Vector3(0, 1, 0));
+        return mixer;
+    }
+
+    private SinSynthesizer createSynth(final float x, final float z) throws OpenAlException {
+        final SinSynthesizer synth = new SinSynthesizer();
+        synth.setPositionAndVelocity(new float[]{x, 0, z}, null);
+        synth.setGain(1f);
+        synth.play();
+        return synth;
+    }
+
+    private float[] energy(final ByteBuffer byteBuffer) {
+        final float[] energy = new float[2];
+        for (int i = 0; i < SAMPLES; i++) {
+            energy[0] += Math.abs(byteBuffer.getShort(i * 4));
+            energy[1] += Math.abs(byteBuffer.getShort(i * 4 + 2));
+        }
+        return energy;
+    }
+
+    private ByteBuffer mix(final SoftwareMixer mixer) throws OpenAlException {
+        final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(SAMPLES * 4).order(ByteOrder.nativeOrder());
+        mixer.processBuffer(byteBuffer);
+        return byteBuffer;
+    }
+
+    @Test
+    public void panningTest() throws Exception {
+        {
+            final SoftwareMixer mixer = createMixer();
+            mixer.add(createSynth(10, 0));//right of the listener
+            final float[] energy = energy(mix(mixer));
+            assertThat("right channel must be louder", energy[1], is(greaterThan(energy[0] * 100)));
+        }
+        {
+            final SoftwareMixer mixer = createMixer();
+            mixer.add(createSynth(-10, 0));//left of the listener
+            final float[] energy = energy(mix(mixer));
+            assertThat("left channel must be louder", energy[0], is(greaterThan(energy[1] * 100)));
+        }
+        {
+            final SoftwareMixer mixer = createMixer();
+            mixer.add(createSynth(0, -10));//in front of the listener
+            final float[] energy = energy(mix(mixer));
+            assertThat("both channels must be equal", Math.abs(energy[0] - energy[1]), is(lessThan(energy[0] * 0.01f)));
+        }
+    }
+
+    @Test
+    public void silenceTest() throws Exception {
+        final SoftwareMixer  mixer = createMixer();
+        final SinSynthesizer synth = createSynth(0, -10);
+        synth.pause();
+        mixer.add(synth);
+        final float[] energy = energy(mix(mixer));
+        assertThat("paused producers are not mixed", energy[0] + energy[1], is(0f));
+    }
+
+    @Test
+    public void sumTest() throws Exception {
+        final SoftwareMixer mixer1 = createMixer();
+        mixer1.add(createSynth(0, -1));
+        final float[]       one    = energy(mix(mixer1));
+        final SoftwareMixer mixer2 = createMixer();
+        mixer2.add(createSynth(0, -1));
+        mixer2.add(createSynth(0, -1));
+        final float[] two = energy(mix(mixer2));
+        assertThat("two synths in phase double the amplitude", Math.abs(two[0] - 2 * one[0]), is(lessThan(one[0] * 0.01f)));
+    }
+
+}
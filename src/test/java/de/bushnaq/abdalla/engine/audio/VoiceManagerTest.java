@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio;
+
+import com.badlogic.gdx.math.Vector3;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinSynthesizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class VoiceManagerTest {
+    private final Vector3 listener = new Vector3();
+
+    private SinSynthesizer createSynth(final float distance) throws OpenAlException {
+        final SinSynthesizer synth = new SinSynthesizer();
+        synth.setPositionAndVelocity(new float[]{distance, 0, 0}, null);
+        return synth;
+    }
+
+    @Test
+    public void ambientTest() throws Exception {
+        final VoiceManager        voiceManager = new VoiceManager();
+        final List<AudioProducer> candidates   = new ArrayList<>();
+        candidates.add(createSynth(1));
+        final SinSynthesizer ambient = createSynth(1000);
+        ambient.setAmbient(true);
+        candidates.add(ambient);
+        voiceManager.select(candidates, listener, 1);
+        assertThat("ambient producers are not attenuated", voiceManager.isSelected(1), is(true));
+    }
+
+    @Test
+    public void hysteresisTest() throws Exception {
+        final VoiceManager        voiceManager = new VoiceManager();
+        final List<AudioProducer> candidates   = new ArrayList<>();
+        final List<AudioProducer> stolen       = new ArrayList<>();
+        voiceManager.addListener((producer, score, threshold) -> stolen.add(producer));
+        final SinSynthesizer a = createSynth(100);
+        final SinSynthesizer b = createSynth(101);
+        candidates.add(a);
+        candidates.add(b);
+        voiceManager.select(candidates, listener, 1);
+        assertThat(voiceManager.isSelected(0), is(true));
+        //b gets a little bit nearer than a, not enough to steal the voice
+        b.setPositionAndVelocity(new float[]{99, 0, 0}, null);
+        voiceManager.select(candidates, listener, 1);
+        assertThat("hysteresis keeps the voice", voiceManager.isSelected(0), is(true));
+        assertThat(stolen.size(), is(0));
+        //b gets a lot nearer
+        b.setPositionAndVelocity(new float[]{50, 0, 0}, null);
+        voiceManager.select(candidates, listener, 1);
+        assertThat(voiceManager.isSelected(1), is(true));
+        assertThat(voiceManager.isSelected(0), is(false));
+        assertThat(stolen.size(), is(1));
+        assertThat(stolen.get(0) == a, is(true));
+        assertThat(voiceManager.getStealCount(), is(1L));
+    }
+
+    @Test
+    public void priorityTest() throws Exception {
+        final VoiceManager        voiceManager = new VoiceManager();
+        final List<AudioProducer> candidates   = new ArrayList<>();
+        final SinSynthesizer      near         = createSynth(10);
+        final SinSynthesizer      far          = createSynth(20);
+        far.setPriority(4);
+        candidates.add(near);
+        candidates.add(far);
+        voiceManager.select(candidates, listener, 1);
+        assertThat("user priority beats distance", voiceManager.isSelected(1), is(true));
+    }
+
+    @Test
+    public void selectTest() throws Exception {
+        final VoiceManager        voiceManager = new VoiceManager();
+        final List<AudioProducer> candidates   = new ArrayList<>();
+        //insert in random order
+        final int[] distances = {50, 10, 90, 30, 70, 20, 80, 40, 60, 100};
+        for (final int distance : distances) {
+            candidates.add(createSynth(distance));
+        }
+        assertThat(voiceManager.select(candidates, listener, 5), is(5));
+        for (int i = 0; i < distances.length; i++) {
+            assertThat(String.format("synth at distance %d", distances[i]), voiceManager.isSelected(i), is(distances[i] <= 50));
+        }
+        assertThat("all candidates fit", voiceManager.select(candidates, listener, 20), is(distances.length));
+        assertThat("no voices", voiceManager.select(candidates, listener, 0), is(0));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio.synthesis;
+
+import de.bushnaq.abdalla.engine.audio.Filter;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.me.berndporr.iirj.Butterworth;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class BiquadFilterBankTest {
+    private static final int    SAMPLERATE = 44100;
+    private static final int    SAMPLES    = 44100;
+    private static final int    VOICES     = 64;
+    private final        Logger logger     = LoggerFactory.getLogger(this.getClass());
+
+    private float amplitude(float[] buffer, int from) {
+        float max = 0;
+        for (int i = from; i < buffer.length; i++) {
+            max = Math.max(max, Math.abs(buffer[i]));
+        }
+        return max;
+    }
+
+    @Test
+    public void bassBoostTest() {
+        final BassBoost        bassBoost = new BassBoost(440, 12, SAMPLERATE);
+        final BiquadFilterBank bank      = new BiquadFilterBank(1, 1);
+        bank.setBassBoost(0, 440, 12, SAMPLERATE);
+        final float[] buffer = sin(220, 0.1f);
+        float         error  = 0;
+        bank.process(0, buffer, 0, buffer.length);
+        final float[] input = sin(220, 0.1f);
+        for (int i = 0; i < input.length; i++) {
+            error = Math.max(error, Math.abs(bassBoost.process(input[i]) - buffer[i]));
+        }
+        assertThat("block bass boost must match BassBoost", error, is(lessThan(1e-4f)));
+    }
+
+    @Test
+    public void butterworthTest() {
+        final BiquadFilterBank bank = new BiquadFilterBank(2, 6);
+        bank.setButterworth(0, Filter.PassType.Highpass, 12, 1500, SAMPLERATE);
+        bank.setButterworth(1, Filter.PassType.Highpass, 12, 1500, SAMPLERATE);
+        final float[] low  = sin(200, 1f);
+        final float[] high = sin(8000, 1f);
+        bank.process(0, low, 0, low.length);
+        bank.process(1, high, 0, high.length);
+        assertThat("200Hz must be blocked by 1500Hz highpass", amplitude(low, SAMPLES / 2), is(lessThan(0.001f)));
+        assertThat("8000Hz must pass a 1500Hz highpass", Math.abs(1f - amplitude(high, SAMPLES / 2)), is(lessThan(0.01f)));
+    }
+
+    /**
+     * Odd orders use a first order section, the second order sections must still match the Butterworth response of iirj.
+     */
+    @Test
+    public void butterworthOddOrderTest() {
+        final float[] frequencies = {250, 500, 1000, 1500, 2000, 4000};
+        for (final int order : new int[]{3, 5}) {
+            for (final Filter.PassType passType : new Filter.PassType[]{Filter.PassType.Lowpass, Filter.PassType.Highpass}) {
+                for (final float frequency : frequencies) {
+                    final BiquadFilterBank bank        = new BiquadFilterBank(1, 3);
+                    final Butterworth      butterworth = new Butterworth();
+                    bank.setButterworth(0, passType, order, 1000, SAMPLERATE);
+                    if (passType == Filter.PassType.Lowpass) {
+                        butterworth.lowPass(order, SAMPLERATE, 1000);
+                    } else {
+                        butterworth.highPass(order, SAMPLERATE, 1000);
+                    }
+                    final float[] buffer    = sin(frequency, 1f);
+                    final float[] reference = sin(frequency, 1f);
+                    bank.process(0, buffer, 0, buffer.length);
+                    for (int i = 0; i < reference.length; i++) {
+                        reference[i] = (float) butterworth.filter(reference[i]);
+                    }
+                    final float error = Math.abs(amplitude(reference, SAMPLES / 2) - amplitude(buffer, SAMPLES / 2));
+                    assertThat(String.format("order %d %s at %.0fHz must match iirj", order, passType, frequency), error, is(lessThan(1e-3f)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void multiVoiceTest() {
+        final BiquadFilterBank single      = new BiquadFilterBank(VOICES, 6);
+        final BiquadFilterBank interleaved = new BiquadFilterBank(VOICES, 6);
+        final float[][]        buffers     = new float[VOICES][];
+        final float[]          buffer      = new float[VOICES * SAMPLES];
+        for (int voice = 0; voice < VOICES; voice++) {
+            final float frequency = 100 + voice * 50;
+            if (voice % 2 == 0) {
+                single.setButterworth(voice, Filter.PassType.Highpass, 12, frequency, SAMPLERATE);
+                interleaved.setButterworth(voice, Filter.PassType.Highpass, 12, frequency, SAMPLERATE);
+            } else {
+                single.setBassBoost(voice, frequency, 12, SAMPLERATE);
+                interleaved.setBassBoost(voice, frequency, 12, SAMPLERATE);
+            }
+            buffers[voice] = sin(frequency * 2, 0.1f);
+            for (int i = 0; i < SAMPLES; i++) {
+                buffer[i * VOICES + voice] = buffers[voice][i];
+            }
+            single.process(voice, buffers[voice], 0, SAMPLES);
+        }
+        interleaved.process(buffer, SAMPLES);
+        float error = 0;
+        for (int voice = 0; voice < VOICES; voice++) {
+            for (int i = 0; i < SAMPLES; i++) {
+                error = Math.max(error, Math.abs(buffers[voice][i] - buffer[i * VOICES + voice]));
+            }
+        }
+        assertThat("interleaved processing must match single voice processing", error, is(lessThan(1e-5f)));
+    }
+
+    @Test
+    public void performanceTest() {
+        final float[] input = sin(440, 0.1f);
+        final float[] buffer = new float[VOICES * SAMPLES];
+        //per sample path
+        final Filter[] filters = new Filter[VOICES];
+        for (int voice = 0; voice < VOICES; voice++) {
+            filters[voice] = new Filter(1500, SAMPLERATE, Filter.PassType.Highpass, .8f);
+        }
+        final long time1 = System.currentTimeMillis();
+        for (int voice = 0; voice < VOICES; voice++) {
+            for (int i = 0; i < SAMPLES; i++) {
+                buffer[i] = filters[voice].process(input[i]);
+            }
+        }
+        final long time2 = System.currentTimeMillis();
+        //block path, one voice at a time
+        final BiquadFilterBank bank = new BiquadFilterBank(VOICES, 6);
+        for (int voice = 0; voice < VOICES; voice++) {
+            bank.setButterworth(voice, Filter.PassType.Highpass, 12, 1500, SAMPLERATE);
+        }
+        final long time3 = System.currentTimeMillis();
+        for (int voice = 0; voice < VOICES; voice++) {
+            System.arraycopy(input, 0, buffer, 0, SAMPLES);
+            bank.process(voice, buffer, 0, SAMPLES);
+        }
+        final long time4 = System.currentTimeMillis();
+        //block path, all voices side by side
+        for (int i = 0; i < SAMPLES; i++) {
+            for (int voice = 0; voice < VOICES; voice++) {
+                buffer[i * VOICES + voice] = input[i];
+            }
+        }
+        final long time5 = System.currentTimeMillis();
+        bank.process(buffer, SAMPLES);
+        final long time6 = System.currentTimeMillis();
+        logger.info(String.format("Filtered %d voices each %d samples: per sample %dms, block %dms, interleaved block %dms", VOICES, SAMPLES, time2 - time1, time4 - time3, time6 - time5));
+        assertThat(String.format("expected to filter %d voices each %d samples in less than 1s", VOICES, SAMPLES), time6 - time5, is(lessThan(1000L)));
+    }
+
+    private float[] sin(float frequency, float amplitude) {
+        final float[] buffer = new float[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            buffer[i] = amplitude * (float) Math.sin(2 * Math.PI * frequency * i / SAMPLERATE);
+        }
+        return buffer;
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.audio.synthesis;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Files;
+import com.badlogic.gdx.backends.lwjgl3.Lwjgl3NativesLoader;
+import de.bushnaq.abdalla.engine.audio.AudioBackend;
+import de.bushnaq.abdalla.engine.audio.LoopbackBackend;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinAudioEngine;
+import de.bushnaq.abdalla.engine.audio.synthesis.util.SinSynthesizer;
+import de.bushnaq.abdalla.engine.camera.MovingCamera;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Renders without sound device, runs on a headless build machine.
+ */
+public class LoopbackRenderTest {
+    private static final int          SECONDS = 10;
+    private final        Logger       logger  = LoggerFactory.getLogger(this.getClass());
+    private              MovingCamera camera;
+
+    private void createCamera() throws Exception {
+        Gdx.files = new Lwjgl3Files();
+        Lwjgl3NativesLoader.load();
+        camera = new MovingCamera(67f, 640, 480);
+        camera.position.set(300f, 500f, 400f);
+        camera.lookAt(camera.lookat);
+        camera.near = 1f;
+        camera.far  = 8000f;
+        camera.update();
+    }
+
+    @Test
+    public void renderTest() throws Exception {
+        final SinAudioEngine audioEngine = new SinAudioEngine(new LoopbackBackend());
+        audioEngine.create(null);
+        createCamera();
+        final SinSynthesizer synth = audioEngine.createAudioProducer(SinSynthesizer.class);
+        synth.setAmbient(true);
+        synth.setGain(5);
+        synth.play();
+        audioEngine.begin(camera, true);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(SECONDS * SinAudioEngine.samplerate * AudioBackend.BYTES_PER_FRAME).order(ByteOrder.nativeOrder());
+        final long       time1  = System.currentTimeMillis();
+        audioEngine.render(buffer);
+        final long delta = System.currentTimeMillis() - time1;
+        audioEngine.end();
+        audioEngine.dispose();
+        int peak = 0;
+        for (int i = 0; i < buffer.capacity(); i += 2) {
+            peak = Math.max(peak, Math.abs(buffer.getShort(i)));
+        }
+        logger.info(String.format("Rendered %ds in %dms with peak %d", SECONDS, delta, peak));
+        assertThat("expected to render faster than real time", delta, is(lessThan(SECONDS * 1000L)));
+        assertThat("expected to hear the synth", peak, is(greaterThan(0)));
+    }
+
+}
@@ -17,6 +17,7 @@
 package de.bushnaq.abdalla.engine.audio.synthesis.util;
 
 
+import de.bushnaq.abdalla.engine.audio.AudioBackend;
 import de.bushnaq.abdalla.engine.audio.AudioEngine;
 
 public class SinAudioEngine extends AudioEngine {
@@ -30,4 +31,9 @@ public class SinAudioEngine extends AudioEngine {
         add(new SinSynthesizerFactory());
     }
 
+    public SinAudioEngine(final AudioBackend backend) {
+        super(samples, samplerate, bits, backend);
+        add(new SinSynthesizerFactory());
+    }
+
 }
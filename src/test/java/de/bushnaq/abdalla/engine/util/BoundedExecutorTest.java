@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class BoundedExecutorTest {
+    private static final int    CAPACITY = 4;
+    private static final int    THREADS  = 2;
+    private final        Logger logger   = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * A fast producer is throttled to the speed of the workers and never has more than capacity tasks in flight.
+     */
+    @Test
+    public void backpressureTest() throws InterruptedException {
+        final AtomicInteger maxPending = new AtomicInteger();
+        final AtomicInteger done       = new AtomicInteger();
+        final int           tasks      = 40;
+        final long          time1      = System.nanoTime();
+        final long          time2;
+        try (BoundedExecutor executor = new BoundedExecutor("backpressure", THREADS, CAPACITY)) {
+            for (int i = 0; i < tasks; i++) {
+                executor.submit(() -> {
+                    sleep(5);
+                    done.incrementAndGet();
+                });
+                maxPending.accumulateAndGet(executor.getPending(), Math::max);
+            }
+            time2 = System.nanoTime();
+        }
+        logger.info(String.format("%d tasks in %dms max pending %d", tasks, (time2 - time1) / 1000000, maxPending.get()));
+        assertThat(done.get(), is(tasks));
+        assertThat(maxPending.get(), lessThanOrEqualTo(CAPACITY));
+        //the last task can only be submitted after all but capacity tasks are done
+        assertThat((time2 - time1) / 1000000, greaterThanOrEqualTo((long) (tasks - CAPACITY) / THREADS * 5));
+    }
+
+    @Test
+    public void failureTest() throws InterruptedException {
+        final AtomicInteger done = new AtomicInteger();
+        try (BoundedExecutor executor = new BoundedExecutor("failure", THREADS, CAPACITY)) {
+            for (int i = 0; i < 10; i++) {
+                final int index = i;
+                executor.submit(() -> {
+                    if (index % 2 == 0)
+                        throw new IllegalStateException("task " + index);
+                    done.incrementAndGet();
+                });
+            }
+            executor.close();
+            assertThat(executor.getFailed(), is(5));
+            assertThat(executor.getPending(), is(0));
+        }
+        assertThat(done.get(), is(5));
+    }
+
+    @Test
+    public void trySubmitTest() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (BoundedExecutor executor = new BoundedExecutor("trySubmit", THREADS, CAPACITY)) {
+            for (int i = 0; i < CAPACITY; i++) {
+                assertThat(executor.trySubmit(() -> await(release)), is(true));
+            }
+            assertThat(executor.getPending(), is(CAPACITY));
+            assertThat(executor.trySubmit(() -> {
+            }), is(false));
+            release.countDown();
+            executor.submit(() -> {
+            });
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class FrameTimeHistogramTest {
+    private static final long   HITCH   = 33333333L;
+    private static final int    SAMPLES = 100000;
+    private final        Logger logger  = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Percentiles are accurate to the bucket width and never smaller than the exact value.
+     */
+    @Test
+    public void percentileTest() {
+        final Random             random    = new Random(0);
+        final FrameTimeHistogram histogram = new FrameTimeHistogram(HITCH);
+        final long[]             values    = new long[SAMPLES];
+        long                     hitches   = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            //mostly 60 fps with a long tail
+            values[i] = i % 100 == 0 ? 20000000L + random.nextInt(100000000) : 16000000L + random.nextInt(1000000);
+            histogram.record(values[i]);
+            if (values[i] > HITCH) {
+                hitches++;
+            }
+        }
+        Arrays.sort(values);
+        for (final double percentile : new double[]{0, 50, 90, 95, 99, 99.9, 100}) {
+            final long exact = values[Math.max(0, (int) Math.ceil(percentile / 100 * SAMPLES) - 1)];
+            final long value = histogram.getValueAtPercentile(percentile);
+            logger.info(String.format("p%s exact %dns histogram %dns", percentile, exact, value));
+            assertThat(value, greaterThanOrEqualTo(exact));
+            assertThat(value - exact, lessThanOrEqualTo(exact / 128));
+        }
+        assertThat(histogram.getTotalCount(), is((long) SAMPLES));
+        assertThat(histogram.getMax(), is(values[SAMPLES - 1]));
+        assertThat(histogram.getMin(), is(values[0]));
+        assertThat(histogram.getHitchCount(), is(hitches));
+        assertThat(histogram.getValueAtPercentile(100), is(values[SAMPLES - 1]));
+
+        final FrameTimeHistogram sum = new FrameTimeHistogram(HITCH);
+        sum.add(histogram);
+        sum.add(histogram);
+        assertThat(sum.getTotalCount(), is(2L * SAMPLES));
+        assertThat(sum.getValueAtPercentile(99), is(histogram.getValueAtPercentile(99)));
+        assertThat(sum.getHitchCount(), is(2 * hitches));
+        histogram.reset();
+        assertThat(histogram.getTotalCount(), is(0L));
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+        assertThat(histogram.getMax(), is(0L));
+    }
+
+    @Test
+    public void rangeTest() {
+        final FrameTimeHistogram histogram = new FrameTimeHistogram(HITCH);
+        histogram.record(-5);
+        histogram.record(0);
+        histogram.record(255);
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getMin(), is(0L));
+        assertThat(histogram.getValueAtPercentile(50), is(0L));
+        assertThat(histogram.getValueAtPercentile(75), is(255L));
+        assertThat(histogram.getValueAtPercentile(100), is(Long.MAX_VALUE));
+        assertThat(histogram.getCountAbove(255), is(1L));
+        assertThat(histogram.getHitchCount(), is(1L));
+    }
+
+    @Test
+    public void recordAllocationTest() {
+        final com.sun.management.ThreadMXBean bean      = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final FrameTimeHistogram              histogram = new FrameTimeHistogram(HITCH);
+        for (int i = 0; i < SAMPLES; i++) {
+            histogram.record(i * 1000L);//warm up
+        }
+        final long id     = Thread.currentThread().getId();
+        final long bytes1 = bean.getThreadAllocatedBytes(id);
+        final long time1  = System.nanoTime();
+        for (int i = 0; i < 10 * SAMPLES; i++) {
+            histogram.record(i * 997L);
+        }
+        final long time2  = System.nanoTime();
+        final long bytes2 = bean.getThreadAllocatedBytes(id);
+        logger.info(String.format("%d records in %dms allocated %d bytes", 10 * SAMPLES, (time2 - time1) / 1000000, bytes2 - bytes1));
+        assertThat(bytes2 - bytes1, lessThan(1024L));
+    }
+
+    @Test
+    public void logTest() throws IOException, InterruptedException {
+        final Path file = Paths.get("target/frame-time-log-test.csv");
+        Files.deleteIfExists(file);
+        try (FrameTimeLog log = new FrameTimeLog(file, 10000000L, HITCH)) {
+            for (int window = 0; window < 3; window++) {
+                log.record(16000000L);
+                log.record(50000000L);
+                Thread.sleep(20);
+            }
+            log.record(16000000L);
+        }
+        final List<String> lines = Files.readAllLines(file);
+        lines.forEach(logger::info);
+        assertThat(lines.get(0), is("time,count,mean,p50,p95,p99,max,hitches"));
+        assertThat(lines.size(), greaterThanOrEqualTo(3));
+        int count   = 0;
+        int hitches = 0;
+        for (final String line : lines.subList(1, lines.size())) {
+            final String[] fields = line.split(",");
+            assertThat(fields.length, is(8));
+            count += Integer.parseInt(fields[1]);
+            hitches += Integer.parseInt(fields[7]);
+        }
+        //every value is written exactly once, the last ones when the log is closed
+        assertThat(count, is(7));
+        assertThat(hitches, is(3));
+    }
+
+}
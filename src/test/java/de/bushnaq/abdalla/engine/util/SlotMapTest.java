@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 Abdalla Bushnaq
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.bushnaq.abdalla.engine.util;
+
+import com.scottlogic.util.UnsortedList;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SlotMapTest {
+    private static final int    ELEMENTS = 2000;
+    private static final int    ROUNDS   = 100;
+    private final        Logger logger   = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Iterate over all elements and replace a tenth of them every round, like the audio engine does with its producers.
+     */
+    @Test
+    public void benchmarkTest() {
+        long slotMapIteration = 0;
+        long slotMapChurn     = 0;
+        long listIteration    = 0;
+        long listChurn        = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            final SlotMap<Integer> map     = new SlotMap<>();
+            final long[]           handles = new long[ELEMENTS];
+            final List<Integer>    list    = new UnsortedList<>();
+            for (int i = 0; i < ELEMENTS; i++) {
+                handles[i] = map.addElement(i);
+                list.add(i);
+            }
+            final Random random = new Random(0);
+            long         sum1   = 0;
+            long         sum2   = 0;
+            slotMapIteration = 0;
+            slotMapChurn     = 0;
+            listIteration    = 0;
+            listChurn        = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                final long time1 = System.nanoTime();
+                for (final Integer value : map) {
+                    sum1 += value;
+                }
+                final long time2 = System.nanoTime();
+                for (final Integer value : list) {
+                    sum2 += value;
+                }
+                final long time3 = System.nanoTime();
+                final int  first = random.nextInt(ELEMENTS - ELEMENTS / 10);
+                for (int i = first; i < first + ELEMENTS / 10; i++) {
+                    final Integer value = map.removeHandle(handles[i]);
+                    handles[i] = map.addElement(value);
+                }
+                final long time4 = System.nanoTime();
+                for (int i = first; i < first + ELEMENTS / 10; i++) {
+                    final Integer value = i;
+                    list.remove(value);
+                    list.add(value);
+                }
+                final long time5 = System.nanoTime();
+                slotMapIteration += time2 - time1;
+                listIteration    += time3 - time2;
+                slotMapChurn     += time4 - time3;
+                listChurn        += time5 - time4;
+            }
+            assertThat(sum1, is(sum2));
+        }
+        logger.info(String.format("iteration SlotMap %dms UnsortedList %dms", slotMapIteration / 1000000, listIteration / 1000000));
+        logger.info(String.format("churn     SlotMap %dms UnsortedList %dms", slotMapChurn / 1000000, listChurn / 1000000));
+    }
+
+    @Test
+    public void handleTest() {
+        final SlotMap<String> map = new SlotMap<>(2);
+        final long            a   = map.addElement("a");
+        final long            b   = map.addElement("b");
+        final long            c   = map.addElement("c");
+        assertThat(map.size(), is(3));
+        assertThat(map.resolve(b), is("b"));
+        assertThat(map.removeHandle(a), is("a"));
+        assertThat("c moved into the gap", map.get(0), is("c"));
+        assertThat(map.resolve(c), is("c"));
+        assertThat(map.getHandle(0), is(c));
+        final long d = map.addElement("d");
+        assertThat("slot of a is reused", (int) d, is((int) a));
+        assertThat("handle of a removed element stays invalid", map.resolve(a), is(nullValue()));
+        assertThat(map.removeHandle(a), is(nullValue()));
+        assertThat(map.containsHandle(d), is(true));
+        assertThat(map.resolve(SlotMap.INVALID_HANDLE), is(nullValue()));
+        assertThat(map.removeLast(), is("d"));
+        assertThat(map.remove("b"), is(true));
+        assertThat(map.size(), is(1));
+        map.clear();
+        assertThat(map.isEmpty(), is(true));
+        assertThat(map.containsHandle(c), is(false));
+    }
+
+    @Test
+    public void iteratorTest() {
+        final SlotMap<Integer> map = new SlotMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.add(i);
+        }
+        final Set<Integer>      visited  = new HashSet<>();
+        final Iterator<Integer> iterator = map.iterator();
+        while (iterator.hasNext()) {
+            final Integer value = iterator.next();
+            visited.add(value);
+            if (value % 2 == 0)
+                iterator.remove();
+        }
+        assertThat("every element is visited once, even the ones moved into a gap", visited.size(), is(100));
+        assertThat(map.size(), is(50));
+        for (final Integer value : map) {
+            assertThat(value % 2, is(1));
+        }
+    }
+
+}